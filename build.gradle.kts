@@ -191,7 +191,7 @@ tasks.register("packets") {
     doLast {
         val outDir = rootProject.file("out").apply { mkdirs() }
 
-        subprojects.filter { it.name != "api" }.forEach { project ->
+        subprojects.filter { it.name != "api" && it.name != "bench" }.forEach { project ->
             @Suppress("DEPRECATION")
             val jar = project.buildDir.resolve("libs/${rootProject.name}-${project.name}-${project.version}.jar")
             if (jar.exists()) {
@@ -53,7 +53,8 @@ dependencyResolutionManagement {
 // ─────────────────────────────
 rootProject.name = "ley-stomgate"
 
-include("api", "common")
+include("api", "common", "bench")
 
 project(":api").projectDir = file("stg-api")
 project(":common").projectDir = file("stg-common")
+project(":bench").projectDir = file("stg-bench")
@@ -1,16 +1,33 @@
 package de.leycm.stomgate;
 
 import de.leycm.neck.instance.Initializable;
+import de.leycm.stomgate.metrics.MetricsReporter;
+import de.leycm.stomgate.metrics.PermissionMetrics;
 import de.leycm.stomgate.permittable.PermittableGroup;
 import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionContext;
+import de.leycm.stomgate.perm.PermissionEdit;
+import de.leycm.stomgate.perm.PermissionKey;
+import de.leycm.stomgate.perm.PermissionSnapshot;
 import de.leycm.stomgate.perm.Permittable;
 import de.leycm.stomgate.permittable.PermittablePlayer;
 import lombok.NonNull;
 import net.minestom.server.MinecraftServer;
+import net.minestom.server.event.player.AsyncPlayerPreLoginEvent;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Core service interface for the permission system.
@@ -92,6 +109,109 @@ public interface PermissionServices extends Initializable {
     int resolvePermissionWeight(final @NonNull Permittable permittable,
                                 final @NonNull Permission permission);
 
+    /**
+     * Takes an immutable snapshot of the effective permissions of a {@link Permittable}.
+     *
+     * <p>
+     * All checks against the snapshot see the permissions as they were when
+     * it was taken. Implementations return the immutable structures they
+     * resolve from, taking a snapshot then costs as much as a single check.
+     * The default implementation keeps no such structures and throws.
+     * </p>
+     *
+     * @param permittable the permittable (player or group) to take the snapshot of
+     * @return the snapshot
+     * @throws UnsupportedOperationException if the implementation cannot take snapshots
+     */
+    default @NonNull PermissionSnapshot snapshotOf(final @NonNull Permittable permittable) {
+        throw new UnsupportedOperationException("No snapshots in " + getClass().getName());
+    }
+
+    /**
+     * Resolves the permission weight of a pre-compiled {@link PermissionKey}.
+     *
+     * <p>
+     * The result is the same as for {@link PermissionKey#permission()},
+     * implementations may answer from a flat array indexed by the key id
+     * instead of resolving the node. The default implementation resolves the node.
+     * </p>
+     *
+     * @param permittable the permittable (player or group) to evaluate
+     * @param key         the key of the permission to resolve
+     * @return the effective permission weight
+     */
+    default int resolvePermissionWeight(final @NonNull Permittable permittable,
+                                        final @NonNull PermissionKey key) {
+        return resolvePermissionWeight(permittable, key.permission());
+    }
+
+    /**
+     * Resolves the permission weight for a given {@link Permittable} within a
+     * {@link PermissionContext}, e.g. in one instance or game mode.
+     *
+     * <p>
+     * Weights set for the context replace the global weight of the same node
+     * of the same permittable, everything else resolves like a global check.
+     * Own entries still win over inherited ones and a specific node still
+     * wins over a wildcard, whether either is contextual or not. The default
+     * implementation keeps no contextual weights and resolves globally.
+     * </p>
+     *
+     * @param permittable the permittable (player or group) to evaluate
+     * @param permission  the permission node to resolve
+     * @param context     the context of the check
+     * @return the effective permission weight in the context
+     */
+    default int resolvePermissionWeight(final @NonNull Permittable permittable,
+                                        final @NonNull Permission permission,
+                                        final @NonNull PermissionContext context) {
+        return resolvePermissionWeight(permittable, permission);
+    }
+
+    /**
+     * Resolves several permissions of one {@link Permittable} at once.
+     *
+     * <p>
+     * Implementations look the permittable up and walk its inheritance chain
+     * once for the whole call. The default implementation simply delegates to
+     * {@link #resolvePermissionWeight(Permittable, Permission)} per permission.
+     * </p>
+     *
+     * @param permittable the permittable (player or group) to evaluate
+     * @param permissions the permission nodes to resolve
+     * @return the effective weights, in the order of {@code permissions}
+     */
+    default @NonNull int[] resolvePermissionWeights(final @NonNull Permittable permittable,
+                                                    final @NonNull Permission... permissions) {
+        int[] weights = new int[permissions.length];
+        for (int i = 0; i < permissions.length; i++)
+            weights[i] = resolvePermissionWeight(permittable, permissions[i]);
+        return weights;
+    }
+
+    /**
+     * Resolves one permission for many {@link Permittable}s at once, e.g.
+     * every recipient of a broadcast.
+     *
+     * <p>
+     * Implementations share lookups between permittables that inherit from
+     * the same groups. The default implementation simply delegates to
+     * {@link #resolvePermissionWeight(Permittable, Permission)} per permittable.
+     * </p>
+     *
+     * @param permittables the permittables to evaluate
+     * @param permission   the permission node to resolve
+     * @return the effective weights, in the iteration order of {@code permittables}
+     */
+    default @NonNull int[] resolvePermissionWeights(final @NonNull Collection<? extends Permittable> permittables,
+                                                    final @NonNull Permission permission) {
+        int[] weights = new int[permittables.size()];
+        int i = 0;
+        for (Permittable permittable : permittables)
+            weights[i++] = resolvePermissionWeight(permittable, permission);
+        return weights;
+    }
+
     /**
      * Updates the permission weight for a given {@link Permittable}
      * and {@link Permission}.
@@ -119,6 +239,107 @@ public interface PermissionServices extends Initializable {
                                 final @NonNull Permission permission,
                                 final int weight);
 
+    /**
+     * Updates the permission weight of a {@link Permittable} within a
+     * {@link PermissionContext} only.
+     *
+     * <p>
+     * A negative weight removes the contextual entry, the global weight then
+     * applies in the context again. The default implementation keeps no
+     * contextual weights and throws.
+     * </p>
+     *
+     * @param permittable the permittable (player or group) to update
+     * @param permission  the permission node to update
+     * @param context     the context the weight applies in
+     * @param weight      the new weight to set
+     * @throws UnsupportedOperationException if the implementation keeps no contextual weights
+     */
+    default void updatePermissionWeight(final @NonNull Permittable permittable,
+                                        final @NonNull Permission permission,
+                                        final @NonNull PermissionContext context,
+                                        final int weight) {
+        throw new UnsupportedOperationException("No contextual weights in " + getClass().getName());
+    }
+
+    /**
+     * Sets a permission weight that is removed again once the expiry passed,
+     * e.g. for trial ranks or event access.
+     *
+     * <p>
+     * Implementations persist the expiry with the weight and remove the
+     * weight at the expiry even across restarts. Setting the same node again
+     * through {@link #updatePermissionWeight(Permittable, Permission, int)} or
+     * an {@link #edit} makes it permanent. The default implementation keeps no
+     * expiries and throws.
+     * </p>
+     *
+     * @param permittable the permittable (player or group) to update
+     * @param permission  the permission node to update
+     * @param weight      the new weight, 0 or above
+     * @param expiry      the instant at which the weight is removed
+     * @throws IllegalArgumentException      if the weight is negative
+     * @throws UnsupportedOperationException if the implementation keeps no expiries
+     */
+    default void updatePermissionWeight(final @NonNull Permittable permittable,
+                                        final @NonNull Permission permission,
+                                        final int weight,
+                                        final @NonNull Instant expiry) {
+        throw new UnsupportedOperationException("No timed weights in " + getClass().getName());
+    }
+
+    /**
+     * Returns when the own weight of a permittable for a node expires.
+     *
+     * <p>
+     * The default implementation keeps no expiries and returns {@code null}.
+     * </p>
+     *
+     * @param permittable the permittable (player or group) to check
+     * @param permission  the exact permission node
+     * @return the expiry, or {@code null} if the weight is permanent or unset
+     */
+    default @Nullable Instant expiryOf(final @NonNull Permittable permittable,
+                                      final @NonNull Permission permission) {
+        return null;
+    }
+
+    /**
+     * Applies several changes to one {@link Permittable} as a single update.
+     *
+     * <p>
+     * The action records its changes on a {@link PermissionEdit}, they are
+     * applied once it returns. Implementations publish all changes at once,
+     * so concurrent readers see either all or none of them, and persist and
+     * invalidate the permittable only once.
+     * </p>
+     *
+     * <p>
+     * The default implementation applies the recorded changes one by one
+     * through {@link #updatePermissionWeight}, {@link #setParentOf},
+     * {@link #addParentOf} and {@link #removeParentOf}.
+     * </p>
+     *
+     * <pre>{@code
+     * services.edit(group, edit -> edit.grant("chat.color").revoke("chat.spam").addParent(donor, 5));
+     * }</pre>
+     *
+     * @param permittable the permittable (player or group) to update
+     * @param action      records the changes
+     * @throws IllegalArgumentException if the new parent would create an inheritance cycle
+     */
+    default void edit(final @NonNull Permittable permittable,
+                      final @NonNull Consumer<PermissionEdit> action) {
+        PermissionEdit edit = new PermissionEdit();
+        action.accept(edit);
+        if (edit.parentsReplaced()) setParentOf(permittable, null);
+        edit.parents().forEach((parent, priority) -> {
+            if (priority < 0) removeParentOf(permittable, parent);
+            else addParentOf(permittable, parent, priority);
+        });
+        edit.weights().forEach((permission, weight) -> updatePermissionWeight(permittable, permission, weight));
+    }
+
     /**
      * Retrieves a {@link PermittableGroup} by its string ID.
      *
@@ -145,11 +366,152 @@ public interface PermissionServices extends Initializable {
         return null;
     }
 
-    // TODO: Add javadoc
+    /**
+     * Returns the parent group of a {@link Permittable} that is consulted first.
+     *
+     * <p>
+     * With several parents this is the one with the highest priority, of
+     * equal priorities the one added first. Use {@link #parentsOf(Permittable)}
+     * to get all of them.
+     * </p>
+     *
+     * @param permittable the permittable (player or group)
+     * @return the first parent, or {@code null} if there is none
+     */
     @Nullable PermittableGroup parentOf(final @NonNull Permittable permittable);
 
-    // TODO: Add javadoc
-    void setParentOf(final @NonNull Permittable permittable, PermittableGroup parent);
+    /**
+     * Replaces all parent groups of a {@link Permittable} with a single one.
+     *
+     * <p>
+     * Every existing parent is removed, the new parent gets priority 0. Use
+     * {@link #addParentOf(Permittable, PermittableGroup, int)} to add a parent
+     * while keeping the others.
+     * </p>
+     *
+     * @param permittable the permittable (player or group)
+     * @param parent      the only parent from now on, or {@code null} to remove all parents
+     * @throws IllegalArgumentException if the parent would create an inheritance cycle
+     */
+    void setParentOf(final @NonNull Permittable permittable, final @Nullable PermittableGroup parent);
+
+    /**
+     * Returns the direct parent groups of a {@link Permittable} with their priorities.
+     *
+     * <p>
+     * The default implementation only knows the single {@link #parentOf(Permittable)},
+     * reported with priority 0.
+     * </p>
+     *
+     * @param permittable the permittable (player or group)
+     * @return unmodifiable {@code parent -> priority}, highest priority first
+     */
+    default @NonNull Map<PermittableGroup, Integer> parentsOf(final @NonNull Permittable permittable) {
+        PermittableGroup parent = parentOf(permittable);
+        return parent == null ? Map.of() : Map.of(parent, 0);
+    }
+
+    /**
+     * Adds a parent group to a {@link Permittable}, or changes the priority of
+     * an existing one.
+     *
+     * <p>
+     * Parents with a higher priority are consulted first, a permission is
+     * decided by the first group of the resolution order that sets it. Groups
+     * shared by several parents are consulted after all of them. The default
+     * implementation supports a single parent only and replaces it.
+     * </p>
+     *
+     * @param permittable the permittable (player or group) to update
+     * @param parent      the parent to add
+     * @param priority    the priority of the parent, at least 0
+     * @throws IllegalArgumentException if the parent would create an inheritance cycle
+     *                                  or the priority is negative
+     */
+    default void addParentOf(final @NonNull Permittable permittable,
+                             final @NonNull PermittableGroup parent,
+                             final int priority) {
+        if (priority < 0) throw new IllegalArgumentException("Parent priority must not be negative: " + priority);
+        setParentOf(permittable, parent);
+    }
+
+    /**
+     * Removes a parent group from a {@link Permittable}, nothing happens if it
+     * is not a parent.
+     *
+     * @param permittable the permittable (player or group) to update
+     * @param parent      the parent to remove
+     */
+    default void removeParentOf(final @NonNull Permittable permittable,
+                                final @NonNull PermittableGroup parent) {
+        if (parent.equals(parentOf(permittable))) setParentOf(permittable, null);
+    }
+
+    /**
+     * Returns every group a {@link Permittable} inherits from, in the order
+     * they are consulted.
+     *
+     * <p>
+     * The default implementation follows {@link #parentOf(Permittable)}.
+     * </p>
+     *
+     * @param permittable the permittable (player or group)
+     * @return the direct and indirect parents, the first one is consulted first
+     */
+    default @NonNull List<PermittableGroup> resolutionOrderOf(final @NonNull Permittable permittable) {
+        List<PermittableGroup> order = new ArrayList<>();
+        for (PermittableGroup parent = parentOf(permittable); parent != null && !order.contains(parent); parent = parentOf(parent))
+            order.add(parent);
+        return order;
+    }
+
+    /**
+     * Returns every permittable holding an own entry for exactly this node,
+     * e.g. everyone granted or denied {@code server.admin.*} directly.
+     *
+     * <p>
+     * Only own entries are reported, permittables inheriting the node from a
+     * group are not expanded. Implementations answer from a reverse index in
+     * time proportional to the result and include changes not yet persisted.
+     * The default implementation keeps no index and throws.
+     * </p>
+     *
+     * @param permission the exact node, wildcards are only matched by equal wildcards
+     * @return a new map of permittable id -> weight
+     * @throws UnsupportedOperationException if the implementation keeps no index
+     */
+    default @NonNull Map<UUID, Integer> holdersOf(final @NonNull Permission permission) {
+        throw new UnsupportedOperationException("No holder index in " + getClass().getName());
+    }
+
+    /**
+     * Returns every permittable whose own entries decide this node, either
+     * through the node itself or through a wildcard covering it, e.g. every
+     * group granting or denying {@code chat.color.red}.
+     *
+     * <p>
+     * Each permittable is reported with the weight of its most specific
+     * entry, just like a check against its own entries would resolve. The
+     * default implementation performs one {@link #holdersOf(Permission)}
+     * lookup for the node and for each covering wildcard.
+     * </p>
+     *
+     * @param permission the node to check
+     * @return a new map of permittable id -> deciding weight
+     * @throws UnsupportedOperationException if the implementation keeps no index
+     */
+    default @NonNull Map<UUID, Integer> holdersCovering(final @NonNull Permission permission) {
+        Map<UUID, Integer> holders = new HashMap<>(holdersOf(permission));
+        String[] node = permission.node();
+        int last = node.length - 1;
+        // a wildcard never covers the node it is attached to, start one level above it
+        for (int depth = "*".equals(node[last]) ? last - 1 : last; depth >= 0; depth--) {
+            String[] wildcard = Arrays.copyOf(node, depth + 1);
+            wildcard[depth] = "*";
+            holdersOf(new Permission(wildcard)).forEach(holders::putIfAbsent);
+        }
+        return holders;
+    }
 
     /**
      * Retrieves a {@link Permittable} (player or group) by its {@link UUID}.
@@ -172,16 +534,80 @@ public interface PermissionServices extends Initializable {
      */
     void registerPermittable(final @NonNull Permittable permittable);
 
+    /**
+     * Loads the data of a permittable and its parent chain into memory
+     * without registering it.
+     *
+     * <p>
+     * Called from the login path before the {@link PermittablePlayer} is
+     * constructed, so that {@link #registerPermittable(Permittable)} in its
+     * constructor only hits the cache. Implementations should run the I/O on
+     * their own threads and never on the caller, and keep the data in memory
+     * until the player registered or a login that never completes timed out.
+     * </p>
+     *
+     * <p>
+     * The default implementation keeps nothing in memory and completes immediately.
+     * </p>
+     *
+     * @param uuid the unique identifier of the permittable
+     * @return a future completed once the data is cached
+     */
+    default @NonNull CompletableFuture<Void> preloadPermittable(final @NonNull UUID uuid) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Returns the metrics recorded since a reporter was installed through
+     * {@link #reportMetrics(MetricsReporter, Duration)}.
+     *
+     * <p>
+     * The default implementation records nothing and returns {@link PermissionMetrics#EMPTY}.
+     * </p>
+     *
+     * @return the cumulative metrics
+     */
+    default @NonNull PermissionMetrics metrics() {
+        return PermissionMetrics.EMPTY;
+    }
+
+    /**
+     * Starts recording metrics and hands a snapshot to the reporter in a fixed interval.
+     *
+     * <p>
+     * Recording is off by default and costs nothing then. Installing another
+     * reporter replaces the previous one and keeps the recorded values,
+     * installing {@link MetricsReporter#NOOP} stops recording and discards them.
+     * The default implementation records nothing and ignores the reporter.
+     * </p>
+     *
+     * @param reporter receiver of the snapshots
+     * @param interval time between two reports
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    default void reportMetrics(final @NonNull MetricsReporter reporter, final @NonNull Duration interval) {
+        if (interval.isZero() || interval.isNegative())
+            throw new IllegalArgumentException("Report interval must be positive: " + interval);
+    }
+
     /**
      * Lifecycle callback invoked on installation of this service.
      *
      * <p>
      * Default implementation sets the {@link PermittablePlayer} as the
-     * default player provider in {@link MinecraftServer}.
+     * default player provider in {@link MinecraftServer} and preloads the
+     * permissions of joining players during {@link AsyncPlayerPreLoginEvent},
+     * which Minestom fires off the network thread. A failed preload never
+     * fails the login, the permissions are then loaded on first use.
      * </p>
      */
     @Override
     default void onInstall() {
-        MinecraftServer.getConnectionManager().setPlayerProvider(PermittablePlayer::new);
+        MinecraftServer.getConnectionManager().setPlayerProvider(PermittablePlayer::of);
+        MinecraftServer.getGlobalEventHandler().addListener(AsyncPlayerPreLoginEvent.class,
+                event -> preloadPermittable(event.getGameProfile().uuid()).exceptionally(failure -> {
+                    failure.printStackTrace();
+                    return null;
+                }).join());
     }
 }
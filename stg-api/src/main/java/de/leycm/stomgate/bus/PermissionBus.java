@@ -0,0 +1,73 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bus;
+
+import lombok.NonNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Propagates changes of permittables between servers sharing one storage.
+ *
+ * <p>
+ * {@link #publish(PermissionChange)} only buffers, services call
+ * {@link #flush()} once the changes are durable in the shared storage.
+ * A flush sends everything buffered as one batch, several changes of the
+ * same permittable from the same origin coalesce into the one with the
+ * highest sequence.
+ * </p>
+ *
+ * <p>
+ * Listeners only receive changes published by other buses, never the ones
+ * sent by their own. A bus that may lose batches, e.g. while it reconnects,
+ * asks its resync listeners to reload everything they cached once it receives
+ * again. Implementations must be safe to call from multiple threads.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public interface PermissionBus extends AutoCloseable {
+
+    /**
+     * Buffers a change until the next {@link #flush()}.
+     *
+     * @param change the change to announce
+     */
+    void publish(final @NonNull PermissionChange change);
+
+    /**
+     * Sends every buffered change to the other servers.
+     */
+    void flush();
+
+    /**
+     * Registers a listener for changes made on other servers.
+     *
+     * @param listener called once per received change, on a thread of the bus
+     */
+    void subscribe(final @NonNull Consumer<PermissionChange> listener);
+
+    /**
+     * Registers a listener for the moments changes may have been missed.
+     * Buses that never lose a batch never call it.
+     *
+     * @param listener called on a thread of the bus, expected to reload every cached permittable
+     */
+    default void subscribeResync(final @NonNull Runnable listener) {
+    }
+
+    /**
+     * Flushes and releases all resources.
+     */
+    @Override
+    void close();
+}
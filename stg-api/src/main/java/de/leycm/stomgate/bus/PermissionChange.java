@@ -0,0 +1,36 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bus;
+
+import lombok.NonNull;
+
+import java.util.UUID;
+
+/**
+ * Announces that the stored data of a permittable changed on another server.
+ *
+ * <p>
+ * Every service stamps its changes with its own origin id and a sequence
+ * number that grows with every change it saves. Receivers drop a change
+ * whose sequence is not above the last one they applied from the same
+ * origin for the same permittable, and reload the stored data for every
+ * other one. Sequences of different origins are never compared, the
+ * reload always reads whatever the storage holds at that moment.
+ * </p>
+ *
+ * @param permittableId the id of the changed permittable
+ * @param origin        the id of the service that saved the change, without whitespace
+ * @param sequence      the sequence number of the change within its origin
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public record PermissionChange(@NonNull UUID permittableId, @NonNull String origin, long sequence) {
+}
@@ -0,0 +1,83 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.command;
+
+import de.leycm.stomgate.perm.PermissionKey;
+import de.leycm.stomgate.perm.Permittable;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Caches which command permissions of a permittable are granted, so the
+ * command tree of a player is not checked node by node on every rebuild.
+ *
+ * <p>
+ * Every key asked for through {@link #canSee(PermissionKey)} is resolved once
+ * and remembered by its id. {@link #refresh()} re-resolves the remembered
+ * keys after the permissions of the permittable changed and tells whether
+ * any of them flipped, only then the command tree has to be sent again.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class CommandVisibility {
+
+    private final Permittable permittable;
+    /** Remembered keys by id, {@code null} for ids never asked for */
+    private PermissionKey[] keys = new PermissionKey[0];
+    private final BitSet visible = new BitSet();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param permittable the permittable whose permissions are cached
+     */
+    public CommandVisibility(final @NonNull Permittable permittable) {
+        this.permittable = permittable;
+    }
+
+    /**
+     * Returns whether the permission of a key is granted, resolving it on first use.
+     *
+     * @param key the key of the command permission
+     * @return true if granted when the cache was last refreshed
+     */
+    public synchronized boolean canSee(final @NonNull PermissionKey key) {
+        int id = key.id();
+        if (id < keys.length && keys[id] != null) return visible.get(id);
+
+        if (id >= keys.length) keys = Arrays.copyOf(keys, Math.max(id + 1, keys.length * 2));
+        keys[id] = key;
+        boolean granted = permittable.hasPermission(key);
+        visible.set(id, granted);
+        return granted;
+    }
+
+    /**
+     * Resolves every remembered key again.
+     *
+     * @return true if at least one key changed its visibility
+     */
+    public synchronized boolean refresh() {
+        boolean changed = false;
+        for (PermissionKey key : keys) {
+            if (key == null) continue;
+            boolean granted = permittable.hasPermission(key);
+            if (visible.get(key.id()) == granted) continue;
+            visible.set(key.id(), granted);
+            changed = true;
+        }
+        return changed;
+    }
+}
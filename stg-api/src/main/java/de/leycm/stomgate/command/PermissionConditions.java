@@ -0,0 +1,87 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.command;
+
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionKey;
+import de.leycm.stomgate.perm.Permittable;
+import de.leycm.stomgate.permittable.PermittablePlayer;
+import lombok.NonNull;
+import net.minestom.server.command.ConsoleSender;
+import net.minestom.server.command.ServerSender;
+import net.minestom.server.command.builder.condition.CommandCondition;
+
+/**
+ * Factory of {@link CommandCondition}s backed by stomgate permissions.
+ *
+ * <p>
+ * The node of a condition is compiled into a {@link PermissionKey} once,
+ * when the command is created. Minestom asks conditions without a command
+ * string while it builds the command tree of a player, those checks are
+ * answered from the {@link CommandVisibility} of the player. Executions
+ * always check the current permissions.
+ * </p>
+ *
+ * <p>
+ * The console and the server itself may use every command. Any other sender
+ * that is not {@link Permittable}, such as a player created by a custom
+ * player provider, may use none.
+ * </p>
+ *
+ * <pre>{@code
+ * command.setCondition(PermissionConditions.require("essentials.fly"));
+ * }</pre>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class PermissionConditions {
+
+    private PermissionConditions() {
+    }
+
+    /**
+     * Creates a condition granting the command if the sender has the permission.
+     *
+     * @param node permission node string (e.g. "essentials.fly")
+     * @return the condition
+     * @throws IllegalArgumentException if any segment of the node is empty
+     */
+    public static @NonNull CommandCondition require(final @NonNull String node) {
+        return require(PermissionKey.of(node));
+    }
+
+    /**
+     * Creates a condition granting the command if the sender has the permission.
+     *
+     * @param permission the permission of the command
+     * @return the condition
+     */
+    public static @NonNull CommandCondition require(final @NonNull Permission permission) {
+        return require(permission.key());
+    }
+
+    /**
+     * Creates a condition granting the command if the sender has the permission of the key.
+     *
+     * @param key the key of the command permission
+     * @return the condition
+     */
+    public static @NonNull CommandCondition require(final @NonNull PermissionKey key) {
+        return (sender, commandString) -> {
+            if (commandString == null && sender instanceof PermittablePlayer player)
+                return player.commandVisibility().canSee(key);
+            if (sender instanceof Permittable permittable) return permittable.hasPermission(key);
+            // fail closed, e.g. for players of a custom provider that are not permittable
+            return sender instanceof ConsoleSender || sender instanceof ServerSender;
+        };
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.metrics;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable latency histogram in nanoseconds.
+ *
+ * <p>
+ * Buckets are log-linear like in HdrHistogram: every power of two is split
+ * into {@value #SUB_BUCKETS} equally wide buckets, values below
+ * {@value #SUB_BUCKETS} get a bucket each. A value is therefore known to
+ * within 12.5 percent while the whole {@code long} range fits in
+ * {@value #BUCKETS} buckets.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class LatencySnapshot {
+
+    /** Buckets per power of two. */
+    public static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** Number of buckets covering every non-negative {@code long}. */
+    public static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** Snapshot without any recorded value. */
+    public static final LatencySnapshot EMPTY = new LatencySnapshot(new long[BUCKETS], 0, 0);
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param counts number of values per bucket, {@link #BUCKETS} entries, copied
+     * @param sum    sum of all values
+     * @param max    largest value
+     * @throws IllegalArgumentException if the bucket count does not match
+     */
+    public LatencySnapshot(final @NonNull long[] counts, final long sum, final long max) {
+        if (counts.length != BUCKETS)
+            throw new IllegalArgumentException("Expected " + BUCKETS + " buckets: " + counts.length);
+        this.counts = counts.clone();
+        this.count = Arrays.stream(counts).sum();
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * Returns the bucket of a value, negative values count as 0.
+     *
+     * @param value the value in nanoseconds
+     * @return the bucket index
+     */
+    public static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) return (int) Math.max(value, 0);
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the smallest value of a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the lower bound in nanoseconds
+     */
+    public static long lowerBoundOf(final int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return value count
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the number of values in a bucket.
+     *
+     * @param bucket the bucket index
+     * @return value count of the bucket
+     */
+    public long countOf(final int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * Returns the mean of all values.
+     *
+     * @return mean in nanoseconds, 0 if empty
+     */
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the largest value.
+     *
+     * @return max in nanoseconds, 0 if empty
+     */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * Returns the value below which the given share of all values lies,
+     * rounded up to the end of its bucket.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the value in nanoseconds, 0 if empty
+     * @throws IllegalArgumentException if the percentile is out of range
+     */
+    public long percentile(final double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen < rank) continue;
+            long upper = bucket + 1 < BUCKETS ? lowerBoundOf(bucket + 1) - 1 : Long.MAX_VALUE;
+            return Math.min(upper, max);
+        }
+        return max;
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return "count=" + count
+                + " mean=" + TimeUnit.NANOSECONDS.toMicros((long) mean()) + "us"
+                + " p50=" + TimeUnit.NANOSECONDS.toMicros(percentile(50)) + "us"
+                + " p99=" + TimeUnit.NANOSECONDS.toMicros(percentile(99)) + "us"
+                + " max=" + TimeUnit.NANOSECONDS.toMicros(max) + "us";
+    }
+}
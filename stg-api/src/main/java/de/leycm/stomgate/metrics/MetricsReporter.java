@@ -0,0 +1,44 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.metrics;
+
+import lombok.NonNull;
+
+/**
+ * Receives periodic {@link PermissionMetrics} snapshots, e.g. to log them or
+ * to export them to a monitoring system.
+ *
+ * <p>
+ * Reporters are called on a background thread of the service and should
+ * return quickly. Installing {@link #NOOP} turns recording off again.
+ * </p>
+ *
+ * <pre>{@code
+ * services.reportMetrics(metrics -> logger.info("checks: {}", metrics.resolveLatency()), Duration.ofMinutes(1));
+ * }</pre>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+@FunctionalInterface
+public interface MetricsReporter {
+
+    /** Reporter that discards everything, the default of every service. */
+    MetricsReporter NOOP = metrics -> {
+    };
+
+    /**
+     * Handles a snapshot.
+     *
+     * @param metrics the cumulative metrics
+     */
+    void report(final @NonNull PermissionMetrics metrics);
+}
@@ -0,0 +1,61 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.metrics;
+
+import lombok.NonNull;
+
+/**
+ * Snapshot of the metrics of a {@link de.leycm.stomgate.PermissionServices}.
+ *
+ * <p>
+ * Counters and histograms are cumulative since recording was enabled,
+ * reporters that want rates subtract the previous snapshot. The values are
+ * read one after another, a snapshot taken under load is not exact across fields.
+ * </p>
+ *
+ * @param resolves       number of resolved permissions
+ * @param updates        number of update and edit calls
+ * @param resolveLatency time per resolve call
+ * @param updateLatency  time per update or edit call
+ * @param cacheHits      permittable lookups answered from the cache
+ * @param cacheMisses    permittable lookups that had to load from the storage
+ * @param evictions      permittables dropped from the cache
+ * @param pendingWrites  permittables waiting for the next write-behind flush, at the time of the snapshot
+ * @param flushDuration  time per write-behind flush
+ * @param loadDuration   time per permittable loaded from the storage
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public record PermissionMetrics(long resolves,
+                                long updates,
+                                @NonNull LatencySnapshot resolveLatency,
+                                @NonNull LatencySnapshot updateLatency,
+                                long cacheHits,
+                                long cacheMisses,
+                                long evictions,
+                                int pendingWrites,
+                                @NonNull LatencySnapshot flushDuration,
+                                @NonNull LatencySnapshot loadDuration) {
+
+    /** Metrics of a service that records nothing. */
+    public static final PermissionMetrics EMPTY = new PermissionMetrics(0, 0, LatencySnapshot.EMPTY,
+            LatencySnapshot.EMPTY, 0, 0, 0, 0, LatencySnapshot.EMPTY, LatencySnapshot.EMPTY);
+
+    /**
+     * Returns the share of lookups answered from the cache.
+     *
+     * @return hit ratio between 0 and 1, 0 if nothing was looked up
+     */
+    public double cacheHitRatio() {
+        long lookups = cacheHits + cacheMisses;
+        return lookups == 0 ? 0 : (double) cacheHits / lookups;
+    }
+}
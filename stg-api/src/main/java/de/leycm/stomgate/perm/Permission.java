@@ -13,7 +13,9 @@ package de.leycm.stomgate.perm;
 import lombok.NonNull;
 import org.jetbrains.annotations.Contract;
 
-import java.util.function.Predicate;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
 
 /**
  * Represents a parsed permission node consisting of multiple path parts.
@@ -31,30 +33,82 @@ import java.util.function.Predicate;
  * </p>
  *
  * <p>
- * Permissions are immutable and safe to reuse.
+ * Permissions are immutable and safe to reuse. Two permissions are equal
+ * if their parts are equal, the hash code is computed once on creation,
+ * so instances can be used as map keys on hot paths.
+ * </p>
+ *
+ * <p>
+ * {@link #of(String)} interns parsed instances in a bounded cache. Repeated
+ * lookups of the same node string return the same instance without
+ * splitting, validating or allocating again. The cache keeps two
+ * generations of 8192 node strings each, a node that
+ * is looked up at least once per generation stays interned, rarely used
+ * ones are dropped and parsed again on their next lookup.
  * </p>
  *
- * @param node the permission path parts
  * @author LeyCM
  * @since 1.0.1
  */
-public record Permission(@NonNull String... node) {
+public final class Permission {
+
+    /** Node strings per intern generation, at most two generations are kept. */
+    private static final int INTERN_GENERATION = 8_192;
+
+    /** Intern cache of the current generation: raw node string -> parsed permission */
+    private static volatile ConcurrentHashMap<String, Permission> interned = new ConcurrentHashMap<>();
+    /** Intern cache of the previous generation, entries move back to the current one when used */
+    private static volatile ConcurrentHashMap<String, Permission> retired = new ConcurrentHashMap<>();
+
+    private final String[] node;
+    private final int hash;
+    private String joined;
 
     /**
-     * Parses a permission node using {@code \\.} as delimiter.
+     * Parses a permission node using {@code .} as delimiter.
+     *
+     * <p>
+     * The result is interned, calling this method again with an equal
+     * string returns the same instance as long as the node stays in the
+     * intern cache. Trailing dots are ignored, {@code "a.b."} is {@code "a.b"}.
+     * </p>
      *
      * @param node raw string (e.g. "server.admin.kick")
-     * @return a new Permission instance
-     * @throws IllegalArgumentException if any segment is empty or contains dots
+     * @return the interned Permission instance
+     * @throws IllegalArgumentException if any segment is empty
      */
-    @Contract("_ -> new")
+    @Contract(pure = true)
     public static @NonNull Permission of(final @NonNull String node) {
-        return of(node, "\\.");
+        final ConcurrentHashMap<String, Permission> current = interned;
+        final Permission cached = current.get(node);
+        if (cached != null) return cached;
+
+        final Permission retiredCached = retired.get(node);
+        final Permission parsed = retiredCached != null ? retiredCached : parse(node);
+        final Permission raced = current.putIfAbsent(node, parsed);
+        if (raced != null) return raced;
+        if (current.size() >= INTERN_GENERATION) retire(current);
+        return parsed;
+    }
+
+    /**
+     * Starts a new intern generation once the current one is full. Nodes of
+     * the retired generation that are looked up again move to the new one,
+     * the others are dropped with the next generation.
+     */
+    private static synchronized void retire(final ConcurrentHashMap<String, Permission> full) {
+        if (interned != full) return; // a racing lookup started the new generation already
+        retired = full;
+        interned = new ConcurrentHashMap<>();
     }
 
     /**
      * Parses a permission node using a custom delimiter regex.
      *
+     * <p>
+     * Unlike {@link #of(String)} the result is not interned.
+     * </p>
+     *
      * @param node raw node
      * @param delimiter regex used to split the node
      * @return new Permission instance
@@ -69,24 +123,105 @@ public record Permission(@NonNull String... node) {
     /**
      * Validates and create the permission parts.
      *
+     * @param node the permission path parts
      * @throws IllegalArgumentException if any segment is empty or contains dots
      */
-    @SuppressWarnings("preview")
-    public Permission {
+    public Permission(final @NonNull String... node) {
         if (node.length < 1) {
             throw new IllegalArgumentException("Permission node cannot be empty");
         }
 
-        final String full = '"' + String.join("\", \"", node) + '"';
-
         for (String part : node) {
             if (part.isEmpty())
-                throw new IllegalArgumentException("Permission parts cannot be empty: " + full);
+                throw new IllegalArgumentException("Permission parts cannot be empty: " + quote(node));
 
-            if (part.contains("."))
-                throw new IllegalArgumentException("Permission parts cannot contain dots \"" + part + "\" in permission " + full);
+            if (part.indexOf('.') >= 0)
+                throw new IllegalArgumentException("Permission parts cannot contain dots \"" + part + "\" in permission " + quote(node));
         }
 
+        this.node = node.clone();
+        this.hash = Arrays.hashCode(this.node);
+    }
+
+    /**
+     * Creates an already validated permission from {@link #split(String, int)}.
+     *
+     * @param node   the split parts
+     * @param joined the source string
+     */
+    private Permission(final String[] node, final String joined) {
+        this.node = node;
+        this.hash = Arrays.hashCode(node);
+        this.joined = joined;
+    }
+
+    /**
+     * Parses a node, ignoring trailing dots like {@link String#split(String)} does.
+     */
+    private static Permission parse(final String node) {
+        int length = node.length();
+        while (length > 0 && node.charAt(length - 1) == '.') length--;
+        if (length == node.length()) return new Permission(split(node, length), node);
+        if (length == 0)
+            throw new IllegalArgumentException("Permission node cannot be empty");
+        return new Permission(split(node, length), node.substring(0, length));
+    }
+
+    /**
+     * Splits the first {@code length} characters of a node at every {@code .}
+     * without going through the regex engine.
+     *
+     * @param node   raw node
+     * @param length number of characters to split
+     * @return the parts
+     * @throws IllegalArgumentException if any segment is empty
+     */
+    private static String[] split(final String node, final int length) {
+
+        int count = 1;
+        for (int i = 0; i < length; i++) {
+            if (node.charAt(i) == '.') count++;
+        }
+
+        final String[] parts = new String[count];
+        int start = 0;
+        int index = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i != length && node.charAt(i) != '.') continue;
+            if (i == start)
+                throw new IllegalArgumentException("Permission parts cannot be empty: \"" + node + '"');
+            parts[index++] = node.substring(start, i);
+            start = i + 1;
+        }
+        return parts;
+    }
+
+    private static String quote(final String[] node) {
+        return '"' + String.join("\", \"", node) + '"';
+    }
+
+    /**
+     * Returns the permission path parts.
+     *
+     * <p>
+     * The returned array is shared, callers must not modify it.
+     * Use {@link #toParts()} for a private copy.
+     * </p>
+     *
+     * @return the permission path parts
+     */
+    public @NonNull String[] node() {
+        return node;
+    }
+
+    /**
+     * Returns the pre-compiled key of this permission for frequent checks.
+     *
+     * @return the interned key
+     * @see PermissionKey
+     */
+    public @NonNull PermissionKey key() {
+        return PermissionKey.of(this);
     }
 
     /**
@@ -117,7 +252,7 @@ public record Permission(@NonNull String... node) {
      * @return predicate result
      */
     public boolean isPermitted(final @NonNull Permittable permittable,
-                      final @NonNull Predicate<Integer> predicate) {
+                      final @NonNull IntPredicate predicate) {
         return permittable.isPermitted(this, predicate);
     }
 
@@ -147,6 +282,20 @@ public record Permission(@NonNull String... node) {
      */
     @Override
     public @NonNull String toString() {
-        return String.join(".", node);
+        String result = joined;
+        if (result == null) joined = result = String.join(".", node);
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Permission other)) return false;
+        return hash == other.hash && Arrays.equals(node, other.node);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
     }
 }
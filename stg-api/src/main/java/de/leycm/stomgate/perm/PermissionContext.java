@@ -0,0 +1,166 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.perm;
+
+import lombok.NonNull;
+import net.minestom.server.entity.GameMode;
+import net.minestom.server.instance.Instance;
+import org.jetbrains.annotations.Contract;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scope in which a permission weight applies, such as an {@link Instance}
+ * or a {@link GameMode}, written as {@code key=value}.
+ *
+ * <p>
+ * Contexts are interned: there is exactly one object per {@code key=value}
+ * and each gets a small, dense integer {@link #id()} on first use.
+ * Implementations index their per-context data by this id, so a check in
+ * a context costs one array lookup on top of a regular check. Ids are only
+ * valid within the running process, storages persist the text form.
+ * </p>
+ *
+ * <p>
+ * Every context lives as long as the process, use them for a bounded set of
+ * scopes like worlds and game modes, not for per-player values.
+ * </p>
+ *
+ * <pre>{@code
+ * PermissionContext creative = PermissionContext.of(GameMode.CREATIVE);
+ * group.setPermission("build.*", creative, 1);
+ * player.hasPermission("build.place", creative);
+ * }</pre>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class PermissionContext {
+
+    private static final Map<String, PermissionContext> INTERNED = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private final String key;
+    private final String value;
+    private final int id;
+
+    private PermissionContext(final String key, final String value, final int id) {
+        this.key = key;
+        this.value = value;
+        this.id = id;
+    }
+
+    /**
+     * Returns the context with the given key and value.
+     *
+     * @param key   the kind of scope, e.g. {@code instance}
+     * @param value the scope itself, e.g. the uuid of an instance
+     * @return the interned context
+     * @throws IllegalArgumentException if either part is empty or contains {@code '='}, {@code '|'} or whitespace
+     */
+    public static @NonNull PermissionContext of(final @NonNull String key, final @NonNull String value) {
+        String text = key + '=' + value;
+        PermissionContext context = INTERNED.get(text);
+        if (context != null) return context;
+
+        validate(key, text);
+        validate(value, text);
+        return INTERNED.computeIfAbsent(text, t -> new PermissionContext(key, value, NEXT_ID.getAndIncrement()));
+    }
+
+    /**
+     * Parses the text form {@code key=value}.
+     *
+     * @param text the text form
+     * @return the interned context
+     * @throws IllegalArgumentException if the text is not a valid context
+     */
+    public static @NonNull PermissionContext parse(final @NonNull String text) {
+        PermissionContext context = INTERNED.get(text);
+        if (context != null) return context;
+
+        int separator = text.indexOf('=');
+        if (separator < 0) throw new IllegalArgumentException("Context must be key=value: \"" + text + '"');
+        return of(text.substring(0, separator), text.substring(separator + 1));
+    }
+
+    /**
+     * Returns the context of an instance, keyed by its uuid.
+     *
+     * @param instance the instance
+     * @return the interned context {@code instance=<uuid>}
+     */
+    public static @NonNull PermissionContext of(final @NonNull Instance instance) {
+        return of("instance", instance.getUuid().toString());
+    }
+
+    /**
+     * Returns the context of a game mode.
+     *
+     * @param gameMode the game mode
+     * @return the interned context, e.g. {@code gamemode=creative}
+     */
+    public static @NonNull PermissionContext of(final @NonNull GameMode gameMode) {
+        return of("gamemode", gameMode.name().toLowerCase(Locale.ROOT));
+    }
+
+    private static void validate(final String part, final String text) {
+        if (part.isEmpty()) throw new IllegalArgumentException("Context parts cannot be empty: \"" + text + '"');
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c == '=' || c == '|' || Character.isWhitespace(c))
+                throw new IllegalArgumentException("Context parts cannot contain '" + c + "': \"" + text + '"');
+        }
+    }
+
+    /**
+     * Returns the kind of scope.
+     *
+     * @return the key
+     */
+    @Contract(pure = true)
+    public @NonNull String key() {
+        return key;
+    }
+
+    /**
+     * Returns the scope itself.
+     *
+     * @return the value
+     */
+    @Contract(pure = true)
+    public @NonNull String value() {
+        return value;
+    }
+
+    /**
+     * Returns the dense id of this context, assigned in order of first use.
+     *
+     * @return the id, 0 or above
+     */
+    @Contract(pure = true)
+    public int id() {
+        return id;
+    }
+
+    /**
+     * Returns the text form {@code key=value}.
+     *
+     * @return the text form
+     */
+    @Override
+    public @NonNull String toString() {
+        return key + '=' + value;
+    }
+}
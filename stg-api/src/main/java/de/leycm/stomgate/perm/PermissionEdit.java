@@ -0,0 +1,195 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.perm;
+
+import de.leycm.stomgate.PermissionServices;
+import de.leycm.stomgate.permittable.PermittableGroup;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects changes of a single {@link Permittable} that are applied together.
+ *
+ * <p>
+ * An edit is handed to the action passed to
+ * {@link PermissionServices#edit(Permittable, java.util.function.Consumer)}
+ * and only records. Nothing is applied before the action returns, an action
+ * that throws leaves the permittable untouched. Setting the same permission
+ * twice keeps the last weight, the same holds for parents.
+ * </p>
+ *
+ * <p>
+ * Parent changes are recorded like weights: {@link #addParent} records a
+ * priority, {@link #removeParent} records {@code -1}. {@link #parent} replaces
+ * all parents, changes recorded before it are dropped.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class PermissionEdit {
+
+    private final Map<Permission, Integer> weights = new LinkedHashMap<>();
+    private final Map<PermittableGroup, Integer> parents = new LinkedHashMap<>();
+    private boolean parentsReplaced;
+
+    /**
+     * Sets a permission weight, negative weights unset the permission.
+     *
+     * @param permission the permission to set
+     * @param weight     the weight to assign
+     * @return this edit
+     */
+    public @NonNull PermissionEdit set(final @NonNull Permission permission, final int weight) {
+        weights.put(permission, weight);
+        return this;
+    }
+
+    /**
+     * Sets a permission weight by node string.
+     *
+     * @param node   permission node string
+     * @param weight the weight to assign
+     * @return this edit
+     */
+    public @NonNull PermissionEdit set(final @NonNull String node, final int weight) {
+        return set(Permission.of(node), weight);
+    }
+
+    /**
+     * Grants a permission (weight 1).
+     *
+     * @param permission the permission to grant
+     * @return this edit
+     */
+    public @NonNull PermissionEdit grant(final @NonNull Permission permission) {
+        return set(permission, 1);
+    }
+
+    /**
+     * Grants a permission by node string.
+     *
+     * @param node permission node string
+     * @return this edit
+     */
+    public @NonNull PermissionEdit grant(final @NonNull String node) {
+        return grant(Permission.of(node));
+    }
+
+    /**
+     * Revokes a permission (weight -1, removes the entry).
+     *
+     * @param permission the permission to revoke
+     * @return this edit
+     */
+    public @NonNull PermissionEdit revoke(final @NonNull Permission permission) {
+        return set(permission, -1);
+    }
+
+    /**
+     * Revokes a permission by node string.
+     *
+     * @param node permission node string
+     * @return this edit
+     */
+    public @NonNull PermissionEdit revoke(final @NonNull String node) {
+        return revoke(Permission.of(node));
+    }
+
+    /**
+     * Replaces all parent groups with a single one of priority 0.
+     *
+     * @param parent the new parent, or {@code null} to remove all parents
+     * @return this edit
+     */
+    public @NonNull PermissionEdit parent(final @Nullable PermittableGroup parent) {
+        this.parentsReplaced = true;
+        this.parents.clear();
+        if (parent != null) parents.put(parent, 0);
+        return this;
+    }
+
+    /**
+     * Adds a parent group or changes its priority. Parents with a higher
+     * priority are consulted first.
+     *
+     * @param parent   the parent to add
+     * @param priority the priority of the parent, at least 0
+     * @return this edit
+     * @throws IllegalArgumentException if the priority is negative
+     */
+    public @NonNull PermissionEdit addParent(final @NonNull PermittableGroup parent, final int priority) {
+        if (priority < 0) throw new IllegalArgumentException("Parent priority must not be negative: " + priority);
+        parents.put(parent, priority);
+        return this;
+    }
+
+    /**
+     * Removes a parent group.
+     *
+     * @param parent the parent to remove
+     * @return this edit
+     */
+    public @NonNull PermissionEdit removeParent(final @NonNull PermittableGroup parent) {
+        parents.put(parent, -1);
+        return this;
+    }
+
+    /**
+     * Returns the recorded weights in the order they were first set.
+     *
+     * @return unmodifiable view of the weight changes
+     */
+    public @NonNull Map<Permission, Integer> weights() {
+        return Collections.unmodifiableMap(weights);
+    }
+
+    /**
+     * Returns the recorded parent changes in the order they were first made.
+     *
+     * @return unmodifiable view of {@code parent -> priority}, -1 removes the parent
+     */
+    public @NonNull Map<PermittableGroup, Integer> parents() {
+        return Collections.unmodifiableMap(parents);
+    }
+
+    /**
+     * Returns whether {@link #parent(PermittableGroup)} was called, the
+     * recorded {@link #parents()} then replace all current parents.
+     *
+     * @return true if all parents are replaced
+     */
+    public boolean parentsReplaced() {
+        return parentsReplaced;
+    }
+
+    /**
+     * Returns whether any parent change was recorded.
+     *
+     * @return true if the parents change
+     */
+    public boolean parentChanged() {
+        return parentsReplaced || !parents.isEmpty();
+    }
+
+    /**
+     * Returns whether nothing was recorded.
+     *
+     * @return true if the edit changes nothing
+     */
+    public boolean isEmpty() {
+        return weights.isEmpty() && !parentChanged();
+    }
+}
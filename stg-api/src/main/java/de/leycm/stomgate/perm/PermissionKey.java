@@ -0,0 +1,115 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.perm;
+
+import lombok.NonNull;
+import org.jetbrains.annotations.Contract;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pre-compiled handle of a {@link Permission} that is checked often,
+ * such as the nodes of a plugin that are known at startup.
+ *
+ * <p>
+ * Keys are interned: there is exactly one key per permission and each gets
+ * a small, dense integer {@link #id()} on creation. Implementations keep the
+ * effective weights of a permittable in a flat array indexed by this id, so
+ * a check through a key is an array load instead of a trie walk. Nodes that
+ * are only known at runtime are checked through their {@link Permission} as
+ * before.
+ * </p>
+ *
+ * <p>
+ * Every key lives as long as the process, obtain them once and keep them
+ * in a constant.
+ * </p>
+ *
+ * <pre>{@code
+ * static final PermissionKey FLY = PermissionKey.of("essentials.fly");
+ * if (player.hasPermission(FLY)) ...
+ * }</pre>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class PermissionKey {
+
+    private static final Map<Permission, PermissionKey> INTERNED = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private final Permission permission;
+    private final int id;
+
+    private PermissionKey(final Permission permission, final int id) {
+        this.permission = permission;
+        this.id = id;
+    }
+
+    /**
+     * Returns the key of a permission.
+     *
+     * @param permission the permission
+     * @return the interned key
+     */
+    public static @NonNull PermissionKey of(final @NonNull Permission permission) {
+        PermissionKey key = INTERNED.get(permission);
+        if (key != null) return key;
+        return INTERNED.computeIfAbsent(permission, p -> new PermissionKey(p, NEXT_ID.getAndIncrement()));
+    }
+
+    /**
+     * Parses a permission node and returns its key.
+     *
+     * @param node raw string (e.g. "server.admin.kick")
+     * @return the interned key
+     * @throws IllegalArgumentException if any segment is empty
+     */
+    public static @NonNull PermissionKey of(final @NonNull String node) {
+        return of(Permission.of(node));
+    }
+
+    /**
+     * Returns the number of keys created so far, every id is below it.
+     *
+     * @return the number of keys
+     */
+    public static int count() {
+        return NEXT_ID.get();
+    }
+
+    /**
+     * Returns the permission of this key.
+     *
+     * @return the permission
+     */
+    @Contract(pure = true)
+    public @NonNull Permission permission() {
+        return permission;
+    }
+
+    /**
+     * Returns the dense id of this key, assigned in order of creation.
+     *
+     * @return the id, 0 or above
+     */
+    @Contract(pure = true)
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return permission.toString();
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.perm;
+
+import de.leycm.stomgate.PermissionServices;
+import lombok.NonNull;
+
+import java.util.UUID;
+import java.util.function.IntPredicate;
+
+/**
+ * An immutable view of the effective permissions of a {@link Permittable}
+ * at one point in time.
+ *
+ * <p>
+ * Every check against a snapshot sees the same state, updates applied after
+ * it was taken are never visible. Use a snapshot whenever several checks
+ * belong together, e.g. all requirements of a kit claim, so a concurrent
+ * rank change cannot make them disagree.
+ * </p>
+ *
+ * <p>
+ * Snapshots are obtained through {@link PermissionServices#snapshotOf(Permittable)}
+ * or {@link Permittable#snapshot()}. Implementations hand out the structures
+ * they resolve checks from, so checking against a snapshot needs no locks and
+ * no further lookups in the service. Taking one is as expensive as a single
+ * check: usually a lookup, but the first check or snapshot after a change
+ * pays for rebuilding the merged view. Snapshots are safe to share between threads.
+ * </p>
+ *
+ * <pre>{@code
+ * PermissionSnapshot snapshot = player.snapshot();
+ * if (snapshot.hasPermission("kit.starter") && !snapshot.hasPermission("kit.starter.cooldown.bypass")) ...
+ * }</pre>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public interface PermissionSnapshot {
+
+    /**
+     * Returns the id of the permittable this snapshot was taken of.
+     *
+     * @return UUID of the permittable
+     */
+    @NonNull UUID permittableId();
+
+    /**
+     * Resolves the effective permission weight as of this snapshot.
+     *
+     * @param permission the permission to evaluate
+     * @return an integer weight following the system rules
+     */
+    int permissionWeight(@NonNull Permission permission);
+
+    /**
+     * Resolves the effective permission weight of a pre-compiled key as of this snapshot.
+     *
+     * @param key the key of the permission to evaluate
+     * @return an integer weight following the system rules
+     */
+    default int permissionWeight(final @NonNull PermissionKey key) {
+        return permissionWeight(key.permission());
+    }
+
+    /**
+     * Resolves the effective permission weight within a context as of this snapshot.
+     *
+     * @param permission the permission to evaluate
+     * @param context    the context of the check
+     * @return the weight in the context
+     */
+    int permissionWeight(@NonNull Permission permission, @NonNull PermissionContext context);
+
+    /**
+     * Resolves a permission node and delegates to {@link #permissionWeight(Permission)}.
+     *
+     * @param node permission node string (e.g. "chat.color")
+     * @return weight associated with that node
+     */
+    default int permissionWeight(final @NonNull String node) {
+        return permissionWeight(Permission.of(node));
+    }
+
+    /**
+     * Checks if the permission was granted (weight > 0).
+     *
+     * @param permission the permission to evaluate
+     * @return true if weight > 0
+     */
+    default boolean hasPermission(final @NonNull Permission permission) {
+        return permissionWeight(permission) > 0;
+    }
+
+    /**
+     * Checks if the permission of a pre-compiled key was granted (weight > 0).
+     *
+     * @param key the key of the permission to evaluate
+     * @return true if weight > 0
+     */
+    default boolean hasPermission(final @NonNull PermissionKey key) {
+        return permissionWeight(key) > 0;
+    }
+
+    /**
+     * Checks if a permission node string was granted (weight > 0).
+     *
+     * @param node permission node string
+     * @return true if permission weight is positive
+     */
+    default boolean hasPermission(final @NonNull String node) {
+        return hasPermission(Permission.of(node));
+    }
+
+    /**
+     * Checks if the permission was granted within a context (weight > 0).
+     *
+     * @param permission the permission to evaluate
+     * @param context    the context of the check
+     * @return true if granted in the context
+     */
+    default boolean hasPermission(final @NonNull Permission permission, final @NonNull PermissionContext context) {
+        return permissionWeight(permission, context) > 0;
+    }
+
+    /**
+     * Evaluates the permission weight as of this snapshot using a predicate.
+     *
+     * @param permission the permission to evaluate
+     * @param predicate  predicate used to validate the weight
+     * @return result of predicate applied on weight
+     */
+    default boolean isPermitted(final @NonNull Permission permission, final @NonNull IntPredicate predicate) {
+        return predicate.test(permissionWeight(permission));
+    }
+}
@@ -15,8 +15,12 @@ import de.leycm.stomgate.permittable.PermittableGroup;
 import lombok.NonNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
 import java.util.UUID;
-import java.util.function.Predicate;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 
 /**
  * Represents an object that can hold and evaluate permissions.
@@ -50,6 +54,37 @@ public interface Permittable {
         PermissionServices.getInstance().setParentOf(this, parent);
     }
 
+    /**
+     * Returns the direct parent groups with their priorities.
+     *
+     * @return unmodifiable {@code parent -> priority}, highest priority first
+     * @see PermissionServices#parentsOf(Permittable)
+     */
+    default @NonNull Map<PermittableGroup, Integer> getParents() {
+        return PermissionServices.getInstance().parentsOf(this);
+    }
+
+    /**
+     * Adds a parent group or changes its priority.
+     *
+     * @param parent   the parent to add
+     * @param priority the priority of the parent, higher ones are consulted first
+     * @see PermissionServices#addParentOf(Permittable, PermittableGroup, int)
+     */
+    default void addParent(final @NonNull PermittableGroup parent, final int priority) {
+        PermissionServices.getInstance().addParentOf(this, parent, priority);
+    }
+
+    /**
+     * Removes a parent group.
+     *
+     * @param parent the parent to remove
+     * @see PermissionServices#removeParentOf(Permittable, PermittableGroup)
+     */
+    default void removeParent(final @NonNull PermittableGroup parent) {
+        PermissionServices.getInstance().removeParentOf(this, parent);
+    }
+
 
     /**
      * Returns the unique ID representing this permittable.
@@ -83,6 +118,17 @@ public interface Permittable {
         return permissionWeight(Permission.of(node));
     }
 
+    /**
+     * Returns the permission weights for several permission nodes with a single lookup.
+     *
+     * @param permissions the permissions to evaluate
+     * @return the weights, in the order of {@code permissions}
+     * @see PermissionServices#resolvePermissionWeights(Permittable, Permission...)
+     */
+    default @NonNull int[] permissionWeights(final @NonNull Permission... permissions) {
+        return PermissionServices.getInstance().resolvePermissionWeights(this, permissions);
+    }
+
     /**
      * Checks if this permittable has the permission (weight > 0).
      *
@@ -90,7 +136,7 @@ public interface Permittable {
      * @return true if weight > 0
      */
     default boolean hasPermission(final @NonNull Permission permission) {
-        return isPermitted(permission, weight -> weight > 0);
+        return permissionWeight(permission) > 0;
     }
 
     /**
@@ -103,6 +149,38 @@ public interface Permittable {
         return hasPermission(Permission.of(node));
     }
 
+    /**
+     * Takes an immutable snapshot of the effective permissions, for several
+     * checks that must agree with each other.
+     *
+     * @return the snapshot
+     * @see PermissionServices#snapshotOf(Permittable)
+     */
+    default @NonNull PermissionSnapshot snapshot() {
+        return PermissionServices.getInstance().snapshotOf(this);
+    }
+
+    /**
+     * Resolves the effective permission weight of a pre-compiled key.
+     *
+     * @param key the key of the permission to resolve
+     * @return an integer weight following the system rules
+     * @see PermissionServices#resolvePermissionWeight(Permittable, PermissionKey)
+     */
+    default int permissionWeight(final @NonNull PermissionKey key) {
+        return PermissionServices.getInstance().resolvePermissionWeight(this, key);
+    }
+
+    /**
+     * Checks if this permittable has the permission of a pre-compiled key (weight > 0).
+     *
+     * @param key the key of the permission to evaluate
+     * @return true if weight > 0
+     */
+    default boolean hasPermission(final @NonNull PermissionKey key) {
+        return permissionWeight(key) > 0;
+    }
+
     /**
      * Evaluates the permission weight using a custom predicate.
      *
@@ -111,7 +189,7 @@ public interface Permittable {
      * @return result of predicate applied on weight
      */
     default boolean isPermitted(final @NonNull Permission permission,
-                       final @NonNull Predicate<Integer> predicate) {
+                       final @NonNull IntPredicate predicate) {
         return predicate.test(permissionWeight(permission));
     }
 
@@ -123,10 +201,55 @@ public interface Permittable {
      * @return predicate result
      */
     default boolean isPermitted(final @NonNull String node,
-                       final @NonNull Predicate<Integer> predicate) {
+                       final @NonNull IntPredicate predicate) {
         return isPermitted(Permission.of(node), predicate);
     }
 
+    /**
+     * Resolves the effective permission weight within a context.
+     *
+     * @param permission the permission to resolve
+     * @param context the context of the check, e.g. the current instance
+     * @return the weight in the context
+     * @see PermissionServices#resolvePermissionWeight(Permittable, Permission, PermissionContext)
+     */
+    default int permissionWeight(final @NonNull Permission permission, final @NonNull PermissionContext context) {
+        return PermissionServices.getInstance().resolvePermissionWeight(this, permission, context);
+    }
+
+    /**
+     * Resolves a permission node and delegates to {@link #permissionWeight(Permission, PermissionContext)}.
+     *
+     * @param node permission node string (e.g. "chat.color")
+     * @param context the context of the check
+     * @return the weight in the context
+     */
+    default int permissionWeight(final @NonNull String node, final @NonNull PermissionContext context) {
+        return permissionWeight(Permission.of(node), context);
+    }
+
+    /**
+     * Checks if the permission is granted within a context (weight &gt; 0).
+     *
+     * @param permission the permission to check
+     * @param context the context of the check
+     * @return true if granted in the context
+     */
+    default boolean hasPermission(final @NonNull Permission permission, final @NonNull PermissionContext context) {
+        return permissionWeight(permission, context) > 0;
+    }
+
+    /**
+     * Checks if a permission node string is granted within a context.
+     *
+     * @param node the permission node string
+     * @param context the context of the check
+     * @return true if granted in the context
+     */
+    default boolean hasPermission(final @NonNull String node, final @NonNull PermissionContext context) {
+        return hasPermission(Permission.of(node), context);
+    }
+
     /**
      * Sets the permission weight explicitly.
      *
@@ -147,6 +270,81 @@ public interface Permittable {
         setPermission(Permission.of(node), weight);
     }
 
+    /**
+     * Sets the permission weight within a context only.
+     *
+     * @param permission the permission to set
+     * @param context the context the weight applies in
+     * @param weight the weight to assign, negative removes the contextual entry
+     */
+    default void setPermission(final @NonNull Permission permission, final @NonNull PermissionContext context, int weight) {
+        PermissionServices.getInstance().updatePermissionWeight(this, permission, context, weight);
+    }
+
+    /**
+     * Sets a permission by node string within a context only.
+     *
+     * @param node permission node string
+     * @param context the context the weight applies in
+     * @param weight weight to assign, negative removes the contextual entry
+     */
+    default void setPermission(final @NonNull String node, final @NonNull PermissionContext context, int weight) {
+        setPermission(Permission.of(node), context, weight);
+    }
+
+    /**
+     * Sets a permission weight until the given instant.
+     *
+     * @param permission the permission to set
+     * @param weight the weight to assign, 0 or above
+     * @param expiry the instant at which the weight is removed again
+     * @see PermissionServices#updatePermissionWeight(Permittable, Permission, int, Instant)
+     */
+    default void setPermission(final @NonNull Permission permission, int weight, final @NonNull Instant expiry) {
+        PermissionServices.getInstance().updatePermissionWeight(this, permission, weight, expiry);
+    }
+
+    /**
+     * Sets a permission by node string until the given instant.
+     *
+     * @param node permission node string
+     * @param weight weight to assign, 0 or above
+     * @param expiry the instant at which the weight is removed again
+     */
+    default void setPermission(final @NonNull String node, int weight, final @NonNull Instant expiry) {
+        setPermission(Permission.of(node), weight, expiry);
+    }
+
+    /**
+     * Returns when the own weight of a permission expires.
+     *
+     * @param permission the exact permission node
+     * @return the expiry, or {@code null} if the weight is permanent or unset
+     */
+    default @Nullable Instant permissionExpiry(final @NonNull Permission permission) {
+        return PermissionServices.getInstance().expiryOf(this, permission);
+    }
+
+    /**
+     * Returns when the own weight of a permission expires by node string.
+     *
+     * @param node node string
+     * @return the expiry, or {@code null} if the weight is permanent or unset
+     */
+    default @Nullable Instant permissionExpiry(final @NonNull String node) {
+        return permissionExpiry(Permission.of(node));
+    }
+
+    /**
+     * Applies several permission and parent changes at once.
+     *
+     * @param action records the changes
+     * @see PermissionServices#edit(Permittable, Consumer)
+     */
+    default void edit(final @NonNull Consumer<PermissionEdit> action) {
+        PermissionServices.getInstance().edit(this, action);
+    }
+
     /**
      * Grants a permission (sets positive weight, e.g. 1).
      *
@@ -165,6 +363,30 @@ public interface Permittable {
         grantPermission(Permission.of(node));
     }
 
+    /**
+     * Grants a permission for a limited time, e.g. a trial rank.
+     *
+     * @param permission permission to grant
+     * @param duration time until the grant is revoked again
+     * @throws IllegalArgumentException if the duration is not positive
+     */
+    default void grantPermission(final @NonNull Permission permission, final @NonNull Duration duration) {
+        if (duration.isZero() || duration.isNegative())
+            throw new IllegalArgumentException("Duration must be positive: " + duration);
+        setPermission(permission, 1, Instant.now().plus(duration));
+    }
+
+    /**
+     * Grants a permission by node string for a limited time.
+     *
+     * @param node node string
+     * @param duration time until the grant is revoked again
+     * @throws IllegalArgumentException if the duration is not positive
+     */
+    default void grantPermission(final @NonNull String node, final @NonNull Duration duration) {
+        grantPermission(Permission.of(node), duration);
+    }
+
     /**
      * Revokes a permission (sets weight to -1).
      *
@@ -35,6 +35,9 @@ import java.util.UUID;
  * <p>
  * Static accessors {@link #of(UUID)} and {@link #of(String)} allow fetching
  * existing groups from the registered {@link PermissionServices} instance.
+ * New groups are created and registered through
+ * {@link #create(String, UUID, TagHandler)}, the record constructor alone
+ * does not register anything.
  * </p>
  *
  * @author LeyCM
@@ -65,28 +68,33 @@ public record PermittableGroup(String id, UUID uuid, TagHandler tagHandler)
     }
 
     /**
-     * Creates a new {@link PermittableGroup} with a random {@link UUID} and a new {@link TagHandler}.
-     *
-     * <p>
-     * This constructor registers the new group automatically in {@link PermissionServices}.
-     * </p>
+     * Creates a new {@link PermittableGroup} with a random {@link UUID} and a new {@link TagHandler}
+     * and registers it in {@link PermissionServices}.
      *
      * @param id the string identifier of the group
+     * @return the registered group
      */
-    private PermittableGroup(String id) {
-        this(id, UUID.randomUUID(), TagHandler.newHandler());
+    public static @NonNull PermittableGroup create(String id) {
+        return create(id, UUID.randomUUID(), TagHandler.newHandler());
     }
 
     /**
-     * Records constructor, automatically registers this instance in
-     * {@link PermissionServices}.
+     * Creates a new {@link PermittableGroup} and registers it in {@link PermissionServices}.
+     *
+     * <p>
+     * Registration happens once the group is constructed, so the service
+     * never sees a partially initialized instance.
+     * </p>
      *
      * @param id         the string identifier of the group
      * @param uuid       the unique identifier of the group
      * @param tagHandler the tag handler for custom data
+     * @return the registered group
      */
-    public PermittableGroup {
-        PermissionServices.getInstance().registerPermittable(this);
+    public static @NonNull PermittableGroup create(String id, UUID uuid, TagHandler tagHandler) {
+        PermittableGroup group = new PermittableGroup(id, uuid, tagHandler);
+        PermissionServices.getInstance().registerPermittable(group);
+        return group;
     }
 
     /**
@@ -11,6 +11,7 @@
 package de.leycm.stomgate.permittable;
 
 import de.leycm.stomgate.PermissionServices;
+import de.leycm.stomgate.command.CommandVisibility;
 import de.leycm.stomgate.perm.Permittable;
 import lombok.NonNull;
 import net.minestom.server.entity.Player;
@@ -18,6 +19,8 @@ import net.minestom.server.network.player.GameProfile;
 import net.minestom.server.network.player.PlayerConnection;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represents a {@link Player} in the permission system, implementing the
@@ -25,8 +28,9 @@ import java.util.UUID;
  *
  * <p>
  * This class wraps a standard Minestom {@link Player} but integrates
- * it with the {@link PermissionServices} system. Upon creation, each
- * player is automatically registered in the global permission service.
+ * it with the {@link PermissionServices} system. Players created through
+ * {@link #of(PlayerConnection, GameProfile)} are registered in the global
+ * permission service once they are fully constructed.
  * </p>
  *
  * <p>
@@ -34,24 +38,45 @@ import java.util.UUID;
  * which is used as the unique identifier in the permission system.
  * </p>
  *
+ * <p>
+ * Command permissions are cached in a {@link CommandVisibility}. Services
+ * call {@link #permissionsChanged()} whenever the effective permissions of
+ * the player may have changed, the command tree is then sent again on the
+ * next tick if and only if a command became visible or hidden.
+ * </p>
+ *
  * @author LeyCM
  * @since 1.0.1
  */
 public class PermittablePlayer extends Player implements Permittable {
 
+    private final AtomicBoolean commandRefreshPending = new AtomicBoolean();
+    /** Created on first use, the player must not escape its constructor */
+    private final AtomicReference<CommandVisibility> commandVisibility = new AtomicReference<>();
+
     /**
-     * Constructs a new {@code PermittablePlayer}.
-     *
-     * <p>
-     * The player is automatically registered in {@link PermissionServices} upon creation.
-     * </p>
+     * Constructs a new {@code PermittablePlayer} without registering it,
+     * subclasses register their instances once they are fully constructed.
      *
      * @param playerConnection the connection for this player
      * @param gameProfile      the game profile containing player data
+     * @see #of(PlayerConnection, GameProfile)
      */
-    public PermittablePlayer(PlayerConnection playerConnection, GameProfile gameProfile) {
+    protected PermittablePlayer(PlayerConnection playerConnection, GameProfile gameProfile) {
         super(playerConnection, gameProfile);
-        PermissionServices.getInstance().registerPermittable(this);
+    }
+
+    /**
+     * Creates a new {@code PermittablePlayer} and registers it in {@link PermissionServices}.
+     *
+     * @param playerConnection the connection for this player
+     * @param gameProfile      the game profile containing player data
+     * @return the registered player
+     */
+    public static @NonNull PermittablePlayer of(PlayerConnection playerConnection, GameProfile gameProfile) {
+        PermittablePlayer player = new PermittablePlayer(playerConnection, gameProfile);
+        PermissionServices.getInstance().registerPermittable(player);
+        return player;
     }
 
     /**
@@ -64,4 +89,35 @@ public class PermittablePlayer extends Player implements Permittable {
     public @NonNull UUID permittableId() {
         return getUuid();
     }
+
+    /**
+     * Returns the cached visibility of the commands of this player.
+     *
+     * @return the visibility cache
+     */
+    public @NonNull CommandVisibility commandVisibility() {
+        CommandVisibility visibility = commandVisibility.get();
+        if (visibility != null) return visibility;
+        CommandVisibility created = new CommandVisibility(this);
+        CommandVisibility raced = commandVisibility.compareAndExchange(null, created);
+        return raced == null ? created : raced;
+    }
+
+    /**
+     * Notifies the player that its effective permissions may have changed.
+     *
+     * <p>
+     * Calls within the same tick are coalesced into a single refresh of the
+     * {@link CommandVisibility} on the next tick, which only sends the
+     * command tree again if the visible commands differ.
+     * </p>
+     */
+    public void permissionsChanged() {
+        if (!commandRefreshPending.compareAndSet(false, true)) return;
+        scheduleNextTick(entity -> {
+            // cleared first, a change during the refresh schedules another one
+            commandRefreshPending.set(false);
+            if (commandVisibility().refresh()) refreshCommands();
+        });
+    }
 }
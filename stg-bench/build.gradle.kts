@@ -0,0 +1,38 @@
+/**
+ * ───────────────────────────────────────────────────────
+ *  JMH benchmarks of the permission hot paths
+ * ───────────────────────────────────────────────────────
+ *
+ *  ./gradlew :bench:jmh                          all benchmarks
+ *  ./gradlew :bench:jmh -PjmhIncludes=Resolve    benchmarks matching a regex
+ *
+ *  Results are written as JSON to build/results/jmh/results.json, the gc
+ *  profiler adds gc.alloc.rate and gc.alloc.rate.norm to every benchmark.
+ */
+
+plugins {
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+dependencies {
+    jmh(project(":api"))
+    jmh(project(":common"))
+    jmh(libs.leyneck)
+    jmh(libs.minestom)
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    findProperty("jmhIncludes")?.let { includes.add(it.toString()) }
+}
+
+// Benchmarks are never published
+tasks.withType<PublishToMavenRepository>().configureEach {
+    enabled = false
+}
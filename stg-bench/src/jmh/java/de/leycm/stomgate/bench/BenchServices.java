@@ -0,0 +1,129 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bench;
+
+import de.leycm.stomgate.FilePermissionService;
+import de.leycm.stomgate.PermissionServices;
+import de.leycm.stomgate.perm.Permittable;
+import de.leycm.stomgate.permittable.PermittableGroup;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Shared fixture of the benchmarks, a {@link FilePermissionService} in a
+ * temporary folder with a chain of groups.
+ *
+ * <p>
+ * The service is registered as {@link PermissionServices} instance but never
+ * installed, so no Minestom server is needed.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+final class BenchServices {
+
+    private BenchServices() {
+    }
+
+    /**
+     * Creates and registers a service on a fresh temporary folder.
+     *
+     * @return the running fixture, {@link Fixture#close()} it in the teardown
+     */
+    static @NonNull Fixture start() {
+        try {
+            Path folder = Files.createTempDirectory("stomgate-bench");
+            FilePermissionService services = new FilePermissionService(folder.toFile());
+            PermissionServices.init(services);
+            return new Fixture(folder, services);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds a chain of groups, every group inherits from the previous one.
+     *
+     * <p>
+     * Level {@code d} holds the nodes {@code bench.level<d>.<i>} for every
+     * {@code i < permissions} and a wildcard {@code bench.level<d>.wild.*}.
+     * Level 0 is the root, the last level is returned.
+     * </p>
+     *
+     * @param depth       number of groups in the chain, at least 1
+     * @param permissions number of nodes per group
+     * @return the group at the end of the chain
+     */
+    static @NonNull PermittableGroup chain(final int depth, final int permissions) {
+        PermittableGroup parent = null;
+        for (int level = 0; level < depth; level++) {
+            PermittableGroup group = PermittableGroup.create("bench-" + level, UUID.randomUUID(), null);
+            final int current = level;
+            final PermittableGroup inherited = parent;
+            group.edit(edit -> {
+                for (int i = 0; i < permissions; i++) edit.grant(node(current, i));
+                edit.grant("bench.level" + current + ".wild.*");
+                if (inherited != null) edit.parent(inherited);
+            });
+            parent = group;
+        }
+        return parent;
+    }
+
+    /**
+     * Returns the node {@code i} of a chain level.
+     *
+     * @param level the level of the chain
+     * @param i     the index within the level
+     * @return the node string
+     */
+    static @NonNull String node(final int level, final int i) {
+        return "bench.level" + level + "." + i;
+    }
+
+    /**
+     * A running service and its folder.
+     *
+     * @param folder   the temporary folder
+     * @param services the service
+     */
+    record Fixture(@NonNull Path folder, @NonNull FilePermissionService services) implements AutoCloseable {
+
+        /**
+         * Drains the service and deletes its folder.
+         */
+        @Override
+        public void close() {
+            services.onUninstall();
+            try (Stream<Path> files = Files.walk(folder)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Minimal permittable standing in for a player.
+     *
+     * @param permittableId the id
+     */
+    record Player(@NonNull UUID permittableId) implements Permittable {
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bench;
+
+import de.leycm.stomgate.FilePermissionService;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionKey;
+import de.leycm.stomgate.permittable.PermittableGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Permission checks of a player at the end of a group chain.
+ *
+ * <p>
+ * The player holds nothing itself, every hit is decided by a group. Deep
+ * hits are decided by the root of the chain, wildcard hits by a wildcard of
+ * the root and misses walk the whole flattened view without a match.
+ * Checks by key skip the trie walk after their first resolution.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CheckBenchmark {
+
+    @Param({"1", "8", "32"})
+    public int depth;
+
+    @Param({"16", "1024"})
+    public int permissions;
+
+    private BenchServices.Fixture fixture;
+    private FilePermissionService services;
+    private BenchServices.Player player;
+
+    private String deepNode;
+    private Permission deep;
+    private Permission wildcard;
+    private Permission miss;
+    private PermissionKey deepKey;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture = BenchServices.start();
+        services = fixture.services();
+        PermittableGroup leaf = BenchServices.chain(depth, permissions);
+        player = new BenchServices.Player(UUID.randomUUID());
+        player.setParent(leaf);
+
+        deepNode = BenchServices.node(0, permissions - 1);
+        deep = Permission.of(deepNode);
+        wildcard = Permission.of("bench.level0.wild.any.node");
+        miss = Permission.of("bench.unknown.node");
+        deepKey = deep.key();
+        if (!player.hasPermission(deep)) throw new IllegalStateException("Chain is not inherited");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public boolean hasPermissionByString() {
+        return player.hasPermission(deepNode);
+    }
+
+    @Benchmark
+    public boolean hasPermissionByPermission() {
+        return player.hasPermission(deep);
+    }
+
+    @Benchmark
+    public boolean hasPermissionByKey() {
+        return player.hasPermission(deepKey);
+    }
+
+    @Benchmark
+    public int resolveDeep() {
+        return services.resolvePermissionWeight(player, deep);
+    }
+
+    @Benchmark
+    public int resolveWildcard() {
+        return services.resolvePermissionWeight(player, wildcard);
+    }
+
+    @Benchmark
+    public int resolveMiss() {
+        return services.resolvePermissionWeight(player, miss);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int resolveDeepContended() {
+        return services.resolvePermissionWeight(player, deep);
+    }
+}
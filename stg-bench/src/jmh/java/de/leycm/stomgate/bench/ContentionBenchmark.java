@@ -0,0 +1,103 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bench;
+
+import de.leycm.stomgate.FilePermissionService;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.permittable.PermittableGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks running while the group chain is being changed.
+ *
+ * <p>
+ * Seven threads check a player while one thread keeps toggling a node of the
+ * root group, every toggle invalidates the flattened view of the whole chain.
+ * The reported score of each method shows how much the readers suffer from
+ * rebuilding views and how fast the writer gets through.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContentionBenchmark {
+
+    @Param({"8"})
+    public int depth;
+
+    @Param({"16", "1024"})
+    public int permissions;
+
+    private BenchServices.Fixture fixture;
+    private FilePermissionService services;
+    private PermittableGroup root;
+    private BenchServices.Player player;
+    private Permission checked;
+    private Permission toggled;
+    private boolean granted;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture = BenchServices.start();
+        services = fixture.services();
+        PermittableGroup leaf = BenchServices.chain(depth, permissions);
+        root = services.permittableGroupOf("bench-0");
+        player = new BenchServices.Player(UUID.randomUUID());
+        player.setParent(leaf);
+
+        checked = Permission.of(BenchServices.node(0, permissions - 1));
+        toggled = Permission.of("bench.level0.toggled");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(7)
+    public int check() {
+        return services.resolvePermissionWeight(player, checked);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void toggle() {
+        granted = !granted;
+        services.updatePermissionWeight(root, toggled, granted ? 1 : -1);
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(8)
+    public int checkUncontended() {
+        return services.resolvePermissionWeight(player, checked);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bench;
+
+import de.leycm.stomgate.FilePermissionService;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.permittable.PermittableGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A change of a group inherited by every online player, followed by one
+ * check per player.
+ *
+ * <p>
+ * Each invocation flips a node of the group, which drops the views of all
+ * members, and then checks every member once, which rebuilds them. Every
+ * third player holds a weight of its own and so needs a layered view of
+ * its own instead of sharing the one of the group.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GroupChangeBenchmark {
+
+    @Param({"2000"})
+    public int members;
+
+    @Param({"16", "1024"})
+    public int permissions;
+
+    private BenchServices.Fixture fixture;
+    private FilePermissionService services;
+    private PermittableGroup group;
+    private BenchServices.Player[] players;
+    private Permission flipped;
+    private Permission checked;
+    private boolean granted;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture = BenchServices.start();
+        services = fixture.services();
+        group = BenchServices.chain(1, permissions);
+        players = new BenchServices.Player[members];
+        for (int i = 0; i < members; i++) {
+            players[i] = new BenchServices.Player(UUID.randomUUID());
+            players[i].setParent(group);
+            if (i % 3 == 0) players[i].grantPermission("bench.own." + i);
+        }
+        flipped = Permission.of("bench.flipped");
+        checked = Permission.of(BenchServices.node(0, permissions - 1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public int changeAndCheckAll() {
+        granted = !granted;
+        services.updatePermissionWeight(group, flipped, granted ? 1 : -1);
+        int sum = 0;
+        for (BenchServices.Player player : players) sum += services.resolvePermissionWeight(player, checked);
+        return sum;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bench;
+
+import de.leycm.stomgate.perm.Permission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of permission nodes through {@link Permission#of(String)}.
+ *
+ * <p>
+ * {@code interned} looks up nodes that were parsed before, the path taken by
+ * every check with a string literal. {@code uncached} parses a node that was
+ * never seen, once the intern cache is full that is a plain split.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermissionParseBenchmark {
+
+    private static final int NODES = 256;
+
+    private final String[] nodes = new String[NODES];
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < NODES; i++) {
+            nodes[i] = "server.module" + (i % 16) + ".command" + i + ".use";
+            Permission.of(nodes[i]);
+        }
+    }
+
+    /**
+     * Per thread cursor, keeps the threaded runs free of shared writes.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+        private long unique;
+
+        private int nextIndex() {
+            return next++ & (NODES - 1);
+        }
+    }
+
+    @Benchmark
+    public Permission interned(Cursor cursor) {
+        return Permission.of(nodes[cursor.nextIndex()]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Permission internedContended(Cursor cursor) {
+        return Permission.of(nodes[cursor.nextIndex()]);
+    }
+
+    @Benchmark
+    public Permission uncached(Cursor cursor) {
+        return Permission.of("server.generated.node" + cursor.unique++ + ".use");
+    }
+
+    @Benchmark
+    public Permission constructed(Cursor cursor) {
+        return new Permission("server", "module", "command" + cursor.nextIndex(), "use");
+    }
+}
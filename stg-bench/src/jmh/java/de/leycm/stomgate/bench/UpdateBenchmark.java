@@ -0,0 +1,112 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bench;
+
+import de.leycm.stomgate.FilePermissionService;
+import de.leycm.stomgate.perm.Permission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code updatePermissionWeight}.
+ *
+ * <p>
+ * Every call flips a node between granted and unset, so each one is a real
+ * change that copies the weights and marks the permittable dirty. The
+ * write-behind persister saves in the background as it would in production.
+ * {@code shared} lets all threads write the same permittable, {@code own}
+ * gives every thread a permittable of its own.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UpdateBenchmark {
+
+    @Param({"16", "1024"})
+    public int permissions;
+
+    private BenchServices.Fixture fixture;
+    private FilePermissionService services;
+    private BenchServices.Player shared;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture = BenchServices.start();
+        services = fixture.services();
+        shared = fill(new BenchServices.Player(UUID.randomUUID()), permissions);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    private static BenchServices.Player fill(BenchServices.Player player, int permissions) {
+        player.edit(edit -> {
+            for (int i = 0; i < permissions; i++) edit.grant(BenchServices.node(0, i));
+        });
+        return player;
+    }
+
+    /**
+     * Per thread writer state.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        private BenchServices.Player own;
+        private Permission node;
+        private boolean granted;
+
+        @Setup(Level.Trial)
+        public void setup(UpdateBenchmark benchmark) {
+            own = fill(new BenchServices.Player(UUID.randomUUID()), benchmark.permissions);
+            node = Permission.of("bench.update." + UUID.randomUUID());
+        }
+
+        private int nextWeight() {
+            granted = !granted;
+            return granted ? 1 : -1;
+        }
+    }
+
+    @Benchmark
+    public void own(Writer writer) {
+        services.updatePermissionWeight(writer.own, writer.node, writer.nextWeight());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void ownContended(Writer writer) {
+        services.updatePermissionWeight(writer.own, writer.node, writer.nextWeight());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void shared(Writer writer) {
+        services.updatePermissionWeight(shared, writer.node, writer.nextWeight());
+    }
+}
@@ -2,10 +2,20 @@ dependencies {
     implementation(project(":api"))
     implementation(libs.leyneck)
     compileOnly(libs.jetanno)
+    implementation("redis.clients:jedis:5.2.0")
 
     compileOnly(libs.minestom)
     testImplementation(libs.minestom)
     testImplementation(libs.logback)
+
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    testImplementation("com.github.fppt:jedis-mock:1.1.19")
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
 
 tasks.named("sourcesJar") {
@@ -0,0 +1,76 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate;
+
+import de.leycm.stomgate.bus.PermissionBus;
+import de.leycm.stomgate.bus.PermissionChange;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a {@link CachingPermissionService} in sync with the other servers
+ * sharing its storage through an optional {@link PermissionBus}.
+ *
+ * <p>
+ * Every saved permittable is announced with the origin id of this service
+ * and its next sequence number, the announcements of a batch are flushed once
+ * the storage synced it. Receivers compare the sequence with the last one they
+ * reloaded from the same origin, and reload everything they cached whenever the
+ * bus may have missed announcements. Without a bus every method does nothing.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+final class BusSync {
+
+    private final @Nullable PermissionBus bus;
+    /** Origin id of the changes announced on the bus, see {@link PermissionChange} */
+    private final String origin = UUID.randomUUID().toString();
+    /** Sequence of the changes announced on the bus */
+    private final AtomicLong sequence = new AtomicLong();
+
+    BusSync(@Nullable PermissionBus bus) {
+        this.bus = bus;
+    }
+
+    /**
+     * Announces a saved permittable, delivered with the next {@link #flush()}.
+     */
+    void announce(@NonNull UUID uuid) {
+        if (bus != null) bus.publish(new PermissionChange(uuid, origin, sequence.incrementAndGet()));
+    }
+
+    /**
+     * Sends the announcements of a batch, callers synced the storage before.
+     */
+    void flush() {
+        if (bus != null) bus.flush();
+    }
+
+    /**
+     * Hands every change announced by another server to the given listener,
+     * the resync action runs whenever the bus may have lost some of them.
+     */
+    void subscribe(@NonNull Consumer<PermissionChange> listener, @NonNull Runnable resync) {
+        if (bus == null) return;
+        bus.subscribeResync(resync); // before the bus starts receiving
+        bus.subscribe(listener);
+    }
+
+    void close() {
+        if (bus != null) bus.close();
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate;
+
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounds the cache of a {@link CachingPermissionService}.
+ *
+ * <p>
+ * A background sweep evicts entries that were idle longer than
+ * {@code idleTimeout} and, while more than {@code maxCached} remain, the least
+ * recently used ones. The scan runs without any lock of the service, which
+ * decides entry by entry whether it can be evicted. Each sweep also advances a
+ * coarse {@link #clock()} the service stamps its entries with, so lookups do
+ * not query the system clock.
+ * </p>
+ *
+ * @param <S> type of the cache entries
+ * @author LeyCM
+ * @since 1.0.1
+ */
+final class CacheSweeper<S> {
+
+    private static final long SWEEP_INTERVAL_SECONDS = 5;
+
+    private final Collection<S> cached;
+    private final ToLongFunction<S> lastAccess;
+    private final Eviction<S> eviction;
+    private final int maxCached;
+    private final long idleTimeoutSeconds;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean requested = new AtomicBoolean();
+    /** Coarse clock in seconds, advanced by every sweep */
+    private volatile long clock = now();
+
+    /**
+     * Creates and starts a new sweeper.
+     *
+     * @param cached      live view of the cached entries
+     * @param lastAccess  coarse time of the last lookup of an entry
+     * @param eviction    action evicting entries in the given order
+     * @param maxCached   number of cached entries above which the least recently used are evicted
+     * @param idleTimeout time after which an unused entry is evicted
+     * @throws IllegalArgumentException if the bound is below one or the timeout not positive
+     */
+    CacheSweeper(@NonNull Collection<S> cached, @NonNull ToLongFunction<S> lastAccess, @NonNull Eviction<S> eviction,
+                 int maxCached, @NonNull Duration idleTimeout) {
+        if (maxCached < 1)
+            throw new IllegalArgumentException("Max cached must be at least 1: " + maxCached);
+        if (idleTimeout.isZero() || idleTimeout.isNegative())
+            throw new IllegalArgumentException("Idle timeout must be positive: " + idleTimeout);
+
+        this.cached = cached;
+        this.lastAccess = lastAccess;
+        this.eviction = eviction;
+        this.maxCached = maxCached;
+        this.idleTimeoutSeconds = Math.max(1, idleTimeout.toSeconds());
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stomgate-cache-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
+    /**
+     * Returns the coarse time in seconds as of the last sweep.
+     */
+    long clock() {
+        return clock;
+    }
+
+    /**
+     * Requests a sweep ahead of schedule if the cache grew beyond its bound.
+     */
+    void grown() {
+        if (cached.size() <= maxCached || !requested.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this::sweep);
+        } catch (Exception e) {
+            // sweeper already shut down
+            requested.set(false);
+        }
+    }
+
+    /**
+     * Runs a task on the sweeper thread at a fixed delay, a slow task delays evictions but never lookups.
+     */
+    ScheduledFuture<?> scheduleWithFixedDelay(@NonNull Runnable task, long millis) {
+        return executor.scheduleWithFixedDelay(task, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sweep() {
+        requested.set(false);
+        long now = now();
+        clock = now;
+
+        try {
+            List<S> idle = new ArrayList<>();
+            List<S> candidates = new ArrayList<>();
+            for (S entry : cached) {
+                if (now - lastAccess.applyAsLong(entry) >= idleTimeoutSeconds) idle.add(entry);
+                else candidates.add(entry);
+            }
+            if (!idle.isEmpty()) eviction.evict(idle, Integer.MAX_VALUE);
+
+            int excess = cached.size() - maxCached;
+            if (excess <= 0) return;
+
+            candidates.sort(Comparator.comparingLong(lastAccess));
+            eviction.evict(candidates, excess);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the sweeper thread together with every task scheduled on it.
+     */
+    void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Evicts cache entries on behalf of the sweeper.
+     *
+     * @param <S> type of the cache entries
+     */
+    @FunctionalInterface
+    interface Eviction<S> {
+
+        /**
+         * Evicts up to {@code limit} of the given entries in order, skipping
+         * those that have to stay in memory.
+         *
+         * @return the number of evicted entries
+         */
+        int evict(@NonNull List<S> entries, int limit);
+    }
+}
@@ -0,0 +1,1411 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate;
+
+import de.leycm.stomgate.bus.PermissionBus;
+import de.leycm.stomgate.bus.PermissionChange;
+import de.leycm.stomgate.data.PermissionTrie;
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.metrics.MetricsRecorder;
+import de.leycm.stomgate.metrics.MetricsReporter;
+import de.leycm.stomgate.metrics.PermissionMetrics;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionContext;
+import de.leycm.stomgate.perm.PermissionEdit;
+import de.leycm.stomgate.perm.PermissionKey;
+import de.leycm.stomgate.perm.PermissionSnapshot;
+import de.leycm.stomgate.permittable.PermittableGroup;
+import de.leycm.stomgate.perm.Permittable;
+import de.leycm.stomgate.permittable.PermittablePlayer;
+import de.leycm.stomgate.storage.PermissionStorage;
+import de.leycm.stomgate.storage.PermittableData;
+import de.leycm.stomgate.storage.WriteBehindPersister;
+import lombok.NonNull;
+import net.minestom.server.MinecraftServer;
+import net.minestom.server.event.player.PlayerDisconnectEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Base of the storage backed services, caches every permittable in memory
+ * and hands changes to a {@link PermissionStorage} in the background.
+ *
+ * <p>
+ * Every permittable owns a {@link Slot} that is created once and never replaced.
+ * The slot publishes an immutable {@link State} through a volatile field, writers
+ * build a new state and swap it in, readers never lock. Writes to the same
+ * permittable are serialized through striped locks, changes of the parent graph
+ * additionally through a single graph lock so cycle checks see a stable graph.
+ * Slots are loaded before the graph lock is taken, so storage reads never
+ * hold up parent changes or evictions.
+ * </p>
+ *
+ * <p>
+ * A permittable may inherit from several groups, each with a priority. Every
+ * slot keeps its resolution order, a flat array of itself and all of its
+ * ancestors in the order they are consulted: parents by descending priority,
+ * each followed by its own ancestors, and a group shared by several parents
+ * only after the last of them. The order is computed when the parents of a
+ * slot change, for that slot and the slots inheriting from it only, and also
+ * serves the cycle check.
+ * </p>
+ *
+ * <p>
+ * The flattened {@link Effective} view of a slot remembers the order and states
+ * it was built from and is revalidated on every read, a concurrent write can
+ * therefore never leave a stale merge behind. A change only drops the views of
+ * the subtree inheriting from it, each is rebuilt once on its next check.
+ * </p>
+ *
+ * <p>
+ * Changes are not written on the calling thread. They mark the permittable
+ * dirty in a {@link WriteBehindPersister}, {@link #onUninstall()} drains
+ * everything that is still pending.
+ * </p>
+ *
+ * <p>
+ * The bounded cache, timed weights, registered groups and the sync with other
+ * servers are delegated to the {@link CacheSweeper}, {@link ExpiryScheduler},
+ * {@link GroupRegistry} and {@link BusSync}. Subclasses only choose the
+ * storage and the bus.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public abstract class CachingPermissionService implements PermissionServices {
+
+    private static final int LOCK_STRIPES = 64;
+    static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(2);
+    static final int DEFAULT_MAX_PENDING = 512;
+    static final int DEFAULT_MAX_CACHED = 10_000;
+    static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    /** Longest parent chain followed while loading, longer stored chains are cycles or corrupt */
+    private static final int MAX_LOAD_DEPTH = 64;
+    /** Time a preloaded slot is kept for a player whose login has not completed yet */
+    private static final long LOGIN_HOLD_SECONDS = 60;
+    private static final long PERMANENT = ExpiryScheduler.PERMANENT;
+
+    protected final PermissionStorage storage;
+
+    /** Cache: UUID -> slot holding the current state and effective view */
+    private final Map<UUID, Slot> cache = new ConcurrentHashMap<>();
+    /** Slots whose weights the storage does not know yet, overlaid on its holder index */
+    private final Set<Slot> unsaved = ConcurrentHashMap.newKeySet();
+
+    /** Striped write locks, see {@link #lockFor(UUID)} */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    /** Guards parent changes and the member sets */
+    private final Object graphLock = new Object();
+    /** Seqlock over the parent graph, odd while parents and resolution orders are replaced */
+    private volatile long graphVersion;
+
+    private final WriteBehindPersister persister;
+    /** Saves of the batch in progress, only touched by the flushing thread, the persister runs one batch at a time */
+    private final List<Saved> batch = new ArrayList<>();
+    private final ExecutorService loader = Executors.newVirtualThreadPerTaskExecutor();
+    private final GroupRegistry registry;
+    private final CacheSweeper<Slot> sweeper;
+    private final ExpiryScheduler expiryScheduler;
+    private final BusSync sync;
+
+    /** Recorder of the installed reporter, {@code null} while metrics are off */
+    private volatile @Nullable MetricsRecorder metrics;
+    private volatile MetricsReporter reporter = MetricsReporter.NOOP;
+    private @Nullable ScheduledFuture<?> reporting;
+
+    /**
+     * Creates a service on top of the given storage.
+     *
+     * @param storage       the storage backend, closed by {@link #onUninstall()}
+     * @param flushInterval time between two background flushes
+     * @param maxPending    number of changed permittables that triggers an early flush
+     * @param maxCached     number of cached permittables above which unpinned ones are evicted
+     * @param idleTimeout   time after which an unused, unpinned permittable is evicted
+     * @param bus           bus shared with the other servers on the same storage, closed by {@link #onUninstall()}
+     * @throws IllegalArgumentException if the bound is below one or the timeout not positive
+     */
+    protected CachingPermissionService(@NonNull PermissionStorage storage, @NonNull Duration flushInterval, int maxPending,
+                                       int maxCached, @NonNull Duration idleTimeout, @Nullable PermissionBus bus) {
+        this.storage = storage;
+        for (int i = 0; i < locks.length; i++) locks[i] = new Object();
+        this.sweeper = new CacheSweeper<>(cache.values(), slot -> slot.lastAccess, this::evict, maxCached, idleTimeout);
+        this.registry = new GroupRegistry(storage);
+        this.sync = new BusSync(bus);
+        this.persister = new WriteBehindPersister("stomgate-persister",
+                this::savePermissions, this::afterFlush, this::flushed, flushInterval, maxPending);
+        this.expiryScheduler = new ExpiryScheduler(loader, this::expire);
+    }
+
+    private Object lockFor(@NonNull UUID uuid) {
+        int hash = uuid.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    private Slot slotOf(@NonNull UUID uuid) {
+        Slot slot = cache.get(uuid);
+        MetricsRecorder metrics = this.metrics;
+        if (metrics != null) metrics.lookedUp(slot != null);
+        if (slot == null) slot = load(uuid, 0);
+
+        // only write when the coarse clock moved, keeps hot slots free of cache line traffic
+        long now = sweeper.clock();
+        if (slot.lastAccess != now) slot.lastAccess = now;
+        return slot;
+    }
+
+    /**
+     * Loads a slot together with its parents. The storage is read outside
+     * of any lock, a concurrent load of the same permittable may win the race,
+     * its slot is returned then.
+     */
+    private Slot load(@NonNull UUID uuid, int depth) {
+        MetricsRecorder metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        PermittableData data = storage.load(uuid);
+        if (metrics != null) metrics.loaded(start);
+        Map<UUID, Integer> links = data.parents();
+        if (!links.isEmpty() && depth >= MAX_LOAD_DEPTH) {
+            System.err.println("Parent chain of " + uuid + " is cyclic or too deep, dropping its parents");
+            links = Map.of();
+        }
+
+        Slot fresh;
+        if (links.isEmpty()) {
+            fresh = new Slot(uuid, new State(data.weights(), List.of(), data.expiries(), data.contexts()), sweeper.clock());
+            Slot existing = cache.putIfAbsent(uuid, fresh);
+            if (existing != null) return existing;
+        } else {
+            retry:
+            while (true) {
+                List<Link> parents = new ArrayList<>(links.size());
+                for (Map.Entry<UUID, Integer> link : links.entrySet()) {
+                    Slot cachedParent = cache.get(link.getKey());
+                    Slot parent = cachedParent != null ? cachedParent : load(link.getKey(), depth + 1);
+                    parents.add(new Link(parent, link.getValue()));
+                }
+
+                synchronized (graphLock) {
+                    Slot existing = cache.get(uuid);
+                    if (existing != null) return existing;
+                    for (Link link : parents) {
+                        if (link.slot.evicted) continue retry; // swept before we could link it, load it again
+                    }
+
+                    List<Link> sorted = byPriority(parents);
+                    fresh = new Slot(uuid, new State(data.weights(), sorted, data.expiries(), data.contexts()), sweeper.clock());
+                    fresh.order = linearize(fresh, sorted);
+                    cache.put(uuid, fresh);
+                    for (Link link : sorted) link.slot.members.add(fresh);
+                    break;
+                }
+            }
+        }
+
+        if (!data.expiries().isEmpty()) {
+            // a write may have replaced the state already, schedule whatever is current
+            synchronized (lockFor(uuid)) {
+                expiryScheduler.schedule(uuid, fresh.state.expiries);
+            }
+        }
+        sweeper.grown();
+        return fresh;
+    }
+
+    private static PermittableData dataOf(@NonNull State state) {
+        if (state.parents.isEmpty()) return new PermittableData(state.weights, Map.of(), state.expiries, state.contexts);
+        Map<UUID, Integer> parents = new LinkedHashMap<>();
+        for (Link link : state.parents) parents.put(link.slot.uuid, link.priority);
+        return new PermittableData(state.weights, Collections.unmodifiableMap(parents), state.expiries, state.contexts);
+    }
+
+    /**
+     * Sorts parent links by descending priority, links of equal priority keep their order.
+     */
+    private static List<Link> byPriority(@NonNull Collection<Link> links) {
+        List<Link> sorted = new ArrayList<>(links);
+        sorted.sort(Comparator.comparingInt(Link::priority).reversed());
+        return List.copyOf(sorted);
+    }
+
+    /**
+     * Computes the resolution order of a slot from the orders of its parents.
+     * The parent orders are concatenated by priority and only the last
+     * occurrence of every slot is kept, a group shared by several parents is
+     * therefore consulted after all of them and never before a group inheriting from it.
+     */
+    private static Slot[] linearize(@NonNull Slot slot, @NonNull List<Link> parents) {
+        return linearize(slot, parents, Map.of());
+    }
+
+    private static Slot[] linearize(@NonNull Slot slot, @NonNull List<Link> parents, @NonNull Map<Slot, Slot[]> pending) {
+        if (parents.isEmpty()) return new Slot[]{slot};
+
+        List<Slot> sequence = new ArrayList<>();
+        for (Link link : parents) Collections.addAll(sequence, pending.getOrDefault(link.slot, link.slot.order));
+
+        Set<Slot> seen = new HashSet<>();
+        ArrayDeque<Slot> order = new ArrayDeque<>(sequence.size() + 1);
+        for (int i = sequence.size() - 1; i >= 0; i--) {
+            if (seen.add(sequence.get(i))) order.addFirst(sequence.get(i));
+        }
+        order.addFirst(slot);
+        return order.toArray(Slot[]::new);
+    }
+
+    /**
+     * Computes the resolution order of a slot for its new parents and of every
+     * slot inheriting from it, parents before their members, without
+     * publishing any of them. Callers hold the graph lock.
+     */
+    private static Map<Slot, Slot[]> reorder(@NonNull Slot slot, @NonNull List<Link> parents) {
+        Set<Slot> affected = new HashSet<>();
+        ArrayDeque<Slot> queue = new ArrayDeque<>(slot.members);
+        while (!queue.isEmpty()) {
+            Slot next = queue.poll();
+            if (affected.add(next)) queue.addAll(next.members);
+        }
+
+        Map<Slot, Slot[]> orders = new HashMap<>();
+        orders.put(slot, linearize(slot, parents));
+        for (Slot next : affected) reorder(next, affected, orders);
+        return orders;
+    }
+
+    private static void reorder(@NonNull Slot slot, @NonNull Set<Slot> affected, @NonNull Map<Slot, Slot[]> orders) {
+        if (orders.containsKey(slot)) return;
+        List<Link> parents = slot.state.parents;
+        for (Link link : parents) {
+            if (affected.contains(link.slot)) reorder(link.slot, affected, orders);
+        }
+        orders.put(slot, linearize(slot, parents, orders));
+    }
+
+    /**
+     * Moves a slot from the member sets of its old parents to those of its
+     * new ones. Callers hold the graph lock.
+     */
+    private static void relink(@NonNull Slot slot, @NonNull List<Link> before, @NonNull List<Link> after) {
+        for (Link link : before) link.slot.members.remove(slot);
+        for (Link link : after) link.slot.members.add(slot);
+    }
+
+    /**
+     * Returns whether the slot is part of the given resolution order, i.e.
+     * linking the order's owner as parent of the slot would close a cycle.
+     */
+    private static boolean inherits(@NonNull Slot[] order, @NonNull Slot slot) {
+        for (Slot ancestor : order) {
+            if (ancestor == slot) return true;
+        }
+        return false;
+    }
+
+    private void savePermissions(@NonNull UUID uuid) {
+        Slot slot = cache.get(uuid);
+        if (slot == null) return;
+
+        State state = slot.state;
+        State base = slot.persisted;
+        storage.save(uuid, dataOf(state), dataOf(base));
+        batch.add(new Saved(slot, base, state));
+        sync.announce(uuid);
+    }
+
+    /**
+     * Commits and announces a batch only once the storage made it durable.
+     * Until then its slots cannot be evicted and receivers never reload data
+     * that is not there yet. If the sync fails the persister saves the batch
+     * again, still against the old base.
+     */
+    private void afterFlush() {
+        List<Saved> saved = List.copyOf(batch);
+        batch.clear();
+        storage.sync();
+
+        for (Saved save : saved) {
+            Slot slot = save.slot;
+            synchronized (lockFor(slot.uuid)) {
+                // a reload in between rebased the slot on newer stored data and marked it dirty again
+                if (slot.persisted == save.base) slot.persisted = save.state;
+                if (slot.state == save.state) unsaved.remove(slot);
+            }
+        }
+        sync.flush();
+    }
+
+    private void onRemoteChange(@NonNull PermissionChange change) {
+        UUID uuid = change.permittableId();
+        Slot slot = cache.get(uuid);
+        if (slot == null) return;
+
+        synchronized (lockFor(uuid)) {
+            // a later change of the same origin was reloaded already, the storage held this one by then
+            Long reloaded = slot.announced == null ? null : slot.announced.get(change.origin());
+            if (reloaded != null && change.sequence() <= reloaded) return;
+        }
+        reload(uuid);
+        synchronized (lockFor(uuid)) {
+            if (slot.announced == null) slot.announced = new HashMap<>();
+            slot.announced.merge(change.origin(), change.sequence(), Math::max);
+        }
+    }
+
+    /**
+     * Reloads every cached permittable on a loader thread, one after another,
+     * once the bus may have missed announcements of other servers.
+     */
+    private void resync() {
+        try {
+            loader.execute(() -> {
+                for (UUID uuid : List.copyOf(cache.keySet())) {
+                    try {
+                        reload(uuid);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down, nothing left to keep in sync
+        }
+    }
+
+    private Effective effectiveOf(@NonNull Slot slot) {
+        Effective cached = slot.effective;
+        if (cached != null && cached.isCurrent()) return cached;
+
+        while (true) {
+            long version = graphVersion;
+            if ((version & 1) != 0) {
+                Thread.onSpinWait(); // a parent change is half applied
+                continue;
+            }
+
+            Slot[] order = slot.order;
+            Effective inherited = order.length > 1 ? effectiveOf(order[1]) : null;
+            // only the monitor of this slot is held, ancestors are resolved before taking it
+            synchronized (slot) {
+                cached = slot.effective;
+                if (cached != null && cached.isCurrent()) return cached; // built by a racing check
+                Effective fresh = new Effective(order, inherited);
+                if (graphVersion != version) continue; // the order may not match the states it was built from
+                slot.effective = fresh;
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * Replaces the state of a slot together with the resolution orders
+     * computed for it. Only these pointer swaps run while the graph version
+     * is odd, checks spin for their duration. Callers hold the graph lock
+     * and the stripe lock of the slot.
+     */
+    private void publish(@NonNull Slot slot, @NonNull State state, @NonNull Map<Slot, Slot[]> orders) {
+        graphVersion++;
+        try {
+            slot.state = state;
+            orders.forEach((next, order) -> next.order = order);
+        } finally {
+            graphVersion++;
+        }
+    }
+
+    /**
+     * Eagerly drops the effective view of the given slot and of every slot
+     * that inherits from it, so outdated tries do not linger in memory
+     * until their next check. Online players among them refresh their
+     * command visibility.
+     */
+    private static void invalidate(@NonNull Slot slot) {
+        Set<Slot> seen = new HashSet<>();
+        ArrayDeque<Slot> queue = new ArrayDeque<>();
+        queue.add(slot);
+        while (!queue.isEmpty()) {
+            Slot next = queue.poll();
+            if (!seen.add(next)) continue; // reached through another parent already
+            next.effective = null;
+            if (next.owner instanceof PermittablePlayer player) player.permissionsChanged();
+            queue.addAll(next.members);
+        }
+    }
+
+    /**
+     * Replaces the cached weights and parents of a permittable with the stored ones.
+     *
+     * <p>
+     * Called for every change received from another server through the
+     * bus. Permittables that are not cached are left alone,
+     * they are loaded fresh on their next access anyway. Local changes that are
+     * not saved yet are applied on top of the stored data, an entry changed on
+     * both servers keeps the local value, and are saved again with the next flush.
+     * </p>
+     *
+     * @param uuid the id of the changed permittable
+     */
+    protected void reload(@NonNull UUID uuid) {
+        Slot slot = cache.get(uuid);
+        if (slot == null) return;
+
+        boolean rebased;
+        retry:
+        while (true) {
+            PermittableData data = storage.load(uuid);
+            // parents are loaded before the graph lock, their storage reads never block other parent changes
+            Map<Slot, Integer> loaded = new LinkedHashMap<>();
+            data.parents().forEach((parent, priority) -> loaded.put(slotOf(parent), priority));
+
+            synchronized (graphLock) {
+                if (slot.evicted) return;
+                List<Link> links = new ArrayList<>(loaded.size());
+                for (Map.Entry<Slot, Integer> link : loaded.entrySet()) {
+                    Slot parent = link.getKey();
+                    if (parent.evicted) continue retry; // swept before we could link it, load it again
+                    if (inherits(parent.order, slot)) {
+                        System.err.println("Stored parent " + parent.uuid + " of " + uuid + " would create an inheritance cycle, ignoring it");
+                        continue;
+                    }
+                    links.add(new Link(parent, link.getValue()));
+                }
+                List<Link> stored = byPriority(links);
+
+                // parents only change under the graph lock, the current ones are stable here
+                State base = slot.persisted;
+                List<Link> previous = slot.state.parents;
+                List<Link> parents = rebase(stored, base.parents, previous);
+                Map<Slot, Slot[]> orders = previous.equals(parents) ? Map.of() : reorder(slot, parents);
+
+                synchronized (lockFor(uuid)) {
+                    if (slot.evicted) return;
+                    if (slot.persisted != base) continue retry; // a save finished meanwhile, read what it wrote
+                    State current = slot.state;
+                    State fresh = new State(data.weights(), stored, data.expiries(), data.contexts());
+                    State merged = current == base ? fresh : new State(rebase(fresh.weights, base.weights, current.weights),
+                            parents, rebase(fresh.expiries, base.expiries, current.expiries),
+                            rebaseContexts(fresh.contexts, base.contexts, current.contexts));
+                    publish(slot, merged, orders);
+                    slot.persisted = fresh;
+                    rebased = merged != fresh;
+                    if (rebased) unsaved.add(slot);
+                    expiryScheduler.schedule(uuid, merged.expiries);
+                }
+                relink(slot, previous, parents);
+                break;
+            }
+        }
+        if (rebased) persister.markDirty(uuid);
+        invalidate(slot);
+    }
+
+    /**
+     * Applies the local changes from {@code base} to {@code current} on top of the stored weights.
+     */
+    private static PermissionWeightMap rebase(@NonNull PermissionWeightMap stored, @NonNull PermissionWeightMap base,
+                                              @NonNull PermissionWeightMap current) {
+        if (current == base) return stored;
+        PermissionWeightMap merged = stored.copy();
+        current.forEach((permission, weight) -> {
+            if (base.get(permission) != weight) merged.put(permission, weight);
+        });
+        base.forEach((permission, weight) -> {
+            if (!current.containsKey(permission)) merged.remove(permission);
+        });
+        return merged;
+    }
+
+    /**
+     * Applies the local changes from {@code base} to {@code current} on top of the stored expiries.
+     */
+    private static Map<Permission, Long> rebase(@NonNull Map<Permission, Long> stored, @NonNull Map<Permission, Long> base,
+                                                @NonNull Map<Permission, Long> current) {
+        if (current == base) return stored;
+        Map<Permission, Long> merged = new HashMap<>(stored);
+        current.forEach((permission, expiry) -> {
+            if (!expiry.equals(base.get(permission))) merged.put(permission, expiry);
+        });
+        for (Permission permission : base.keySet()) {
+            if (!current.containsKey(permission)) merged.remove(permission);
+        }
+        return Map.copyOf(merged);
+    }
+
+    /**
+     * Applies the local changes from {@code base} to {@code current} on top of the stored parents.
+     */
+    private static List<Link> rebase(@NonNull List<Link> stored, @NonNull List<Link> base, @NonNull List<Link> current) {
+        if (current.equals(base)) return stored;
+        Map<Slot, Integer> before = new HashMap<>();
+        for (Link link : base) before.put(link.slot, link.priority);
+        Set<Slot> after = new HashSet<>();
+
+        Map<Slot, Integer> merged = new LinkedHashMap<>();
+        for (Link link : stored) merged.put(link.slot, link.priority);
+        for (Link link : current) {
+            after.add(link.slot);
+            if (!Integer.valueOf(link.priority).equals(before.get(link.slot))) merged.put(link.slot, link.priority);
+        }
+        for (Link link : base) {
+            if (!after.contains(link.slot)) merged.remove(link.slot);
+        }
+
+        List<Link> links = new ArrayList<>(merged.size());
+        merged.forEach((parent, priority) -> links.add(new Link(parent, priority)));
+        return byPriority(links);
+    }
+
+    /**
+     * Applies the local changes from {@code base} to {@code current} on top of
+     * the stored contextual weights, untouched contexts share their map with the base.
+     */
+    private static Map<PermissionContext, PermissionWeightMap> rebaseContexts(
+            @NonNull Map<PermissionContext, PermissionWeightMap> stored,
+            @NonNull Map<PermissionContext, PermissionWeightMap> base,
+            @NonNull Map<PermissionContext, PermissionWeightMap> current) {
+        if (current == base) return stored;
+        PermissionWeightMap none = new PermissionWeightMap(0);
+        Set<PermissionContext> contexts = new HashSet<>(base.keySet());
+        contexts.addAll(current.keySet());
+
+        Map<PermissionContext, PermissionWeightMap> merged = new HashMap<>(stored);
+        for (PermissionContext context : contexts) {
+            PermissionWeightMap before = base.getOrDefault(context, none);
+            PermissionWeightMap after = current.getOrDefault(context, none);
+            if (before == after) continue;
+            PermissionWeightMap weights = rebase(merged.getOrDefault(context, none), before, after);
+            if (weights.isEmpty()) merged.remove(context);
+            else merged.put(context, weights);
+        }
+        return Map.copyOf(merged);
+    }
+
+    @Override
+    public int resolvePermissionWeight(@NonNull Permittable permittable, @NonNull Permission permission) {
+        MetricsRecorder metrics = this.metrics;
+        if (metrics == null) return effectiveOf(slotOf(permittable.permittableId())).trie.resolve(permission);
+
+        long start = System.nanoTime();
+        int weight = effectiveOf(slotOf(permittable.permittableId())).trie.resolve(permission);
+        metrics.resolved(1, start);
+        return weight;
+    }
+
+    @Override
+    public int resolvePermissionWeight(@NonNull Permittable permittable, @NonNull PermissionKey key) {
+        MetricsRecorder metrics = this.metrics;
+        if (metrics == null) return effectiveOf(slotOf(permittable.permittableId())).resolve(key);
+
+        long start = System.nanoTime();
+        int weight = effectiveOf(slotOf(permittable.permittableId())).resolve(key);
+        metrics.resolved(1, start);
+        return weight;
+    }
+
+    /**
+     * Returns the current effective view, rebuilding it first if a change
+     * dropped it. An older view is never handed out, a snapshot taken right
+     * after an update always contains it.
+     */
+    @Override
+    public @NonNull PermissionSnapshot snapshotOf(@NonNull Permittable permittable) {
+        return effectiveOf(slotOf(permittable.permittableId()));
+    }
+
+    @Override
+    public int resolvePermissionWeight(@NonNull Permittable permittable, @NonNull Permission permission,
+                                       @NonNull PermissionContext context) {
+        MetricsRecorder metrics = this.metrics;
+        if (metrics == null) return effectiveOf(slotOf(permittable.permittableId())).trieFor(context).resolve(permission);
+
+        long start = System.nanoTime();
+        int weight = effectiveOf(slotOf(permittable.permittableId())).trieFor(context).resolve(permission);
+        metrics.resolved(1, start);
+        return weight;
+    }
+
+    @Override
+    public @NonNull int[] resolvePermissionWeights(@NonNull Permittable permittable, @NonNull Permission... permissions) {
+        MetricsRecorder metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        PermissionTrie trie = effectiveOf(slotOf(permittable.permittableId())).trie;
+        int[] weights = new int[permissions.length];
+        for (int i = 0; i < permissions.length; i++) weights[i] = trie.resolve(permissions[i]);
+        if (metrics != null) metrics.resolved(permissions.length, start);
+        return weights;
+    }
+
+    @Override
+    public @NonNull int[] resolvePermissionWeights(@NonNull Collection<? extends Permittable> permittables,
+                                                   @NonNull Permission permission) {
+        MetricsRecorder metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        int[] weights = new int[permittables.size()];
+        Map<Slot, Integer> shared = new IdentityHashMap<>();
+        int i = 0;
+        for (Permittable permittable : permittables)
+            weights[i++] = resolveShared(slotOf(permittable.permittableId()), permission, shared);
+        if (metrics != null) metrics.resolved(weights.length, start);
+        return weights;
+    }
+
+    /**
+     * Resolves a permission, reusing the result of the parent for every slot
+     * with a single parent and without own weights. Such slots are the common
+     * case for players, a broadcast then resolves once per distinct group
+     * instead of once per player.
+     */
+    private int resolveShared(@NonNull Slot slot, @NonNull Permission permission, @NonNull Map<Slot, Integer> shared) {
+        State state = slot.state;
+        if (state.parents.size() != 1 || !state.weights.isEmpty()) return effectiveOf(slot).trie.resolve(permission);
+
+        Slot parent = state.parents.get(0).slot;
+        Integer known = shared.get(parent);
+        if (known != null) return known;
+        int weight = resolveShared(parent, permission, shared);
+        shared.put(parent, weight);
+        return weight;
+    }
+
+    @Override
+    public void updatePermissionWeight(@NonNull Permittable permittable, @NonNull Permission permission, int weight) {
+        MetricsRecorder metrics = this.metrics;
+        if (metrics == null) {
+            update(permittable, permission, weight, PERMANENT);
+            return;
+        }
+        long start = System.nanoTime();
+        update(permittable, permission, weight, PERMANENT);
+        metrics.updated(start);
+    }
+
+    @Override
+    public void updatePermissionWeight(@NonNull Permittable permittable, @NonNull Permission permission,
+                                       int weight, @NonNull Instant expiry) {
+        if (weight < 0)
+            throw new IllegalArgumentException("Timed weights must not be negative: " + weight);
+
+        MetricsRecorder metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        update(permittable, permission, weight, expiry.toEpochMilli());
+        if (metrics != null) metrics.updated(start);
+    }
+
+    private void update(@NonNull Permittable permittable, @NonNull Permission permission, int weight, long expiry) {
+        UUID uuid = permittable.permittableId();
+        long until = weight < 0 ? PERMANENT : expiry;
+        Slot slot;
+        while (true) {
+            slot = slotOf(uuid);
+            synchronized (lockFor(uuid)) {
+                if (slot.evicted) continue; // raced with the sweeper, the next round loads it again
+
+                State current = slot.state;
+                if (current.weights.get(permission) == Math.max(weight, PermissionTrie.UNSET)
+                        && current.expiries.getOrDefault(permission, PERMANENT) == until) return;
+
+                PermissionWeightMap weights = current.weights.copy();
+                weights.put(permission, weight);
+                slot.state = new State(weights, current.parents, ExpiryScheduler.withExpiry(current.expiries, permission, until),
+                        current.contexts);
+                unsaved.add(slot);
+                expiryScheduler.schedule(uuid, slot.state.expiries);
+                break;
+            }
+        }
+        persister.markDirty(uuid);
+        invalidate(slot);
+    }
+
+    @Override
+    public void updatePermissionWeight(@NonNull Permittable permittable, @NonNull Permission permission,
+                                       @NonNull PermissionContext context, int weight) {
+        MetricsRecorder metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        UUID uuid = permittable.permittableId();
+        Slot slot;
+        while (true) {
+            slot = slotOf(uuid);
+            synchronized (lockFor(uuid)) {
+                if (slot.evicted) continue;
+
+                State current = slot.state;
+                PermissionWeightMap scoped = current.contexts.get(context);
+                int previous = scoped == null ? PermissionTrie.UNSET : scoped.get(permission);
+                if (previous == Math.max(weight, PermissionTrie.UNSET)) {
+                    if (metrics != null) metrics.updated(start);
+                    return;
+                }
+
+                PermissionWeightMap weights = scoped == null ? new PermissionWeightMap() : scoped.copy();
+                weights.put(permission, weight);
+                Map<PermissionContext, PermissionWeightMap> contexts = new HashMap<>(current.contexts);
+                if (weights.isEmpty()) contexts.remove(context);
+                else contexts.put(context, weights);
+                slot.state = new State(current.weights, current.parents, current.expiries, Map.copyOf(contexts));
+                unsaved.add(slot);
+                break;
+            }
+        }
+        persister.markDirty(uuid);
+        invalidate(slot);
+        if (metrics != null) metrics.updated(start);
+    }
+
+    @Override
+    public @Nullable Instant expiryOf(@NonNull Permittable permittable, @NonNull Permission permission) {
+        Long expiry = slotOf(permittable.permittableId()).state.expiries.get(permission);
+        return expiry == null ? null : Instant.ofEpochMilli(expiry);
+    }
+
+    /**
+     * Removes every weight of a permittable whose expiry has passed.
+     */
+    private void expire(@NonNull UUID uuid) {
+        long now = System.currentTimeMillis();
+        expiryScheduler.fired(uuid, now);
+
+        Slot slot;
+        while (true) {
+            slot = slotOf(uuid);
+            synchronized (lockFor(uuid)) {
+                if (slot.evicted) continue;
+
+                State current = slot.state;
+                PermissionWeightMap weights = null;
+                Map<Permission, Long> remaining = new HashMap<>();
+                for (Map.Entry<Permission, Long> entry : current.expiries.entrySet()) {
+                    if (entry.getValue() > now) {
+                        remaining.put(entry.getKey(), entry.getValue());
+                        continue;
+                    }
+                    if (weights == null) weights = current.weights.copy();
+                    weights.remove(entry.getKey());
+                }
+                if (weights == null) {
+                    expiryScheduler.schedule(uuid, current.expiries);
+                    return;
+                }
+
+                slot.state = new State(weights, current.parents, Map.copyOf(remaining), current.contexts);
+                unsaved.add(slot);
+                expiryScheduler.schedule(uuid, slot.state.expiries);
+                break;
+            }
+        }
+        persister.markDirty(uuid);
+        invalidate(slot);
+    }
+
+    /**
+     * Answers from the holder index of the storage, overlaid with the changes
+     * the write-behind persister has not handed to it yet.
+     */
+    @Override
+    public @NonNull Map<UUID, Integer> holdersOf(@NonNull Permission permission) {
+        Map<UUID, Integer> holders = storage.holders(permission);
+        for (Slot slot : unsaved) {
+            int weight = slot.state.weights.get(permission);
+            if (weight == PermissionTrie.UNSET) holders.remove(slot.uuid);
+            else holders.put(slot.uuid, weight);
+        }
+        return holders;
+    }
+
+    @Override
+    public @Nullable PermittableGroup permittableGroupOf(@NonNull String id) {
+        return registry.byId(id);
+    }
+
+    @Override
+    public @Nullable PermittableGroup permittableGroupOf(@NonNull UUID uuid) {
+        return registry.byUuid(uuid);
+    }
+
+    /**
+     * Returns the parent with the highest priority.
+     */
+    @Override
+    public @Nullable PermittableGroup parentOf(@NonNull Permittable permittable) {
+        List<Link> parents = slotOf(permittable.permittableId()).state.parents;
+        if (parents.isEmpty()) return null;
+        return registry.byUuid(parents.get(0).slot.uuid);
+    }
+
+    /**
+     * Replaces all parents with a single one.
+     */
+    @Override
+    public void setParentOf(@NonNull Permittable permittable, PermittableGroup parent) {
+        edit(permittable, edit -> edit.parent(parent));
+    }
+
+    @Override
+    public @NonNull Map<PermittableGroup, Integer> parentsOf(@NonNull Permittable permittable) {
+        List<Link> parents = slotOf(permittable.permittableId()).state.parents;
+        if (parents.isEmpty()) return Map.of();
+
+        Map<PermittableGroup, Integer> groups = new LinkedHashMap<>();
+        for (Link link : parents) {
+            PermittableGroup group = registry.byUuid(link.slot.uuid);
+            if (group != null) groups.put(group, link.priority);
+        }
+        return Collections.unmodifiableMap(groups);
+    }
+
+    @Override
+    public void addParentOf(@NonNull Permittable permittable, @NonNull PermittableGroup parent, int priority) {
+        edit(permittable, edit -> edit.addParent(parent, priority));
+    }
+
+    @Override
+    public void removeParentOf(@NonNull Permittable permittable, @NonNull PermittableGroup parent) {
+        edit(permittable, edit -> edit.removeParent(parent));
+    }
+
+    @Override
+    public @NonNull List<PermittableGroup> resolutionOrderOf(@NonNull Permittable permittable) {
+        Slot[] order = slotOf(permittable.permittableId()).order;
+        List<PermittableGroup> groups = new ArrayList<>(order.length - 1);
+        for (int i = 1; i < order.length; i++) {
+            PermittableGroup group = registry.byUuid(order[i].uuid);
+            if (group != null) groups.add(group);
+        }
+        return groups;
+    }
+
+    @Override
+    public void edit(@NonNull Permittable permittable, @NonNull Consumer<PermissionEdit> action) {
+        PermissionEdit edit = new PermissionEdit();
+        action.accept(edit);
+        if (edit.isEmpty()) return;
+
+        MetricsRecorder metrics = this.metrics;
+        if (metrics == null) {
+            apply(permittable, edit);
+            return;
+        }
+        long start = System.nanoTime();
+        apply(permittable, edit);
+        metrics.updated(start);
+    }
+
+    private void apply(@NonNull Permittable permittable, @NonNull PermissionEdit edit) {
+        UUID uuid = permittable.permittableId();
+        if (!edit.parentChanged()) {
+            Slot slot;
+            while (true) {
+                slot = slotOf(uuid);
+                synchronized (lockFor(uuid)) {
+                    if (slot.evicted) continue;
+                    State current = slot.state;
+                    PermissionWeightMap weights = applyWeights(current.weights, edit);
+                    Map<Permission, Long> expiries = ExpiryScheduler.withoutExpiries(current.expiries, edit.weights().keySet());
+                    if (weights == current.weights && expiries == current.expiries) return;
+                    slot.state = new State(weights, current.parents, expiries, current.contexts);
+                    unsaved.add(slot);
+                    expiryScheduler.schedule(uuid, expiries);
+                    break;
+                }
+            }
+            persister.markDirty(uuid);
+            invalidate(slot);
+            return;
+        }
+
+        Slot slot;
+        retry:
+        while (true) {
+            // slots are loaded before the graph lock, their storage reads never block other parent changes
+            slot = slotOf(uuid);
+            Map<PermittableGroup, Slot> changed = new LinkedHashMap<>();
+            for (PermittableGroup group : edit.parents().keySet()) changed.put(group, slotOf(group.permittableId()));
+
+            synchronized (graphLock) {
+                // evictions take the graph lock too, slots checked here stay live
+                if (slot.evicted) continue;
+                for (Slot parentSlot : changed.values()) {
+                    if (parentSlot.evicted) continue retry;
+                }
+
+                // parents only change under the graph lock, the current ones are stable here
+                List<Link> previous = slot.state.parents;
+                Map<Slot, Integer> links = new LinkedHashMap<>();
+                if (!edit.parentsReplaced()) {
+                    for (Link link : previous) links.put(link.slot, link.priority);
+                }
+                for (Map.Entry<PermittableGroup, Integer> change : edit.parents().entrySet()) {
+                    Slot parentSlot = changed.get(change.getKey());
+                    if (change.getValue() < 0) {
+                        links.remove(parentSlot);
+                        continue;
+                    }
+                    if (inherits(parentSlot.order, slot))
+                        throw new IllegalArgumentException("Parent " + change.getKey().groupId() + " would create an inheritance cycle for " + uuid);
+                    links.put(parentSlot, change.getValue());
+                }
+
+                List<Link> parents = new ArrayList<>(links.size());
+                links.forEach((parentSlot, priority) -> parents.add(new Link(parentSlot, priority)));
+                List<Link> sorted = byPriority(parents);
+                Map<Slot, Slot[]> orders = previous.equals(sorted) ? Map.of() : reorder(slot, sorted);
+
+                synchronized (lockFor(uuid)) {
+                    State current = slot.state;
+                    PermissionWeightMap weights = applyWeights(current.weights, edit);
+                    Map<Permission, Long> expiries = ExpiryScheduler.withoutExpiries(current.expiries, edit.weights().keySet());
+                    if (orders.isEmpty() && weights == current.weights && expiries == current.expiries) return;
+                    publish(slot, new State(weights, sorted, expiries, current.contexts), orders);
+                    unsaved.add(slot);
+                    expiryScheduler.schedule(uuid, expiries);
+                }
+                relink(slot, previous, sorted);
+                break;
+            }
+        }
+        persister.markDirty(uuid);
+        invalidate(slot);
+    }
+
+    /**
+     * Applies the weights of an edit to a copy of the given map.
+     *
+     * @return the new map, or {@code weights} itself if the edit changes nothing
+     */
+    private static PermissionWeightMap applyWeights(@NonNull PermissionWeightMap weights, @NonNull PermissionEdit edit) {
+        PermissionWeightMap updated = null;
+        for (Map.Entry<Permission, Integer> entry : edit.weights().entrySet()) {
+            int weight = entry.getValue();
+            if (weights.get(entry.getKey()) == Math.max(weight, PermissionTrie.UNSET)) continue;
+            if (updated == null) updated = weights.copy();
+            updated.put(entry.getKey(), weight);
+        }
+        return updated == null ? weights : updated;
+    }
+
+    @Override
+    public @Nullable Permittable permittableOf(@NonNull UUID uuid) {
+        PermittableGroup group = registry.byUuid(uuid);
+        if (group != null) return group;
+        Slot slot = cache.get(uuid);
+        return slot == null ? null : slot.owner;
+    }
+
+    /**
+     * Registers a permittable. Groups are added to the registry and their
+     * definition is persisted, registering a group under an id that belongs
+     * to another uuid moves the id to the new group.
+     */
+    @Override
+    public void registerPermittable(@NonNull Permittable permittable) {
+        if (permittable instanceof PermittableGroup group) registry.register(group);
+
+        boolean pin = permittable instanceof PermittablePlayer || permittable instanceof PermittableGroup;
+        UUID uuid = permittable.permittableId();
+        while (true) {
+            Slot slot = slotOf(uuid);
+            synchronized (lockFor(uuid)) {
+                if (slot.evicted) continue;
+                slot.owner = permittable;
+                slot.pinned = pin;
+                slot.heldUntil = 0;
+                return;
+            }
+        }
+    }
+
+    private void unregisterPlayer(@NonNull UUID uuid) {
+        Slot slot = cache.get(uuid);
+        if (slot == null) return;
+        synchronized (lockFor(uuid)) {
+            slot.owner = null;
+            slot.pinned = false;
+            slot.heldUntil = 0;
+        }
+    }
+
+    /**
+     * Evicts up to {@code limit} of the given slots in order, called by the
+     * sweeper. The graph lock is only held for the evictions, not the scan.
+     */
+    private int evict(@NonNull List<Slot> slots, int limit) {
+        int evicted = 0;
+        synchronized (graphLock) {
+            for (int i = 0; i < slots.size() && evicted < limit; i++) {
+                if (evict(slots.get(i))) evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Removes the slot from the cache if nothing depends on it staying in memory.
+     * Callers hold the graph lock, so member sets and parents cannot change meanwhile.
+     */
+    private boolean evict(@NonNull Slot slot) {
+        synchronized (lockFor(slot.uuid)) {
+            State state = slot.state;
+            if (slot.pinned || slot.evicted || slot.heldUntil > sweeper.clock()) return false;
+            if (state != slot.persisted) return false; // the persister still has to write it
+            if (!slot.members.isEmpty()) return false; // cached slots still inherit from it
+
+            slot.evicted = true;
+            cache.remove(slot.uuid, slot);
+            for (Link link : state.parents) link.slot.members.remove(slot);
+            MetricsRecorder metrics = this.metrics;
+            if (metrics != null) metrics.evicted();
+            return true;
+        }
+    }
+
+    @Override
+    public @NonNull CompletableFuture<Void> preloadPermittable(@NonNull UUID uuid) {
+        Slot cached = cache.get(uuid);
+        if (cached != null && holdForLogin(cached)) return CompletableFuture.completedFuture(null);
+
+        return CompletableFuture.runAsync(() -> {
+            Slot slot;
+            do slot = slotOf(uuid); while (!holdForLogin(slot));
+            // loading pulls in every ancestor, building the effective view warms their tries as well
+            effectiveOf(slot);
+        }, loader);
+    }
+
+    /**
+     * Keeps a slot from eviction until its player registers, leaves or
+     * {@link #LOGIN_HOLD_SECONDS} passed for a login that never completes.
+     *
+     * @return false if the slot was evicted meanwhile
+     */
+    private boolean holdForLogin(@NonNull Slot slot) {
+        synchronized (lockFor(slot.uuid)) {
+            if (slot.evicted) return false;
+            if (!slot.pinned) slot.heldUntil = sweeper.clock() + LOGIN_HOLD_SECONDS;
+            return true;
+        }
+    }
+
+    @Override
+    public @NonNull PermissionMetrics metrics() {
+        MetricsRecorder metrics = this.metrics;
+        return metrics == null ? PermissionMetrics.EMPTY : metrics.snapshot(persister.pending());
+    }
+
+    /**
+     * Reports on the sweeper thread, a slow reporter delays evictions but never checks.
+     */
+    @Override
+    public synchronized void reportMetrics(@NonNull MetricsReporter reporter, @NonNull Duration interval) {
+        PermissionServices.super.reportMetrics(reporter, interval);
+        if (reporting != null) reporting.cancel(false);
+        reporting = null;
+        this.reporter = reporter;
+        if (reporter == MetricsReporter.NOOP) {
+            metrics = null;
+            return;
+        }
+
+        if (metrics == null) metrics = new MetricsRecorder();
+        long millis = Math.max(1, interval.toMillis());
+        reporting = sweeper.scheduleWithFixedDelay(this::report, millis);
+    }
+
+    private void report() {
+        try {
+            reporter.report(metrics());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void flushed(long nanos) {
+        MetricsRecorder metrics = this.metrics;
+        if (metrics != null) metrics.flushed(nanos);
+    }
+
+    @Override
+    public void onInstall() {
+        PermissionServices.super.onInstall();
+
+        // Permittables are loaded on first access, online players stay pinned until they leave
+        MinecraftServer.getGlobalEventHandler().addListener(PlayerDisconnectEvent.class,
+                event -> unregisterPlayer(event.getPlayer().getUuid()));
+
+        // Groups are few and sit on every check path, recreate all of them up front
+        registry.restore();
+
+        // Expiries of permittables that are not loaded yet, loading them when they fire
+        expiryScheduler.restore(storage.expiring());
+
+        sync.subscribe(this::onRemoteChange, this::resync);
+    }
+
+    /**
+     * Writes everything that is still pending and closes the storage.
+     *
+     * @throws IllegalStateException if the storage kept failing and changes could not be written,
+     *                               the storage is closed nonetheless
+     */
+    @Override
+    public void onUninstall() {
+        loader.shutdown();
+        sweeper.close();
+        expiryScheduler.close();
+        try {
+            persister.close();
+        } finally {
+            // the last interval would be lost with the sweeper, hand it over once more
+            synchronized (this) {
+                if (metrics != null) report();
+            }
+            sync.close();
+            storage.close();
+        }
+    }
+
+    /**
+     * Immutable per-permittable data. The weight map is never modified
+     * after the state has been published, parents are sorted by descending
+     * priority, expiries hold the epoch millis of the timed weights and
+     * contexts the non-empty weight maps that only apply within a context.
+     */
+    private record State(PermissionWeightMap weights, List<Link> parents, Map<Permission, Long> expiries,
+                         Map<PermissionContext, PermissionWeightMap> contexts) {
+
+        /**
+         * Returns the weights that apply within a context, the contextual
+         * ones replace global weights of the same node.
+         */
+        private PermissionWeightMap weightsIn(PermissionContext context) {
+            PermissionWeightMap scoped = contexts.get(context);
+            if (scoped == null) return weights;
+            PermissionWeightMap merged = weights.copy();
+            scoped.forEach(merged::put);
+            return merged;
+        }
+    }
+
+    /**
+     * Save of a slot that waits for the storage to sync, see {@link #afterFlush()}.
+     */
+    private record Saved(Slot slot, State base, State state) {
+    }
+
+    /**
+     * Parent link of a slot, compared by slot identity and priority.
+     */
+    private record Link(Slot slot, int priority) {
+    }
+
+    /**
+     * Stable holder of a permittable, identity is used for parent links
+     * and member sets. Its monitor serializes rebuilds of its effective view.
+     */
+    private static final class Slot {
+        private final UUID uuid;
+        private final Set<Slot> members = ConcurrentHashMap.newKeySet();
+        private volatile State state;
+        private volatile @Nullable Effective effective;
+        /** Last state handed to the storage or reloaded from it, replaced under the stripe lock */
+        private volatile State persisted;
+        /** Coarse time of the last lookup, see {@link CacheSweeper#clock()} */
+        private volatile long lastAccess;
+        /** Online players and registered groups are never evicted */
+        private volatile boolean pinned;
+        /** Coarse time until which a preloaded slot waits for its player, 0 if none is logging in */
+        private volatile long heldUntil;
+        /** Registered object of the permittable, cleared when a player leaves */
+        private volatile @Nullable Permittable owner;
+        /** Set once the slot was dropped from the cache, writers then retry on a fresh slot */
+        private volatile boolean evicted;
+        /** Highest sequence reloaded per announcing origin, guarded by the stripe lock */
+        private @Nullable Map<String, Long> announced;
+        /** This slot followed by all of its ancestors in resolution order, replaced under the graph lock */
+        private volatile Slot[] order;
+
+        private Slot(UUID uuid, State state, long lastAccess) {
+            this.uuid = uuid;
+            this.state = state;
+            this.persisted = state;
+            this.lastAccess = lastAccess;
+            this.order = new Slot[]{this};
+        }
+    }
+
+    /**
+     * Flattened view of a resolution order together with the exact order
+     * and states it was computed from. Views are never modified once built
+     * and double as the snapshots handed out by {@link #snapshotOf(Permittable)}.
+     * Contextual checks pick an extra trie by context id, checks through a
+     * {@link PermissionKey} are answered from a flat array by key id.
+     */
+    private static final class Effective implements PermissionSnapshot {
+        private static final PermissionTrie[] NO_CONTEXTS = new PermissionTrie[0];
+        /** Marks a key whose weight was not resolved yet, below every real weight */
+        private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+        private final PermissionTrie trie;
+        /** Trie per context id for every context set anywhere in the order, {@code null} entries resolve globally */
+        private final PermissionTrie[] contextual;
+        private final Slot[] slots;
+        private final State[] states;
+        /**
+         * Weight by {@link PermissionKey#id()}, each resolved on its first check.
+         * Racing checks resolve the same weight, unsynchronized writes are harmless.
+         * {@code null} until the first check through a key.
+         */
+        private volatile int[] keyed;
+
+        /**
+         * Layers the weights of the order from the last slot to the first. The
+         * view of the next slot is reused if its order is the rest of this one,
+         * which holds for every slot with a single parent.
+         */
+        private Effective(Slot[] order, @Nullable Effective inherited) {
+            this.slots = order;
+            this.states = new State[order.length];
+            State own = order[0].state;
+            this.states[0] = own;
+
+            if (inherited != null && inherited.covers(order)) {
+                System.arraycopy(inherited.states, 0, states, 1, inherited.states.length);
+                // effective tries are never modified, a slot without own weights shares the inherited one
+                this.trie = own.weights.isEmpty() ? inherited.trie : PermissionTrie.layered(inherited.trie, own.weights);
+                if (own.contexts.isEmpty() && (own.weights.isEmpty() || inherited.contextual.length == 0)) {
+                    this.contextual = inherited.contextual;
+                    return;
+                }
+
+                Set<PermissionContext> contexts = new HashSet<>(own.contexts.keySet());
+                for (int i = 1; i < states.length; i++) contexts.addAll(states[i].contexts.keySet());
+                this.contextual = contextualOf(contexts,
+                        context -> PermissionTrie.layered(inherited.trieFor(context), own.weightsIn(context)));
+                return;
+            }
+
+            Set<PermissionContext> contexts = new HashSet<>(own.contexts.keySet());
+            PermissionTrie layered = null;
+            for (int i = order.length - 1; i > 0; i--) {
+                states[i] = order[i].state;
+                contexts.addAll(states[i].contexts.keySet());
+                layered = PermissionTrie.layered(layered, states[i].weights);
+            }
+            this.trie = PermissionTrie.layered(layered, own.weights);
+            this.contextual = contexts.isEmpty() ? NO_CONTEXTS : contextualOf(contexts, context -> {
+                PermissionTrie scoped = null;
+                for (int i = states.length - 1; i >= 0; i--) scoped = PermissionTrie.layered(scoped, states[i].weightsIn(context));
+                return scoped;
+            });
+        }
+
+        /**
+         * Builds the tries of the given contexts into an array indexed by context id.
+         */
+        private static PermissionTrie[] contextualOf(Set<PermissionContext> contexts,
+                                                     Function<PermissionContext, PermissionTrie> build) {
+            int length = 0;
+            for (PermissionContext context : contexts) length = Math.max(length, context.id() + 1);
+            PermissionTrie[] tries = new PermissionTrie[length];
+            for (PermissionContext context : contexts) tries[context.id()] = build.apply(context);
+            return tries;
+        }
+
+        @Override
+        public @NonNull UUID permittableId() {
+            return slots[0].uuid;
+        }
+
+        @Override
+        public int permissionWeight(@NonNull Permission permission) {
+            return trie.resolve(permission);
+        }
+
+        @Override
+        public int permissionWeight(@NonNull PermissionKey key) {
+            return resolve(key);
+        }
+
+        @Override
+        public int permissionWeight(@NonNull Permission permission, @NonNull PermissionContext context) {
+            return trieFor(context).resolve(permission);
+        }
+
+        private int resolve(PermissionKey key) {
+            int id = key.id();
+            int[] weights = keyed;
+            if (weights == null || id >= weights.length) weights = grow(weights);
+            int weight = weights[id];
+            if (weight == UNRESOLVED) weights[id] = weight = trie.resolve(key.permission());
+            return weight;
+        }
+
+        /**
+         * Extends the key weights to every key created so far, already
+         * resolved weights are kept unless a racing check replaces the array.
+         */
+        private int[] grow(int[] weights) {
+            int known = weights == null ? 0 : weights.length;
+            int[] grown = Arrays.copyOf(weights == null ? new int[0] : weights, PermissionKey.count());
+            Arrays.fill(grown, known, grown.length, UNRESOLVED);
+            keyed = grown;
+            return grown;
+        }
+
+        /**
+         * Returns the trie that applies within a context, the global one if no
+         * slot of the order sets weights in it.
+         */
+        private PermissionTrie trieFor(PermissionContext context) {
+            int id = context.id();
+            PermissionTrie scoped = id < contextual.length ? contextual[id] : null;
+            return scoped != null ? scoped : trie;
+        }
+
+        private boolean covers(Slot[] order) {
+            if (slots.length != order.length - 1) return false;
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != order[i + 1]) return false;
+            }
+            return true;
+        }
+
+        private boolean isCurrent() {
+            if (slots[0].order != slots) return false; // the parent graph changed
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i].state != states[i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate;
+
+import de.leycm.stomgate.data.TimingWheel;
+import de.leycm.stomgate.perm.Permission;
+import lombok.NonNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Fires the expiries of timed weights for a {@link CachingPermissionService}.
+ *
+ * <p>
+ * Every permittable with timed weights has a single timeout for its first
+ * expiry in a {@link TimingWheel} that advances once per server tick on a
+ * thread of its own, so a long cache sweep never delays an expiry. Fired
+ * permittables are handed to the expire action on the given executor, as it
+ * may have to load them first. Timeouts outlive evictions and are restored
+ * from the storage through {@link #restore(Map)}.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+final class ExpiryScheduler {
+
+    /** Expiry of weights without one */
+    static final long PERMANENT = Long.MAX_VALUE;
+    /** Resolution of expiries, one server tick */
+    private static final long TICK_MILLIS = 50;
+
+    private final Executor executor;
+    private final Consumer<UUID> expire;
+    private final ScheduledExecutorService ticker;
+    private final TimingWheel<UUID> wheel = new TimingWheel<>(TICK_MILLIS, System.currentTimeMillis());
+    /** Pending timeout of every permittable with timed weights, cached or not */
+    private final Map<UUID, TimingWheel.Timeout<UUID>> timers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates and starts a new scheduler.
+     *
+     * @param executor executor the expire action runs on
+     * @param expire   action removing the expired weights of a permittable
+     */
+    ExpiryScheduler(@NonNull Executor executor, @NonNull Consumer<UUID> expire) {
+        this.executor = executor;
+        this.expire = expire;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stomgate-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Points the timeout of a permittable at its first expiry. Callers hold
+     * the stripe lock of the permittable, so the latest state always wins.
+     */
+    void schedule(@NonNull UUID uuid, @NonNull Map<Permission, Long> expiries) {
+        long next = PERMANENT;
+        for (long expiry : expiries.values()) next = Math.min(next, expiry);
+        long deadline = next;
+        timers.compute(uuid, (key, timeout) -> {
+            if (timeout != null && timeout.deadline() == deadline) return timeout;
+            if (timeout != null) wheel.cancel(timeout);
+            return deadline == PERMANENT ? null : wheel.schedule(key, deadline);
+        });
+    }
+
+    /**
+     * Schedules the stored expiries of permittables that are not loaded yet,
+     * they are loaded when their timeout fires.
+     */
+    void restore(@NonNull Map<UUID, Long> expiring) {
+        expiring.forEach((uuid, expiry) -> timers.computeIfAbsent(uuid, key -> wheel.schedule(key, expiry)));
+    }
+
+    /**
+     * Forgets the timeout of a permittable if it is due, called by the expire
+     * action before it reschedules whatever is left.
+     */
+    void fired(@NonNull UUID uuid, long now) {
+        timers.computeIfPresent(uuid, (key, timeout) -> timeout.deadline() <= now ? null : timeout);
+    }
+
+    private void tick() {
+        try {
+            wheel.advance(System.currentTimeMillis(), uuid -> executor.execute(() -> expire.accept(uuid)));
+        } catch (RejectedExecutionException e) {
+            // shutting down, the expiries stay stored and fire after the next start
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the ticker, pending timeouts are dropped.
+     */
+    void close() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Sets or clears the expiry of a permission.
+     *
+     * @return the new map, or {@code expiries} itself if a permanent permission stays permanent
+     */
+    static Map<Permission, Long> withExpiry(@NonNull Map<Permission, Long> expiries,
+                                            @NonNull Permission permission, long expiry) {
+        if (expiry == PERMANENT && !expiries.containsKey(permission)) return expiries;
+        Map<Permission, Long> updated = new HashMap<>(expiries);
+        if (expiry == PERMANENT) updated.remove(permission);
+        else updated.put(permission, expiry);
+        return Map.copyOf(updated);
+    }
+
+    /**
+     * Makes the given permissions permanent.
+     *
+     * @return the new map, or {@code expiries} itself if none of them was timed
+     */
+    static Map<Permission, Long> withoutExpiries(@NonNull Map<Permission, Long> expiries,
+                                                 @NonNull Collection<Permission> permissions) {
+        if (expiries.isEmpty()) return expiries;
+        Map<Permission, Long> updated = null;
+        for (Permission permission : permissions) {
+            if (!expiries.containsKey(permission)) continue;
+            if (updated == null) updated = new HashMap<>(expiries);
+            updated.remove(permission);
+        }
+        return updated == null ? expiries : Map.copyOf(updated);
+    }
+}
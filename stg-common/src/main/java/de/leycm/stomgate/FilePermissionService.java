@@ -1,136 +1,92 @@
 package de.leycm.stomgate;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import de.leycm.stomgate.perm.Permission;
-import de.leycm.stomgate.permittable.PermittableGroup;
-import de.leycm.stomgate.perm.Permittable;
+import de.leycm.stomgate.bus.PermissionBus;
+import de.leycm.stomgate.storage.JsonPermissionStorage;
+import de.leycm.stomgate.storage.PermissionStorage;
 import lombok.NonNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.lang.reflect.Type;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.time.Duration;
 
 /**
  * File-based PermissionService with caching for players and groups.
+ *
+ * <p>
+ * Caching, inheritance and the write-behind persistence are inherited from
+ * {@link CachingPermissionService}, this class only picks a local storage.
+ * </p>
+ *
+ * <p>
+ * The storage defaults to {@link JsonPermissionStorage}, one JSON file per
+ * permittable. Pass a {@link de.leycm.stomgate.storage.JournaledPermissionStorage}
+ * to append changes to a write-ahead journal instead of rewriting files, or a
+ * {@link de.leycm.stomgate.storage.MappedPermissionStorage} to keep every
+ * permittable in a single memory-mapped binary file.
+ * </p>
+ *
+ * <p>
+ * The files belong to a single process. The storages lock them when opened
+ * and fail if another process already holds them, servers sharing permissions
+ * use a {@link RedisPermissionService} instead.
+ * </p>
  */
-public class FilePermissionService implements PermissionServices {
-
-    private final File folder;
-    private final Gson gson = new Gson();
-
-    /** Cache: UUID -> (node -> weight) */
-    private final Map<UUID, Map<String, Integer>> cache = new HashMap<>();
-    /** Parent cache: UUID -> Parent ID (String) */
-    private final Map<UUID, String> parentCache = new HashMap<>();
+public class FilePermissionService extends CachingPermissionService {
 
     public FilePermissionService(@NonNull File folder) {
-        this.folder = folder;
-        if (!folder.exists()) folder.mkdirs();
-    }
-
-    private File fileFor(@NonNull UUID uuid) {
-        return new File(folder, uuid + ".json");
-    }
-
-    private Map<String, Integer> loadPermissions(@NonNull UUID uuid) {
-        if (cache.containsKey(uuid)) return cache.get(uuid);
-
-        Map<String, Integer> perms = new HashMap<>();
-        File file = fileFor(uuid);
-        if (file.exists()) {
-            try (FileReader reader = new FileReader(file)) {
-                Type type = new TypeToken<Map<String, Integer>>(){}.getType();
-                Map<String, Integer> loaded = gson.fromJson(reader, type);
-                if (loaded != null) perms.putAll(loaded);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-        cache.put(uuid, perms);
-        return perms;
-    }
-
-    private void savePermissions(@NonNull UUID uuid) {
-        Map<String, Integer> perms = cache.get(uuid);
-        if (perms == null) return;
-
-        File file = fileFor(uuid);
-        try (FileWriter writer = new FileWriter(file)) {
-            gson.toJson(perms, writer);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    @Override
-    public int resolvePermissionWeight(@NonNull Permittable permittable, @NonNull Permission permission) {
-        Map<String, Integer> perms = loadPermissions(permittable.permittableId());
-        return perms.getOrDefault(permission.node(), -1);
-    }
-
-    @Override
-    public void updatePermissionWeight(@NonNull Permittable permittable, @NonNull Permission permission, int weight) {
-        Map<String, Integer> perms = loadPermissions(permittable.permittableId());
-        perms.put(permission.toString(), weight);
-        cache.put(permittable.permittableId(), perms);
-        savePermissions(permittable.permittableId());
-    }
-
-    @Override
-    public @Nullable PermittableGroup permittableGroupOf(@NonNull String id) {
-        return null; // Optional: implement group lookup
-    }
-
-    @Override
-    public @Nullable PermittableGroup parentOf(@NonNull Permittable permittable) {
-        String parentId = parentCache.get(permittable.permittableId());
-        if (parentId == null) return null;
-        return permittableGroupOf(parentId);
-    }
-
-    @Override
-    public void setParentOf(@NonNull Permittable permittable, PermittableGroup parent) {
-        if (parent == null) parentCache.remove(permittable.permittableId());
-        else parentCache.put(permittable.permittableId(), parent.groupId());
+        this(folder, DEFAULT_FLUSH_INTERVAL, DEFAULT_MAX_PENDING);
     }
 
-    @Override
-    public @Nullable Permittable permittableOf(@NonNull UUID uuid) {
-        return null; // Optional: implement player lookup
+    /**
+     * Creates a file based service with a custom write-behind configuration.
+     *
+     * @param folder        the folder holding one file per permittable
+     * @param flushInterval time between two background flushes
+     * @param maxPending    number of changed permittables that triggers an early flush
+     */
+    public FilePermissionService(@NonNull File folder, @NonNull Duration flushInterval, int maxPending) {
+        this(new JsonPermissionStorage(folder), flushInterval, maxPending);
     }
 
-    @Override
-    public void registerPermittable(@NonNull Permittable permittable) {
-        loadPermissions(permittable.permittableId());
+    /**
+     * Creates a service on top of the given storage.
+     *
+     * @param storage       the storage backend, closed by {@link #onUninstall()}
+     * @param flushInterval time between two background flushes
+     * @param maxPending    number of changed permittables that triggers an early flush
+     */
+    public FilePermissionService(@NonNull PermissionStorage storage, @NonNull Duration flushInterval, int maxPending) {
+        this(storage, flushInterval, maxPending, DEFAULT_MAX_CACHED, DEFAULT_IDLE_TIMEOUT);
     }
 
-    @Override
-    public void onInstall() {
-        // Load all existing files into cache
-        File[] files = folder.listFiles(f -> f.isFile() && f.getName().endsWith(".json"));
-        if (files == null) return;
-        for (File file : files) {
-            try {
-                String name = file.getName();
-                UUID uuid = UUID.fromString(name.substring(0, name.length() - 5));
-                loadPermissions(uuid);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
+    /**
+     * Creates a service on top of the given storage with a custom cache bound.
+     *
+     * @param storage       the storage backend, closed by {@link #onUninstall()}
+     * @param flushInterval time between two background flushes
+     * @param maxPending    number of changed permittables that triggers an early flush
+     * @param maxCached     number of cached permittables above which unpinned ones are evicted
+     * @param idleTimeout   time after which an unused, unpinned permittable is evicted
+     * @throws IllegalArgumentException if the bound is below one or the timeout not positive
+     */
+    public FilePermissionService(@NonNull PermissionStorage storage, @NonNull Duration flushInterval, int maxPending,
+                                 int maxCached, @NonNull Duration idleTimeout) {
+        this(storage, flushInterval, maxPending, maxCached, idleTimeout, null);
     }
 
-    @Override
-    public void onUninstall() {
-        // Save all cached permissions
-        for (UUID uuid : cache.keySet()) {
-            savePermissions(uuid);
-        }
+    /**
+     * Creates a service on top of the given storage, kept in sync with other services on it through a bus.
+     *
+     * @param storage       the storage backend, closed by {@link #onUninstall()}
+     * @param flushInterval time between two background flushes
+     * @param maxPending    number of changed permittables that triggers an early flush
+     * @param maxCached     number of cached permittables above which unpinned ones are evicted
+     * @param idleTimeout   time after which an unused, unpinned permittable is evicted
+     * @param bus           bus shared with the other services of this process on the same storage, or {@code null}
+     * @throws IllegalArgumentException if the bound is below one or the timeout not positive
+     */
+    public FilePermissionService(@NonNull PermissionStorage storage, @NonNull Duration flushInterval, int maxPending,
+                                 int maxCached, @NonNull Duration idleTimeout, @Nullable PermissionBus bus) {
+        super(storage, flushInterval, maxPending, maxCached, idleTimeout, bus);
     }
 }
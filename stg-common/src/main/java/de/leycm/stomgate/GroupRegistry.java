@@ -0,0 +1,88 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate;
+
+import de.leycm.stomgate.permittable.PermittableGroup;
+import de.leycm.stomgate.storage.PermissionStorage;
+import lombok.NonNull;
+import net.minestom.server.tag.TagHandler;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registered groups of a {@link CachingPermissionService}, indexed by id and uuid.
+ *
+ * <p>
+ * Group definitions are persisted on registration, each one only once.
+ * {@link #restore()} recreates every stored group that code did not
+ * register already.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+final class GroupRegistry {
+
+    private final PermissionStorage storage;
+    /** Both maps always hold the same groups */
+    private final Map<String, PermittableGroup> byId = new ConcurrentHashMap<>();
+    private final Map<UUID, PermittableGroup> byUuid = new ConcurrentHashMap<>();
+    /** Group definitions the storage already holds: id -> uuid */
+    private final Map<String, UUID> stored = new ConcurrentHashMap<>();
+
+    GroupRegistry(@NonNull PermissionStorage storage) {
+        this.storage = storage;
+    }
+
+    @Nullable PermittableGroup byId(@NonNull String id) {
+        return byId.get(id);
+    }
+
+    @Nullable PermittableGroup byUuid(@NonNull UUID uuid) {
+        return byUuid.get(uuid);
+    }
+
+    /**
+     * Adds a group and persists its definition, registering a group under an
+     * id that belongs to another uuid moves the id to the new group.
+     */
+    void register(@NonNull PermittableGroup group) {
+        String id = group.groupId();
+        UUID uuid = group.permittableId();
+
+        PermittableGroup replaced = byId.put(id, group);
+        if (replaced != null && !replaced.permittableId().equals(uuid)) byUuid.remove(replaced.permittableId(), replaced);
+        byUuid.put(uuid, group);
+
+        if (uuid.equals(stored.get(id))) return;
+        storage.saveGroup(id, uuid);
+        stored.put(id, uuid);
+    }
+
+    /**
+     * Recreates every stored group, registered through {@link PermittableGroup#create}.
+     */
+    void restore() {
+        Map<String, UUID> groups = storage.groups();
+        stored.putAll(groups);
+        groups.forEach((id, uuid) -> {
+            if (byId.containsKey(id)) return; // already registered by code before the install
+            try {
+                PermittableGroup.create(id, uuid, TagHandler.newHandler());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+}
@@ -10,63 +10,63 @@
  */
 package de.leycm.stomgate;
 
-import de.leycm.stomgate.perm.Permission;
-import de.leycm.stomgate.perm.Permittable;
-import de.leycm.stomgate.permittable.PermittableGroup;
+import de.leycm.stomgate.bus.PermissionBus;
+import de.leycm.stomgate.bus.RedisPermissionBus;
+import de.leycm.stomgate.storage.RedisPermissionStorage;
 import lombok.NonNull;
-import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.UnifiedJedis;
 
-import java.util.UUID;
+import java.time.Duration;
 
 /**
  * RedisPermissionService
  *
  * <p>
- * Default implementation of {@link PermissionServices}. Serves as the entry
- * point for initializing and accessing the Template API.
+ * Redis backed implementation of {@link PermissionServices} for networks of
+ * several servers sharing one permission set. Permittables are stored as
+ * Redis hashes through a {@link RedisPermissionStorage}.
  * </p>
  *
  * <p>
- * Can be used directly or extended for custom behavior.
+ * The cache of {@link CachingPermissionService} acts as near cache, checks
+ * never leave the process. Changes are written behind in pipelined batches
+ * and announced through a {@link RedisPermissionBus}, the other servers
+ * reload the affected permittables from Redis if they have them cached.
+ * </p>
+ *
+ * <p>
+ * The client is passed in and never closed by this service, any
+ * {@link UnifiedJedis} works, such as {@code JedisPooled} or a cluster client.
  * </p>
  *
  * @author LeyCM
  * @since 1.0.1
  */
-public class RedisPermissionService implements PermissionServices {
-
-    @Override
-    public int resolvePermissionWeight(@NonNull Permittable permittable, @NonNull Permission permission) {
-        return 0;
-    }
-
-    @Override
-    public void updatePermissionWeight(@NonNull Permittable permittable, @NonNull Permission permission, int weight) {
-
-    }
+public class RedisPermissionService extends CachingPermissionService {
 
-    @Override
-    public @Nullable PermittableGroup permittableGroupOf(@NonNull String id) {
-        return null;
+    /**
+     * Creates a service in the default namespace with the default cache configuration.
+     *
+     * @param redis the client used for storage and pub/sub
+     */
+    public RedisPermissionService(@NonNull UnifiedJedis redis) {
+        this(new RedisPermissionStorage(redis), DEFAULT_FLUSH_INTERVAL, DEFAULT_MAX_PENDING,
+                DEFAULT_MAX_CACHED, DEFAULT_IDLE_TIMEOUT, new RedisPermissionBus(redis));
     }
 
-    @Override
-    public @Nullable PermittableGroup parentOf(@NonNull Permittable permittable) {
-        return null;
-    }
-
-    @Override
-    public void setParentOf(@NonNull Permittable permittable, PermittableGroup parent) {
-
-    }
-
-    @Override
-    public @Nullable Permittable permittableOf(@NonNull UUID uuid) {
-        return null;
-    }
-
-    @Override
-    public void registerPermittable(@NonNull Permittable permittable) {
-
+    /**
+     * Creates a service on top of the given storage.
+     *
+     * @param storage       the Redis storage, closed by {@link #onUninstall()}
+     * @param flushInterval time between two background flushes
+     * @param maxPending    number of changed permittables that triggers an early flush
+     * @param maxCached     number of cached permittables above which unpinned ones are evicted
+     * @param idleTimeout   time after which an unused, unpinned permittable is evicted
+     * @param bus           bus announcing changes to the other servers, closed by {@link #onUninstall()}
+     */
+    public RedisPermissionService(@NonNull RedisPermissionStorage storage, @NonNull Duration flushInterval,
+                                  int maxPending, int maxCached, @NonNull Duration idleTimeout,
+                                  @NonNull PermissionBus bus) {
+        super(storage, flushInterval, maxPending, maxCached, idleTimeout, bus);
     }
 }
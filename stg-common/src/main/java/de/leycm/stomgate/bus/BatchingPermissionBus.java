@@ -0,0 +1,135 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bus;
+
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Base of the buses that send their batches as text messages.
+ *
+ * <p>
+ * Buffered changes are coalesced per permittable and origin, keeping the
+ * highest sequence. A batch is encoded as the id of the sending bus on the
+ * first line followed by one {@code <uuid> <origin> <sequence>} line per change. Subclasses
+ * only transport batches: they implement {@link #send(String)} and pass
+ * every batch they receive to {@link #receive(String)}.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public abstract class BatchingPermissionBus implements PermissionBus {
+
+    /** Sender id written into every batch, used to skip our own */
+    private final String origin = UUID.randomUUID().toString();
+    private final Map<Key, Long> buffer = new ConcurrentHashMap<>();
+    private final List<Consumer<PermissionChange>> listeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> resyncListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(final @NonNull PermissionChange change) {
+        buffer.merge(new Key(change.permittableId(), change.origin()), change.sequence(), Math::max);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (buffer.isEmpty()) return;
+
+        StringBuilder batch = new StringBuilder(origin);
+        for (Key key : buffer.keySet()) {
+            Long sequence = buffer.remove(key);
+            if (sequence != null) batch.append('\n').append(key.permittableId).append(' ').append(key.origin)
+                    .append(' ').append(sequence);
+        }
+
+        try {
+            send(batch.toString());
+        } catch (Exception e) {
+            e.printStackTrace(); // receivers only miss a refresh, the storage already holds the change
+        }
+    }
+
+    @Override
+    public void subscribe(final @NonNull Consumer<PermissionChange> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void subscribeResync(final @NonNull Runnable listener) {
+        resyncListeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Tells the resync listeners that batches may have been missed, called by
+     * subclasses whenever their transport receives again after an interruption.
+     */
+    protected void resync() {
+        for (Runnable listener : resyncListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Transports an encoded batch to every other bus.
+     *
+     * @param batch the encoded batch
+     * @throws Exception if the batch could not be sent
+     */
+    protected abstract void send(final @NonNull String batch) throws Exception;
+
+    /**
+     * Decodes a batch and hands its changes to the listeners, batches sent by this bus are skipped.
+     *
+     * @param batch the encoded batch
+     */
+    protected void receive(final @NonNull String batch) {
+        String[] lines = batch.split("\n");
+        if (lines[0].equals(origin)) return;
+
+        for (int i = 1; i < lines.length; i++) {
+            PermissionChange change;
+            try {
+                String[] parts = lines[i].split(" ");
+                change = new PermissionChange(UUID.fromString(parts[0]), parts[1], Long.parseLong(parts[2]));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                continue;
+            }
+
+            for (Consumer<PermissionChange> listener : listeners) {
+                try {
+                    listener.accept(change);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private record Key(UUID permittableId, String origin) {
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bus;
+
+import lombok.NonNull;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory bus connecting several services inside one process.
+ *
+ * <p>
+ * Meant for tests and local setups. Buses created through {@link #join()}
+ * share one group, a flush delivers the batch synchronously to every other
+ * bus of the group on the flushing thread.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class LoopbackPermissionBus extends BatchingPermissionBus {
+
+    private final Set<LoopbackPermissionBus> group;
+
+    /**
+     * Creates a bus in a new group.
+     */
+    public LoopbackPermissionBus() {
+        this(ConcurrentHashMap.newKeySet());
+    }
+
+    private LoopbackPermissionBus(final Set<LoopbackPermissionBus> group) {
+        this.group = group;
+        group.add(this);
+    }
+
+    /**
+     * Creates another bus in the group of this one.
+     *
+     * @return the new bus
+     */
+    public @NonNull LoopbackPermissionBus join() {
+        return new LoopbackPermissionBus(group);
+    }
+
+    @Override
+    protected void send(final @NonNull String batch) {
+        for (LoopbackPermissionBus bus : group) {
+            if (bus != this) bus.receive(batch);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        group.remove(this);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bus;
+
+import lombok.NonNull;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.UnifiedJedis;
+
+import java.util.function.Consumer;
+
+/**
+ * Bus sending its batches over a Redis pub/sub channel.
+ *
+ * <p>
+ * Every flush is a single {@code PUBLISH}. The subscription runs on its own
+ * daemon thread, started with the first listener, and reconnects until
+ * {@link #close()} is called. Batches published while it reconnects are lost,
+ * every successful subscription therefore asks the resync listeners to reload
+ * whatever they cached.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public class RedisPermissionBus extends BatchingPermissionBus {
+
+    private static final String DEFAULT_CHANNEL = "stomgate:changes";
+    private static final long RESUBSCRIBE_DELAY_MILLIS = 1_000;
+
+    private final UnifiedJedis redis;
+    private final String channel;
+    private final JedisPubSub pubSub = new JedisPubSub() {
+        @Override
+        public void onMessage(String channel, String message) {
+            receive(message);
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            resync();
+        }
+    };
+
+    private volatile boolean closed;
+    private boolean subscribed;
+
+    /**
+     * Creates a bus on the default channel {@code stomgate:changes}.
+     *
+     * @param redis the client, not closed by this bus
+     */
+    public RedisPermissionBus(final @NonNull UnifiedJedis redis) {
+        this(redis, DEFAULT_CHANNEL);
+    }
+
+    /**
+     * Creates a bus.
+     *
+     * @param redis   the client, not closed by this bus
+     * @param channel the pub/sub channel shared by all servers
+     */
+    public RedisPermissionBus(final @NonNull UnifiedJedis redis, final @NonNull String channel) {
+        this.redis = redis;
+        this.channel = channel;
+    }
+
+    @Override
+    protected void send(final @NonNull String batch) {
+        redis.publish(channel, batch);
+    }
+
+    @Override
+    public synchronized void subscribe(final @NonNull Consumer<PermissionChange> listener) {
+        super.subscribe(listener);
+        if (subscribed || closed) return;
+        subscribed = true;
+
+        Thread thread = new Thread(() -> {
+            while (!closed) {
+                try {
+                    redis.subscribe(pubSub, channel); // blocks until unsubscribed or disconnected
+                } catch (Exception e) {
+                    if (closed) return;
+                    e.printStackTrace();
+                    try {
+                        Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }, "stomgate-redis-bus");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        super.close();
+        closed = true;
+        if (pubSub.isSubscribed()) pubSub.unsubscribe();
+    }
+}
@@ -0,0 +1,354 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.data;
+
+import de.leycm.stomgate.perm.Permission;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Prefix tree over the path parts of {@link Permission} nodes.
+ *
+ * <p>
+ * Every stored node is split into its parts once on insertion. A trailing
+ * {@code "*"} part is not stored as a child but as the wildcard weight of
+ * its parent, so {@code "chat.color.*"} attaches to the {@code chat.color}
+ * node and {@code "*"} attaches to the root.
+ * </p>
+ *
+ * <p>
+ * {@link #resolve(Permission)} walks the tree once, at most
+ * {@code permission.node().length} steps deep, and returns the most
+ * specific match:
+ * </p>
+ *
+ * <ol>
+ *     <li>the exact node if it carries a weight</li>
+ *     <li>otherwise the deepest wildcard on the path ({@code a.b.*} before {@code a.*} before {@code *})</li>
+ *     <li>otherwise {@code -1} (unset)</li>
+ * </ol>
+ *
+ * <p>
+ * A wildcard never matches the node it is attached to, {@code "a.*"} covers
+ * {@code "a.b"} but not {@code "a"}.
+ * </p>
+ *
+ * <p>
+ * Inheritance is flattened with {@link #layered(PermissionTrie, PermissionWeightMap)}:
+ * the result answers every query exactly like checking the own entries
+ * first and falling back to the inherited trie, but in a single walk.
+ * </p>
+ *
+ * <p>
+ * Copies share their nodes with the original. A node reachable from more
+ * than one trie is marked shared and copied, together with the path to it,
+ * by the first modification through either trie. Layering a few own entries
+ * onto a large inherited trie therefore only allocates the paths of the own
+ * entries, independent of the size of the inherited trie.
+ * </p>
+ *
+ * <p>
+ * This class is not thread-safe. A trie that is no longer modified may be
+ * read, copied and layered from several threads at once.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class PermissionTrie {
+
+    /** The path part marking a wildcard node. */
+    public static final String WILDCARD = "*";
+
+    /** Weight returned for nodes without a matching entry. */
+    public static final int UNSET = -1;
+
+    private Node root;
+    private int size;
+
+    /**
+     * Creates an empty trie.
+     */
+    public PermissionTrie() {
+        this(new Node(), 0);
+    }
+
+    private PermissionTrie(final Node root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Flattens own entries on top of an inherited effective trie.
+     *
+     * <p>
+     * Own entries always win over inherited ones. An own wildcard
+     * {@code a.*} therefore also shadows every inherited entry below
+     * {@code a}, because a chained lookup would have matched the own
+     * wildcard before ever consulting the parent.
+     * </p>
+     *
+     * @param inherited the effective trie of the parent, or {@code null} for none
+     * @param own       the entries of the permittable itself
+     * @return a new trie, neither argument is modified
+     */
+    public static @NonNull PermissionTrie layered(final @Nullable PermissionTrie inherited,
+                                                  final @NonNull PermissionWeightMap own) {
+        final PermissionTrie trie = inherited == null ? new PermissionTrie() : inherited.copy();
+        if (own.isEmpty()) return trie;
+
+        final Permission[] permissions = new Permission[own.size()];
+        final int[] weights = new int[permissions.length];
+        final long[] order = new long[permissions.length];
+        final int[] index = {0};
+        own.forEach((permission, weight) -> {
+            final int i = index[0]++;
+            permissions[i] = permission;
+            weights[i] = weight;
+            order[i] = ((long) layerOf(permission) << 32) | i;
+        });
+
+        // shallow wildcards must prune inherited subtrees before deeper own entries are placed
+        Arrays.sort(order);
+        for (final long key : order) {
+            final int i = (int) key;
+            trie.shadow(permissions[i], weights[i]);
+        }
+        return trie;
+    }
+
+    private static int layerOf(final Permission permission) {
+        final String[] parts = permission.node();
+        return parts.length * 2 + (WILDCARD.equals(parts[parts.length - 1]) ? 0 : 1);
+    }
+
+    private void shadow(final Permission permission, final int weight) {
+        final String[] parts = permission.node();
+        final int last = parts.length - 1;
+        if (!WILDCARD.equals(parts[last])) {
+            put(permission, weight);
+            return;
+        }
+
+        Node node = ownRoot();
+        for (int i = 0; i < last; i++) {
+            node = node.ownChild(parts[i]);
+        }
+
+        if (node.children != null) {
+            for (final Node child : node.children.values()) {
+                size -= child.count();
+            }
+            node.children = null;
+        }
+        if (node.wildcard == UNSET) size++;
+        node.wildcard = weight;
+    }
+
+    /**
+     * Returns an independent copy of this trie in constant time.
+     *
+     * <p>
+     * Both tries share their nodes until one of them is modified, modifying
+     * either never affects the other.
+     * </p>
+     *
+     * @return the copy
+     */
+    public @NonNull PermissionTrie copy() {
+        root.shared = true;
+        return new PermissionTrie(root, size);
+    }
+
+    /**
+     * Returns the root for a modification, copying it first if it is shared.
+     */
+    private Node ownRoot() {
+        if (root.shared) root = root.unshare();
+        return root;
+    }
+
+    /**
+     * Resolves the effective weight of the given permission.
+     *
+     * @param permission the permission to resolve
+     * @return the weight of the most specific match, or {@link #UNSET}
+     */
+    public int resolve(final @NonNull Permission permission) {
+        final String[] parts = permission.node();
+        final int last = parts.length - 1;
+
+        Node node = root;
+        int inherited = node.wildcard;
+
+        for (int i = 0; i < last; i++) {
+            node = node.child(parts[i]);
+            if (node == null) return inherited;
+            if (node.wildcard != UNSET) inherited = node.wildcard;
+        }
+
+        final Node leaf = node.child(parts[last]);
+        if (leaf != null && leaf.weight != UNSET) return leaf.weight;
+        return inherited;
+    }
+
+    /**
+     * Stores a weight for the given permission.
+     *
+     * <p>
+     * Negative weights remove the entry, see {@link #remove(Permission)}.
+     * </p>
+     *
+     * @param permission the permission to store
+     * @param weight     the weight to assign
+     */
+    public void put(final @NonNull Permission permission, final int weight) {
+        if (weight < 0) {
+            remove(permission);
+            return;
+        }
+
+        final String[] parts = permission.node();
+        final int last = parts.length - 1;
+        final boolean wildcard = WILDCARD.equals(parts[last]);
+        final int depth = wildcard ? last : parts.length;
+
+        Node node = ownRoot();
+        for (int i = 0; i < depth; i++) {
+            node = node.ownChild(parts[i]);
+        }
+
+        if (wildcard) {
+            if (node.wildcard == UNSET) size++;
+            node.wildcard = weight;
+        } else {
+            if (node.weight == UNSET) size++;
+            node.weight = weight;
+        }
+    }
+
+    /**
+     * Removes the entry for the given permission and prunes nodes
+     * that no longer carry any weight.
+     *
+     * @param permission the permission to remove
+     */
+    public void remove(final @NonNull Permission permission) {
+        final String[] parts = permission.node();
+        final int last = parts.length - 1;
+        final boolean wildcard = WILDCARD.equals(parts[last]);
+        final int depth = wildcard ? last : parts.length;
+
+        Node probe = root;
+        for (int i = 0; i < depth && probe != null; i++) {
+            probe = probe.child(parts[i]);
+        }
+        if (probe == null || (wildcard ? probe.wildcard : probe.weight) == UNSET) return;
+
+        // only copy shared nodes once the entry is known to exist
+        final Node[] path = new Node[depth + 1];
+        path[0] = ownRoot();
+        for (int i = 0; i < depth; i++) {
+            path[i + 1] = path[i].ownChild(parts[i]);
+        }
+
+        final Node target = path[depth];
+        if (wildcard) target.wildcard = UNSET;
+        else target.weight = UNSET;
+        size--;
+
+        for (int i = depth; i > 0 && path[i].isEmpty(); i--) {
+            path[i - 1].children.remove(parts[i - 1]);
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        root = new Node();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of stored entries (exact and wildcard).
+     *
+     * @return entry count
+     */
+    public int size() {
+        return size;
+    }
+
+    private static final class Node {
+        private @Nullable Map<String, Node> children;
+        private int weight = UNSET;
+        private int wildcard = UNSET;
+        /** Reachable from more than one trie, never modified once set, only copied */
+        private boolean shared;
+
+        private @Nullable Node child(final String part) {
+            final Map<String, Node> map = children;
+            return map == null ? null : map.get(part);
+        }
+
+        /**
+         * Returns the child for a modification, creating it if missing and
+         * copying it if shared. Must only be called on an unshared node.
+         */
+        private Node ownChild(final String part) {
+            if (children == null) children = new HashMap<>(4);
+            Node child = children.get(part);
+            if (child == null) {
+                child = new Node();
+                children.put(part, child);
+            } else if (child.shared) {
+                child = child.unshare();
+                children.put(part, child);
+            }
+            return child;
+        }
+
+        /**
+         * Copies this node without its subtree, the children become shared
+         * between the copy and this node.
+         */
+        private Node unshare() {
+            final Node copy = new Node();
+            copy.weight = weight;
+            copy.wildcard = wildcard;
+            if (children != null) {
+                copy.children = new HashMap<>(Math.max(4, children.size() * 2));
+                for (final Map.Entry<String, Node> entry : children.entrySet()) {
+                    entry.getValue().shared = true;
+                    copy.children.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return copy;
+        }
+
+        private int count() {
+            int count = (weight == UNSET ? 0 : 1) + (wildcard == UNSET ? 0 : 1);
+            if (children != null) {
+                for (final Node child : children.values()) count += child.count();
+            }
+            return count;
+        }
+
+        private boolean isEmpty() {
+            return weight == UNSET && wildcard == UNSET
+                    && (children == null || children.isEmpty());
+        }
+    }
+}
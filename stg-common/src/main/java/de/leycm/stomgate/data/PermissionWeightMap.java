@@ -0,0 +1,228 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.data;
+
+import de.leycm.stomgate.perm.Permission;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Open addressing map from {@link Permission} to a primitive {@code int} weight.
+ *
+ * <p>
+ * Keys and values live in two parallel arrays, lookups use linear probing
+ * on the precomputed {@link Permission#hashCode()} and never box. Removal
+ * shifts the following entries back, so the table needs no tombstones.
+ * </p>
+ *
+ * <p>
+ * Negative weights are not stored, {@link #get(Permission)} returns
+ * {@link PermissionTrie#UNSET} for missing keys.
+ * </p>
+ *
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class PermissionWeightMap {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private Permission[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Creates an empty map.
+     */
+    public PermissionWeightMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map sized for the given number of entries.
+     *
+     * @param expected expected entry count
+     */
+    public PermissionWeightMap(final int expected) {
+        final int capacity = capacityFor(expected);
+        this.keys = new Permission[capacity];
+        this.values = new int[capacity];
+    }
+
+    /**
+     * Returns the weight stored for the given permission.
+     *
+     * @param permission the key
+     * @return the stored weight or {@link PermissionTrie#UNSET}
+     */
+    public int get(final @NonNull Permission permission) {
+        final Permission[] keys = this.keys;
+        final int mask = keys.length - 1;
+        for (int i = mix(permission.hashCode()) & mask; ; i = (i + 1) & mask) {
+            final Permission key = keys[i];
+            if (key == null) return PermissionTrie.UNSET;
+            if (key == permission || key.equals(permission)) return values[i];
+        }
+    }
+
+    /**
+     * Stores a weight, negative weights remove the entry.
+     *
+     * @param permission the key
+     * @param weight     the weight to store
+     * @return the previous weight or {@link PermissionTrie#UNSET}
+     */
+    public int put(final @NonNull Permission permission, final int weight) {
+        if (weight < 0) return remove(permission);
+
+        final int mask = keys.length - 1;
+        int i = mix(permission.hashCode()) & mask;
+        for (; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(permission)) {
+                final int previous = values[i];
+                values[i] = weight;
+                return previous;
+            }
+        }
+
+        keys[i] = permission;
+        values[i] = weight;
+        if (++size * 4 > keys.length * 3) resize(keys.length << 1);
+        return PermissionTrie.UNSET;
+    }
+
+    /**
+     * Removes the entry for the given permission.
+     *
+     * @param permission the key
+     * @return the removed weight or {@link PermissionTrie#UNSET}
+     */
+    public int remove(final @NonNull Permission permission) {
+        final int mask = keys.length - 1;
+        int i = mix(permission.hashCode()) & mask;
+        for (; ; i = (i + 1) & mask) {
+            if (keys[i] == null) return PermissionTrie.UNSET;
+            if (keys[i].equals(permission)) break;
+        }
+
+        final int previous = values[i];
+        size--;
+
+        // backward shift deletion, keeps every probe chain intact
+        int gap = i;
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            final int home = mix(keys[j].hashCode()) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = null;
+        values[gap] = 0;
+        return previous;
+    }
+
+    /**
+     * Returns whether a weight is stored for the given permission.
+     *
+     * @param permission the key
+     * @return true if present
+     */
+    public boolean containsKey(final @NonNull Permission permission) {
+        return get(permission) != PermissionTrie.UNSET;
+    }
+
+    /**
+     * Passes every entry to the given consumer.
+     *
+     * @param consumer the entry consumer
+     */
+    public void forEach(final @NonNull ObjIntConsumer<Permission> consumer) {
+        final Permission[] keys = this.keys;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) consumer.accept(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return entry count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the map is empty.
+     *
+     * @return true if no entry is stored
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns an independent copy of this map.
+     *
+     * @return the copy
+     */
+    public @NonNull PermissionWeightMap copy() {
+        final PermissionWeightMap copy = new PermissionWeightMap(0);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    private void resize(final int capacity) {
+        final Permission[] oldKeys = keys;
+        final int[] oldValues = values;
+        keys = new Permission[capacity];
+        values = new int[capacity];
+
+        final int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            final Permission key = oldKeys[j];
+            if (key == null) continue;
+            int i = mix(key.hashCode()) & mask;
+            while (keys[i] != null) i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = oldValues[j];
+        }
+    }
+
+    private static int capacityFor(final int expected) {
+        final int needed = Math.max(MIN_CAPACITY, (int) Math.ceil(expected / 0.75) + 1);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    private static int mix(final int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
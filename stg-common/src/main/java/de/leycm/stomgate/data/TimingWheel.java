@@ -0,0 +1,227 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.data;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel for deadlines in epoch milliseconds.
+ *
+ * <p>
+ * Time advances in ticks of a fixed length. The wheel has {@value #LEVELS}
+ * levels of {@value #SLOTS} slots, a slot on level {@code n} spans
+ * {@code 64^n} ticks. A timeout is put on the lowest level whose slot can
+ * tell its tick apart from the current one, and moves down a level whenever
+ * the level below wraps around. Scheduling and cancelling are O(1), every
+ * timeout is moved at most {@value #LEVELS} times before it fires, and idle
+ * time costs nothing but the tick itself. With 50 millisecond ticks the
+ * wheel spans more than a century.
+ * </p>
+ *
+ * <p>
+ * A timeout never fires before its deadline, at most one tick after it.
+ * Deadlines already passed fire on the next {@link #advance(long, Consumer)}.
+ * All methods synchronize on the wheel, expired values are handed out after
+ * the lock was released.
+ * </p>
+ *
+ * @param <T> type of the scheduled values
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class TimingWheel<T> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    private final long tickMillis;
+    /** Heads of the doubly linked slot lists, level by level */
+    private final Timeout<T>[] slots;
+    /** Next tick to process */
+    private long current;
+    private int size;
+
+    /**
+     * Creates an empty wheel.
+     *
+     * @param tickMillis length of a tick
+     * @param nowMillis  the current time in epoch millis
+     * @throws IllegalArgumentException if the tick is not positive
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(final long tickMillis, final long nowMillis) {
+        if (tickMillis < 1)
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        this.tickMillis = tickMillis;
+        this.slots = (Timeout<T>[]) new Timeout[LEVELS * SLOTS];
+        this.current = Math.floorDiv(nowMillis, tickMillis);
+    }
+
+    /**
+     * Schedules a value.
+     *
+     * @param value          the value handed out once the deadline passed
+     * @param deadlineMillis the deadline in epoch millis
+     * @return the timeout, used to cancel it
+     */
+    public synchronized @NonNull Timeout<T> schedule(final @NonNull T value, final long deadlineMillis) {
+        // round up, a timeout must never fire early
+        long tick = Math.floorDiv(deadlineMillis, tickMillis);
+        if (tick * tickMillis < deadlineMillis) tick++;
+
+        Timeout<T> timeout = new Timeout<>(value, deadlineMillis, tick);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Cancels a timeout.
+     *
+     * @param timeout the timeout returned by {@link #schedule(Object, long)}
+     * @return true if it was still pending
+     */
+    public synchronized boolean cancel(final @NonNull Timeout<T> timeout) {
+        if (timeout.slot < 0) return false;
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the number of pending timeouts.
+     *
+     * @return pending count
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Processes every tick up to the given time and hands out the values whose
+     * deadline passed. Time running backwards is ignored.
+     *
+     * @param nowMillis the current time in epoch millis
+     * @param expired   receives the expired values, in deadline order of their ticks
+     */
+    public void advance(final long nowMillis, final @NonNull Consumer<T> expired) {
+        List<T> due = new ArrayList<>();
+        synchronized (this) {
+            long target = Math.floorDiv(nowMillis, tickMillis);
+            while (current <= target) {
+                // skip whole rounds of the lowest level while nothing is scheduled
+                if (size == 0) {
+                    current = target + 1;
+                    break;
+                }
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if ((current & ((1L << (BITS * level)) - 1)) == 0) cascade(level);
+                }
+
+                int index = (int) (current & MASK);
+                Timeout<T> timeout = slots[index];
+                while (timeout != null) {
+                    Timeout<T> next = timeout.next;
+                    unlink(timeout);
+                    size--;
+                    due.add(timeout.value);
+                    timeout = next;
+                }
+                current++;
+            }
+        }
+        for (T value : due) expired.accept(value);
+    }
+
+    /**
+     * Moves the timeouts of the current slot of a level one level down or further.
+     */
+    private void cascade(final int level) {
+        int index = level * SLOTS + (int) ((current >>> (BITS * level)) & MASK);
+        Timeout<T> timeout = slots[index];
+        slots[index] = null;
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            timeout.prev = timeout.next = null;
+            place(timeout);
+            timeout = next;
+        }
+    }
+
+    private void place(final Timeout<T> timeout) {
+        long tick = Math.max(timeout.tick, current);
+        long differing = tick ^ current;
+        int level = differing == 0 ? 0 : (63 - Long.numberOfLeadingZeros(differing)) / BITS;
+        if (level >= LEVELS) level = LEVELS - 1;
+
+        int index = level * SLOTS + (int) ((tick >>> (BITS * level)) & MASK);
+        Timeout<T> head = slots[index];
+        timeout.slot = index;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) head.prev = timeout;
+        slots[index] = timeout;
+    }
+
+    private void unlink(final Timeout<T> timeout) {
+        if (timeout.prev != null) timeout.prev.next = timeout.next;
+        else slots[timeout.slot] = timeout.next;
+        if (timeout.next != null) timeout.next.prev = timeout.prev;
+        timeout.prev = timeout.next = null;
+        timeout.slot = -1;
+    }
+
+    /**
+     * A scheduled value.
+     *
+     * @param <T> type of the value
+     */
+    public static final class Timeout<T> {
+
+        private final T value;
+        private final long deadline;
+        private final long tick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        /** Index of the slot holding it, -1 once fired or cancelled */
+        private int slot = -1;
+
+        private Timeout(final T value, final long deadline, final long tick) {
+            this.value = value;
+            this.deadline = deadline;
+            this.tick = tick;
+        }
+
+        /**
+         * Returns the scheduled value.
+         *
+         * @return the value
+         */
+        public @NonNull T value() {
+            return value;
+        }
+
+        /**
+         * Returns the deadline.
+         *
+         * @return epoch millis
+         */
+        public long deadline() {
+            return deadline;
+        }
+    }
+}
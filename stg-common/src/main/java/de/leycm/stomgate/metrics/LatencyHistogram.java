@@ -0,0 +1,65 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.metrics;
+
+import lombok.NonNull;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent latency histogram with the buckets of {@link LatencySnapshot}.
+ *
+ * <p>
+ * Every bucket is a {@link LongAdder}, recording threads spread over striped
+ * cells instead of contending on one counter. Recording never blocks or
+ * allocates once the cells exist.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class LatencyHistogram {
+
+    private final LongAdder[] buckets = new LongAdder[LatencySnapshot.BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param nanos the value in nanoseconds, negative values count as 0
+     */
+    public void record(final long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets[LatencySnapshot.bucketOf(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns the values recorded so far.
+     *
+     * @return an immutable snapshot
+     */
+    public @NonNull LatencySnapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) counts[i] = buckets[i].sum();
+        return new LatencySnapshot(counts, sum.sum(), max.get());
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.metrics;
+
+import lombok.NonNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the metrics of a permission service.
+ *
+ * <p>
+ * All counters are {@link LongAdder}s and all latencies go into
+ * {@link LatencyHistogram}s, so concurrent checks on many threads do not
+ * contend on shared cache lines. Services only create a recorder while a
+ * {@link MetricsReporter} is installed and skip every call otherwise.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class MetricsRecorder {
+
+    private final LongAdder resolves = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LatencyHistogram resolveLatency = new LatencyHistogram();
+    private final LatencyHistogram updateLatency = new LatencyHistogram();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LatencyHistogram flushDuration = new LatencyHistogram();
+    private final LatencyHistogram loadDuration = new LatencyHistogram();
+
+    /**
+     * Records a resolve call.
+     *
+     * @param permissions number of permissions resolved by the call
+     * @param start       {@link System#nanoTime()} at the start of the call
+     */
+    public void resolved(final int permissions, final long start) {
+        resolveLatency.record(System.nanoTime() - start);
+        resolves.add(permissions);
+    }
+
+    /**
+     * Records an update or edit call.
+     *
+     * @param start {@link System#nanoTime()} at the start of the call
+     */
+    public void updated(final long start) {
+        updateLatency.record(System.nanoTime() - start);
+        updates.increment();
+    }
+
+    /**
+     * Records a permittable lookup.
+     *
+     * @param hit whether the permittable was cached
+     */
+    public void lookedUp(final boolean hit) {
+        if (hit) cacheHits.increment();
+        else cacheMisses.increment();
+    }
+
+    /**
+     * Records a permittable dropped from the cache.
+     */
+    public void evicted() {
+        evictions.increment();
+    }
+
+    /**
+     * Records a write-behind flush.
+     *
+     * @param nanos duration of the flush
+     */
+    public void flushed(final long nanos) {
+        flushDuration.record(nanos);
+    }
+
+    /**
+     * Records a permittable loaded from the storage.
+     *
+     * @param start {@link System#nanoTime()} before the storage was read
+     */
+    public void loaded(final long start) {
+        loadDuration.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Returns everything recorded so far.
+     *
+     * @param pendingWrites current number of permittables waiting for a flush
+     * @return the cumulative metrics
+     */
+    public @NonNull PermissionMetrics snapshot(final int pendingWrites) {
+        return new PermissionMetrics(resolves.sum(), updates.sum(),
+                resolveLatency.snapshot(), updateLatency.snapshot(),
+                cacheHits.sum(), cacheMisses.sum(), evictions.sum(), pendingWrites,
+                flushDuration.snapshot(), loadDuration.snapshot());
+    }
+}
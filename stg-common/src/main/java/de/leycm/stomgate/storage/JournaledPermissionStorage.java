@@ -0,0 +1,438 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import de.leycm.stomgate.data.PermissionTrie;
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionContext;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal on top of {@link JsonPermissionStorage} snapshots.
+ *
+ * <p>
+ * A save appends one compact record to {@code journal.log} that only holds
+ * the entries changed since the previous save of that permittable. Snapshot
+ * files are rewritten during compaction only, which runs on startup, on
+ * {@link #close()} and in {@link #sync()} once the journal grew beyond a
+ * threshold, so a save never pays for it. A compaction
+ * writes every new snapshot to a temporary file first, renames them all in
+ * one pass and syncs the folder once before the journal is truncated.
+ * </p>
+ *
+ * <p>
+ * Record layout, all integers big endian:
+ * </p>
+ *
+ * <pre>
+ * int    payload length
+ * int    CRC32 of the payload
+ * byte   type (0 = replace all entries, 1 = patch)
+ * long   uuid most significant bits
+ * long   uuid least significant bits
+ * varint entry count
+ * entries: modified UTF-8 node, zigzag varint weight (-1 removes)
+ * varint parent count, the complete parent set follows
+ * parents: long uuid most significant bits, long uuid least significant bits,
+ *          zigzag varint priority
+ * varint expiry count, the complete expiry set follows
+ * expiries: modified UTF-8 node, long epoch millis
+ * varint context count, the complete set of contextual weights follows
+ * contexts: modified UTF-8 context, varint entry count,
+ *           entries: modified UTF-8 node, zigzag varint weight
+ * </pre>
+ *
+ * <p>
+ * On startup every complete record is replayed on top of the snapshots.
+ * A torn or corrupt tail, as left behind by a crash mid-append, ends the
+ * replay and is discarded, as does a record of an unknown type. Records carry absolute weights, so replaying a
+ * journal whose compaction was interrupted yields the same result again.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public class JournaledPermissionStorage implements PermissionStorage {
+
+    private static final String JOURNAL = "journal.log";
+    private static final long DEFAULT_COMPACT_THRESHOLD = 8L << 20;
+
+    private static final byte TYPE_REPLACE = 0;
+    private static final byte TYPE_PATCH = 1;
+
+    private final JsonPermissionStorage snapshots;
+    private final Path journalPath;
+    private final long compactThreshold;
+
+    /** Latest data of every permittable written to the journal since the last compaction */
+    private final Map<UUID, PermittableData> unsnapshotted = new ConcurrentHashMap<>();
+    /** Snapshot data of journaled permittables as passed to their first save, spares reading their files */
+    private final Map<UUID, PermittableData> snapshotted = new HashMap<>();
+
+    private FileChannel journal;
+    private long journalSize;
+
+    /**
+     * Creates a journaled storage with the default compaction threshold of 8 MiB.
+     *
+     * @param folder the folder holding the snapshots and the journal
+     * @throws IllegalStateException if the folder is locked by another storage or the journal cannot be replayed or opened
+     */
+    public JournaledPermissionStorage(final @NonNull File folder) {
+        this(folder, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    /**
+     * Creates a journaled storage.
+     *
+     * @param folder           the folder holding the snapshots and the journal
+     * @param compactThreshold journal size in bytes that triggers a compaction
+     * @throws IllegalStateException if the folder is locked by another storage or the journal cannot be replayed or opened
+     */
+    public JournaledPermissionStorage(final @NonNull File folder, final long compactThreshold) {
+        this.snapshots = new JsonPermissionStorage(folder);
+        this.journalPath = new File(folder, JOURNAL).toPath();
+        this.compactThreshold = compactThreshold;
+
+        try {
+            replay();
+            journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            compactJournal();
+        } catch (IOException e) {
+            snapshots.close();
+            throw new IllegalStateException("Could not open permission journal " + journalPath, e);
+        }
+    }
+
+    @Override
+    public @NonNull PermittableData load(final @NonNull UUID uuid) {
+        return current(uuid);
+    }
+
+    /**
+     * Returns the latest journaled data of a permittable, else its snapshot.
+     */
+    private PermittableData current(final @NonNull UUID uuid) {
+        PermittableData pending = unsnapshotted.get(uuid);
+        return pending != null ? pending : snapshots.load(uuid);
+    }
+
+    @Override
+    public synchronized void save(final @NonNull UUID uuid,
+                                  final @NonNull PermittableData data,
+                                  final @Nullable PermittableData previous) {
+        long start = journalSize;
+        try {
+            byte[] payload = encode(uuid, data, previous);
+            ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+            frame.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+            while (frame.hasRemaining()) journalSize += journal.write(frame, journalSize);
+        } catch (IOException e) {
+            discardFrom(start);
+            throw new StorageUnavailableException("Could not journal permissions of " + uuid, e);
+        }
+
+        if (previous != null && !unsnapshotted.containsKey(uuid)) snapshotted.put(uuid, previous);
+        unsnapshotted.put(uuid, data);
+    }
+
+    /**
+     * Drops a partially written frame, the next one is appended in its place
+     * so a replay never stops in front of later records.
+     */
+    private void discardFrom(final long start) {
+        journalSize = start;
+        try {
+            journal.truncate(start);
+        } catch (IOException e) {
+            e.printStackTrace(); // overwritten by the next frame, a leftover tail is discarded on replay
+        }
+    }
+
+    @Override
+    public @NonNull Collection<UUID> stored() {
+        Set<UUID> ids = new HashSet<>(snapshots.stored());
+        ids.addAll(unsnapshotted.keySet());
+        return ids;
+    }
+
+    /**
+     * Answers from the index of the snapshots, overlaid with the permittables
+     * journaled since the last compaction.
+     */
+    @Override
+    public synchronized @NonNull Map<UUID, Integer> holders(final @NonNull Permission permission) {
+        Map<UUID, Integer> holders = snapshots.holders(permission);
+        unsnapshotted.forEach((uuid, data) -> {
+            int weight = data.weights().get(permission);
+            if (weight == PermissionTrie.UNSET) holders.remove(uuid);
+            else holders.put(uuid, weight);
+        });
+        return holders;
+    }
+
+    /**
+     * Answers from the index of the snapshots, overlaid with the permittables
+     * journaled since the last compaction.
+     */
+    @Override
+    public synchronized @NonNull Map<UUID, Long> expiring() {
+        Map<UUID, Long> expiring = snapshots.expiring();
+        unsnapshotted.forEach((uuid, data) -> {
+            long next = data.nextExpiry();
+            if (next == Long.MAX_VALUE) expiring.remove(uuid);
+            else expiring.put(uuid, next);
+        });
+        return expiring;
+    }
+
+    @Override
+    public @NonNull Map<String, UUID> groups() {
+        return snapshots.groups();
+    }
+
+    @Override
+    public void saveGroup(final @NonNull String id, final @NonNull UUID uuid) {
+        snapshots.saveGroup(id, uuid);
+    }
+
+    /**
+     * Forces the journal and compacts it once it grew beyond the threshold.
+     * Runs after every write-behind batch on the background thread of the persister.
+     *
+     * @throws StorageUnavailableException if the journal cannot be forced or compacted
+     */
+    @Override
+    public synchronized void sync() {
+        try {
+            journal.force(false);
+        } catch (IOException e) {
+            throw new StorageUnavailableException("Could not force permission journal " + journalPath, e);
+        }
+        if (journalSize >= compactThreshold) compactJournal();
+    }
+
+    /**
+     * Writes every journaled permittable into its snapshot file and truncates the journal.
+     *
+     * @throws StorageUnavailableException if a snapshot or the journal cannot be written
+     */
+    public synchronized void compact() {
+        compactJournal();
+    }
+
+    private void compactJournal() {
+        try {
+            journal.force(false);
+            snapshots.saveAll(unsnapshotted, snapshotted);
+            journal.truncate(0);
+            journal.force(true);
+            journalSize = 0;
+            unsnapshotted.clear();
+            snapshotted.clear();
+        } catch (IOException e) {
+            throw new StorageUnavailableException("Could not compact permission journal " + journalPath, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        compact();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        snapshots.close();
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(journalPath)) return;
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(journalPath))) {
+            DataInputStream data = new DataInputStream(in);
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = data.readInt();
+                    int crc = data.readInt();
+                    if (length < 0 || length > (64 << 20)) break;
+                    payload = new byte[length];
+                    data.readFully(payload);
+                    if (checksum(payload) != crc) break;
+                } catch (EOFException e) {
+                    break;
+                }
+                if (!apply(payload)) break;
+            }
+        }
+    }
+
+    private boolean apply(final byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        if (type != TYPE_REPLACE && type != TYPE_PATCH) return false;
+        UUID uuid = new UUID(in.readLong(), in.readLong());
+
+        boolean replace = type == TYPE_REPLACE;
+        PermittableData current = replace ? PermittableData.empty() : current(uuid);
+        PermissionWeightMap weights = replace ? current.weights() : current.weights().copy();
+
+        int count = VarInts.read(in);
+        for (int i = 0; i < count; i++) {
+            String node = in.readUTF();
+            int weight = VarInts.unzigzag(VarInts.read(in));
+            try {
+                weights.put(Permission.of(node), weight);
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+
+        int links = VarInts.read(in);
+        Map<UUID, Integer> parents = new LinkedHashMap<>(links);
+        for (int i = 0; i < links; i++)
+            parents.put(new UUID(in.readLong(), in.readLong()), VarInts.unzigzag(VarInts.read(in)));
+
+        int timed = VarInts.read(in);
+        Map<Permission, Long> expiries = new HashMap<>(timed);
+        for (int i = 0; i < timed; i++) {
+            String node = in.readUTF();
+            long expiry = in.readLong();
+            try {
+                expiries.put(Permission.of(node), expiry);
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+
+        int scoped = VarInts.read(in);
+        Map<PermissionContext, PermissionWeightMap> contexts = new HashMap<>(scoped);
+        for (int i = 0; i < scoped; i++) {
+            String context = in.readUTF();
+            int entries = VarInts.read(in);
+            PermissionWeightMap contextual = new PermissionWeightMap(entries);
+            for (int j = 0; j < entries; j++) {
+                String node = in.readUTF();
+                int weight = VarInts.unzigzag(VarInts.read(in));
+                try {
+                    contextual.put(Permission.of(node), weight);
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }
+            try {
+                if (!contextual.isEmpty()) contexts.put(PermissionContext.parse(context), contextual);
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        unsnapshotted.put(uuid, new PermittableData(weights, Collections.unmodifiableMap(parents),
+                Map.copyOf(expiries), Map.copyOf(contexts)));
+        return true;
+    }
+
+    private static byte[] encode(final UUID uuid,
+                                 final PermittableData data,
+                                 final @Nullable PermittableData previous) throws IOException {
+        PermissionWeightMap weights = data.weights();
+        PermissionWeightMap before = previous == null ? null : previous.weights();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(previous == null ? TYPE_REPLACE : TYPE_PATCH);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+
+        ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(64);
+        DataOutputStream entries = new DataOutputStream(entryBytes);
+        int[] count = {0};
+
+        weights.forEach((permission, weight) -> {
+            if (before != null && before.get(permission) == weight) return;
+            writeEntry(entries, permission, weight);
+            count[0]++;
+        });
+        if (before != null) {
+            before.forEach((permission, weight) -> {
+                if (weights.containsKey(permission)) return;
+                writeEntry(entries, permission, PermissionTrie.UNSET);
+                count[0]++;
+            });
+        }
+
+        VarInts.write(out, count[0]);
+        entryBytes.writeTo(out);
+
+        VarInts.write(out, data.parents().size());
+        for (Map.Entry<UUID, Integer> link : data.parents().entrySet()) {
+            out.writeLong(link.getKey().getMostSignificantBits());
+            out.writeLong(link.getKey().getLeastSignificantBits());
+            VarInts.write(out, VarInts.zigzag(link.getValue()));
+        }
+
+        VarInts.write(out, data.expiries().size());
+        for (Map.Entry<Permission, Long> expiry : data.expiries().entrySet()) {
+            out.writeUTF(expiry.getKey().toString());
+            out.writeLong(expiry.getValue());
+        }
+
+        VarInts.write(out, data.contexts().size());
+        for (Map.Entry<PermissionContext, PermissionWeightMap> context : data.contexts().entrySet()) {
+            out.writeUTF(context.getKey().toString());
+            VarInts.write(out, context.getValue().size());
+            context.getValue().forEach((permission, weight) -> writeEntry(out, permission, weight));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeEntry(final DataOutputStream out, final Permission permission, final int weight) {
+        try {
+            out.writeUTF(permission.toString());
+            VarInts.write(out, VarInts.zigzag(weight));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int checksum(final byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,789 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import de.leycm.stomgate.data.PermissionTrie;
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionContext;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores one JSON file per permittable, named {@code <uuid>.json}.
+ *
+ * <p>
+ * Files hold the parents as {@code uuid -> priority}, a {@code node -> weight}
+ * object, the expiries of timed weights as {@code node -> epoch millis} and
+ * the contextual weights as {@code context -> node -> weight}:
+ * {@code {"parents": {"<uuid>": 10}, "permissions": {"chat.color": 1}, "expires": {"chat.color": 1767225600000},
+ * "contexts": {"gamemode=creative": {"build.*": 1}}}}.
+ * Files written before 1.0.1, a flat {@code node -> weight} object, are
+ * still read. Group
+ * definitions are kept in {@code groups.json} as {@code id -> uuid}.
+ * </p>
+ *
+ * <p>
+ * The reverse index of {@code node -> holders} lives in the folder
+ * {@code holders}, one file per node of {@code <uuid> <weight>} lines. Every
+ * save appends a line for each node whose weight changed, {@code -1} removes
+ * the holder, and a lookup reads the file of the requested node only, folding
+ * it into the current holders. A file holding more than twice as many lines
+ * as holders is rewritten by its next lookup. The first expiry of every
+ * permittable with timed weights is appended to {@code expiring.log} the same
+ * way and read on open.
+ * </p>
+ *
+ * <p>
+ * Appends to the index are not synced one by one. Every save first appends
+ * the uuid of the permittable and the nodes it changes to {@code index.log},
+ * opening the storage reads those permittables again and appends their
+ * stored weights once more, so a crash never leaves the index behind the
+ * files. Every 4096 saves and on {@link #close()} the index files are synced
+ * and the log is emptied. A folder without {@code holders} is indexed from
+ * every stored file once.
+ * </p>
+ *
+ * <p>
+ * Every save writes a temporary file first, syncs it and renames it over the
+ * old one, so a crash never leaves a half written file behind.
+ * </p>
+ *
+ * <p>
+ * The folder has a single writer. Opening locks {@code storage.lock} until
+ * {@link #close()} and fails while another storage holds it.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public class JsonPermissionStorage implements PermissionStorage {
+
+    private static final String SUFFIX = ".json";
+    private static final String GROUPS = "groups.json";
+    private static final String HOLDERS = "holders";
+    private static final String HOLDERS_SUFFIX = ".log";
+    private static final String EXPIRING = "expiring.log";
+    private static final String INDEX_LOG = "index.log";
+    /** Longest encoded node used as file name, longer ones are hashed */
+    private static final int MAX_FILE_NAME = 200;
+    /** Lines an index file may hold beyond twice its live entries before it is rewritten */
+    private static final int COMPACT_SLACK = 64;
+    private static final String LOCK = "storage.lock";
+    private static final int CHECKPOINT_INTERVAL = 4096;
+    private static final String PARENTS = "parents";
+    private static final String PERMISSIONS = "permissions";
+    private static final String EXPIRES = "expires";
+    private static final String CONTEXTS = "contexts";
+    private static final Type TYPE = new TypeToken<Map<String, Integer>>(){}.getType();
+    private static final Type GROUPS_TYPE = new TypeToken<Map<String, String>>(){}.getType();
+    private static final Type EXPIRY_TYPE = new TypeToken<Map<String, Long>>(){}.getType();
+    private static final Type CONTEXTS_TYPE = new TypeToken<Map<String, Map<String, Integer>>>(){}.getType();
+
+    private final File folder;
+    private final StorageLock lock;
+    private final Gson gson = new Gson();
+    private final Path holdersFolder;
+    /** First expiry of every permittable with timed weights, as folded from {@code expiring.log} */
+    private final Map<UUID, Long> expiring = new ConcurrentHashMap<>();
+    /** Index files appended to since the last checkpoint */
+    private final Set<Path> touched = new HashSet<>();
+
+    private final FileChannel indexLog;
+    private long indexLogSize;
+    private FileChannel expiringLog;
+    /** Saves logged since the last checkpoint */
+    private int logged;
+
+    /**
+     * Creates a storage in the given folder, the folder is created if missing.
+     *
+     * @param folder the folder holding the files
+     * @throws IllegalStateException if the folder is locked by another storage or the index log cannot be opened
+     */
+    public JsonPermissionStorage(final @NonNull File folder) {
+        this.folder = folder;
+        this.holdersFolder = new File(folder, HOLDERS).toPath();
+        if (!folder.exists()) folder.mkdirs();
+        lock = StorageLock.acquire(new File(folder, LOCK).toPath());
+        Path logPath = new File(folder, INDEX_LOG).toPath();
+        try {
+            indexLog = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            indexLogSize = indexLog.size();
+        } catch (IOException e) {
+            lock.close();
+            throw new IllegalStateException("Could not open index log " + logPath, e);
+        }
+        try {
+            openIndex();
+        } catch (IOException | RuntimeException e) {
+            close(expiringLog);
+            close(indexLog);
+            lock.close();
+            if (e instanceof RuntimeException runtime) throw runtime;
+            throw new IllegalStateException("Could not open permission index in " + folder, e);
+        }
+    }
+
+    /**
+     * Reads the first expiries and brings the index up to date with the
+     * permittables named in the index log, or builds it from every file if
+     * the folder has none yet.
+     */
+    private void openIndex() throws IOException {
+        Path expiringPath = new File(folder, EXPIRING).toPath();
+        if (!Files.isDirectory(holdersFolder)) {
+            rebuildIndex(expiringPath);
+            return;
+        }
+
+        repairTail(expiringPath);
+        int lines = 0;
+        if (Files.exists(expiringPath)) {
+            for (String line : completeLines(expiringPath)) {
+                int separator = line.indexOf(' ');
+                try {
+                    UUID uuid = UUID.fromString(line.substring(0, Math.max(0, separator)));
+                    String expiry = line.substring(separator + 1);
+                    if (expiry.equals("-")) expiring.remove(uuid);
+                    else expiring.put(uuid, Long.parseLong(expiry));
+                    lines++;
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (lines > 2 * expiring.size() + COMPACT_SLACK) rewriteExpiring(expiringPath);
+        expiringLog = FileChannel.open(expiringPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        // a line without its newline was torn by a crash, its file was not written yet
+        Map<UUID, Set<String>> changed = new LinkedHashMap<>();
+        for (String line : completeLines(new File(folder, INDEX_LOG).toPath())) {
+            String[] parts = line.split(" ");
+            try {
+                Collections.addAll(changed.computeIfAbsent(UUID.fromString(parts[0]), uuid -> new HashSet<>()),
+                        Arrays.copyOfRange(parts, 1, parts.length));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        if (indexLogSize == 0) return;
+
+        Set<Path> repaired = new HashSet<>();
+        for (Map.Entry<UUID, Set<String>> entry : changed.entrySet()) {
+            UUID uuid = entry.getKey();
+            PermittableData data = read(uuid);
+            for (String node : entry.getValue()) {
+                Permission permission;
+                try {
+                    permission = Permission.of(decode(node));
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                Path path = holderPath(permission);
+                if (repaired.add(path)) repairTail(path);
+                appendHolder(path, uuid, data.weights().get(permission));
+            }
+            updateExpiring(uuid, data);
+        }
+        checkpoint();
+    }
+
+    /**
+     * Indexes every stored file into a fresh {@code holders} folder, which
+     * only replaces the missing one once it is complete.
+     */
+    private void rebuildIndex(final @NonNull Path expiringPath) throws IOException {
+        Path building = holdersFolder.resolveSibling(HOLDERS + ".tmp");
+        if (Files.isDirectory(building)) {
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(building)) {
+                for (Path file : stale) Files.delete(file);
+            }
+        }
+        Files.createDirectories(building);
+
+        for (UUID uuid : storedIds()) {
+            PermittableData data = read(uuid);
+            data.weights().forEach((permission, weight) -> {
+                try {
+                    Path path = building.resolve(fileNameOf(permission) + HOLDERS_SUFFIX);
+                    Files.writeString(path, uuid + " " + weight + "\n", StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            long next = data.nextExpiry();
+            if (next != Long.MAX_VALUE) expiring.put(uuid, next);
+        }
+
+        rewriteExpiring(expiringPath);
+        expiringLog = FileChannel.open(expiringPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Files.move(building, holdersFolder, StandardCopyOption.ATOMIC_MOVE);
+        indexLog.truncate(0);
+        indexLog.force(true);
+        indexLogSize = 0;
+    }
+
+    private void rewriteExpiring(final @NonNull Path expiringPath) throws IOException {
+        StringBuilder content = new StringBuilder(expiring.size() * 52);
+        expiring.forEach((uuid, expiry) -> content.append(uuid).append(' ').append(expiry).append('\n'));
+        writeAtomically(expiringPath, content.toString());
+    }
+
+    private void updateExpiring(final @NonNull UUID uuid, final @NonNull PermittableData data) throws IOException {
+        long next = data.nextExpiry();
+        Long known = expiring.get(uuid);
+        if (next == Long.MAX_VALUE ? known == null : known != null && known == next) return;
+
+        String line = uuid + " " + (next == Long.MAX_VALUE ? "-" : Long.toString(next)) + "\n";
+        ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) expiringLog.write(bytes);
+        if (next == Long.MAX_VALUE) expiring.remove(uuid);
+        else expiring.put(uuid, next);
+    }
+
+    private boolean expiringChanged(final @NonNull UUID uuid, final @NonNull PermittableData data) {
+        long next = data.nextExpiry();
+        Long known = expiring.get(uuid);
+        return next == Long.MAX_VALUE ? known != null : known == null || known != next;
+    }
+
+    private Path holderPath(final @NonNull Permission permission) {
+        return holdersFolder.resolve(fileNameOf(permission) + HOLDERS_SUFFIX);
+    }
+
+    private void appendHolder(final @NonNull Path path, final @NonNull UUID uuid, final int weight) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((uuid + " " + weight + "\n").getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (line.hasRemaining()) channel.write(line);
+        }
+        touched.add(path);
+    }
+
+    private Path pathFor(final @NonNull UUID uuid) {
+        return new File(folder, uuid + SUFFIX).toPath();
+    }
+
+    @Override
+    public @NonNull PermittableData load(final @NonNull UUID uuid) {
+        return read(uuid);
+    }
+
+    /**
+     * Reads the stored file of a permittable, also used while the index is rebuilt on construction.
+     */
+    private PermittableData read(final @NonNull UUID uuid) {
+        PermissionWeightMap perms = new PermissionWeightMap();
+        Map<UUID, Integer> parents = new LinkedHashMap<>();
+        Map<Permission, Long> expiries = new HashMap<>();
+        Map<PermissionContext, PermissionWeightMap> contexts = new HashMap<>();
+        Path path = pathFor(uuid);
+        if (!Files.exists(path)) return PermittableData.empty();
+
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            JsonElement root = JsonParser.parseReader(reader);
+            if (root.isJsonObject()) {
+                JsonObject object = root.getAsJsonObject();
+                JsonElement permissions = object.get(PERMISSIONS);
+                if (permissions != null && permissions.isJsonObject()) {
+                    JsonElement links = object.get(PARENTS);
+                    if (links != null && links.isJsonObject()) {
+                        Map<String, Integer> loaded = gson.fromJson(links, TYPE);
+                        if (loaded != null) loaded.forEach((parent, priority) -> {
+                            if (priority != null) parents.put(UUID.fromString(parent), priority);
+                        });
+                    }
+                    JsonElement expires = object.get(EXPIRES);
+                    if (expires != null && expires.isJsonObject()) {
+                        Map<String, Long> loaded = gson.fromJson(expires, EXPIRY_TYPE);
+                        if (loaded != null) loaded.forEach((node, expiry) -> {
+                            if (expiry != null) expiries.put(Permission.of(node), expiry);
+                        });
+                    }
+                    JsonElement scoped = object.get(CONTEXTS);
+                    if (scoped != null && scoped.isJsonObject()) {
+                        Map<String, Map<String, Integer>> loaded = gson.fromJson(scoped, CONTEXTS_TYPE);
+                        if (loaded != null) loaded.forEach((context, weights) -> {
+                            PermissionWeightMap contextual = new PermissionWeightMap();
+                            if (weights != null) readInto(weights, contextual);
+                            if (!contextual.isEmpty()) contexts.put(PermissionContext.parse(context), contextual);
+                        });
+                    }
+                } else {
+                    permissions = object; // layout before 1.0.1, a flat node -> weight object
+                }
+
+                Map<String, Integer> loaded = gson.fromJson(permissions, TYPE);
+                if (loaded != null) readInto(loaded, perms);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        expiries.keySet().removeIf(permission -> !perms.containsKey(permission));
+        return new PermittableData(perms, Collections.unmodifiableMap(parents), Map.copyOf(expiries), Map.copyOf(contexts));
+    }
+
+    @Override
+    public synchronized void save(final @NonNull UUID uuid,
+                     final @NonNull PermittableData data,
+                     final @Nullable PermittableData previous) {
+        PermissionWeightMap before = previous != null ? previous.weights() : storedWeights(uuid);
+        List<Permission> changed = changedNodes(before, data.weights());
+        boolean indexed = !changed.isEmpty() || expiringChanged(uuid, data);
+
+        if (indexed) {
+            StringBuilder entry = new StringBuilder(37 + changed.size() * 16);
+            appendEntry(entry, uuid, changed);
+            logIndex(entry, uuid.toString());
+        }
+        try {
+            writeAtomically(pathFor(uuid), gson.toJson(toJson(data)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not save permissions of " + uuid, e);
+        }
+        if (!indexed) return;
+
+        index(uuid, data, changed);
+        if (++logged >= CHECKPOINT_INTERVAL) checkpoint();
+    }
+
+    /**
+     * Saves many permittables at once, as the compaction of a journal does.
+     * The index log gets a single entry for all of them, every file is
+     * written to its temporary file before one pass of renames and the
+     * folder is synced once afterwards.
+     *
+     * @param batch    the data to save by permittable
+     * @param previous the data last saved of some of the permittables, the others are read from their files
+     * @throws StorageUnavailableException if the index log or a file cannot be written
+     */
+    synchronized void saveAll(final @NonNull Map<UUID, PermittableData> batch,
+                              final @NonNull Map<UUID, PermittableData> previous) {
+        if (batch.isEmpty()) return;
+
+        Map<UUID, List<Permission>> changes = new HashMap<>();
+        StringBuilder entries = new StringBuilder(batch.size() * 64);
+        batch.forEach((uuid, data) -> {
+            PermittableData known = previous.get(uuid);
+            List<Permission> changed = changedNodes(known != null ? known.weights() : storedWeights(uuid), data.weights());
+            if (changed.isEmpty() && !expiringChanged(uuid, data)) return;
+            appendEntry(entries, uuid, changed);
+            changes.put(uuid, changed);
+        });
+        if (!entries.isEmpty()) logIndex(entries, batch.size() + " permittables");
+
+        Map<Path, Path> temps = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<UUID, PermittableData> entry : batch.entrySet()) {
+                Path target = pathFor(entry.getKey());
+                Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+                writeSynced(temp, gson.toJson(toJson(entry.getValue())));
+                temps.put(temp, target);
+            }
+            for (Map.Entry<Path, Path> rename : temps.entrySet()) move(rename.getKey(), rename.getValue());
+            syncFolder();
+        } catch (IOException e) {
+            throw new StorageUnavailableException("Could not save " + batch.size() + " permittables to " + folder, e);
+        }
+
+        changes.forEach((uuid, changed) -> index(uuid, batch.get(uuid), changed));
+        logged += changes.size();
+        if (logged >= CHECKPOINT_INTERVAL) checkpoint();
+    }
+
+    private Map<String, Object> toJson(final @NonNull PermittableData data) {
+        Map<String, Integer> permissions = new TreeMap<>();
+        data.weights().forEach((permission, weight) -> permissions.put(permission.toString(), weight));
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        if (!data.parents().isEmpty()) {
+            Map<String, Integer> parents = new LinkedHashMap<>();
+            data.parents().forEach((parent, priority) -> parents.put(parent.toString(), priority));
+            json.put(PARENTS, parents);
+        }
+        json.put(PERMISSIONS, permissions);
+        if (!data.expiries().isEmpty()) {
+            Map<String, Long> expires = new TreeMap<>();
+            data.expiries().forEach((permission, expiry) -> expires.put(permission.toString(), expiry));
+            json.put(EXPIRES, expires);
+        }
+        if (!data.contexts().isEmpty()) {
+            Map<String, Map<String, Integer>> contexts = new TreeMap<>();
+            data.contexts().forEach((context, weights) -> {
+                Map<String, Integer> contextual = new TreeMap<>();
+                weights.forEach((permission, weight) -> contextual.put(permission.toString(), weight));
+                contexts.put(context.toString(), contextual);
+            });
+            json.put(CONTEXTS, contexts);
+        }
+        return json;
+    }
+
+    private PermissionWeightMap storedWeights(final @NonNull UUID uuid) {
+        return Files.exists(pathFor(uuid)) ? load(uuid).weights() : new PermissionWeightMap(0);
+    }
+
+    private static List<Permission> changedNodes(final @NonNull PermissionWeightMap before,
+                                                 final @NonNull PermissionWeightMap after) {
+        List<Permission> changed = new ArrayList<>();
+        after.forEach((permission, weight) -> {
+            if (before.get(permission) != weight) changed.add(permission);
+        });
+        before.forEach((permission, weight) -> {
+            if (!after.containsKey(permission)) changed.add(permission);
+        });
+        return changed;
+    }
+
+    private static void appendEntry(final @NonNull StringBuilder entries,
+                                    final @NonNull UUID uuid,
+                                    final @NonNull List<Permission> changed) {
+        entries.append(uuid);
+        for (Permission permission : changed) entries.append(' ').append(encode(permission.toString()));
+        entries.append('\n');
+    }
+
+    private void logIndex(final @NonNull StringBuilder entries, final @NonNull String saved) {
+        try {
+            ByteBuffer lines = ByteBuffer.wrap(entries.toString().getBytes(StandardCharsets.UTF_8));
+            while (lines.hasRemaining()) indexLogSize += indexLog.write(lines, indexLogSize);
+            indexLog.force(false);
+        } catch (IOException e) {
+            throw new StorageUnavailableException("Could not log save of " + saved + " to " + INDEX_LOG, e);
+        }
+    }
+
+    private void index(final @NonNull UUID uuid, final @NonNull PermittableData data, final @NonNull List<Permission> changed) {
+        try {
+            for (Permission permission : changed) appendHolder(holderPath(permission), uuid, data.weights().get(permission));
+            updateExpiring(uuid, data);
+        } catch (IOException e) {
+            // the index log names the permittable, the next open indexes it again
+            throw new StorageUnavailableException("Could not index permissions of " + uuid, e);
+        }
+    }
+
+    /**
+     * Folds the index file of the node, rewriting it if most of its lines are outdated.
+     */
+    @Override
+    public synchronized @NonNull Map<UUID, Integer> holders(final @NonNull Permission permission) {
+        Map<UUID, Integer> holders = new HashMap<>();
+        Path path = holderPath(permission);
+        if (!Files.exists(path)) return holders;
+
+        try {
+            List<String> lines = completeLines(path);
+            for (String line : lines) {
+                int separator = line.indexOf(' ');
+                try {
+                    UUID uuid = UUID.fromString(line.substring(0, Math.max(0, separator)));
+                    int weight = Integer.parseInt(line.substring(separator + 1));
+                    if (weight == PermissionTrie.UNSET) holders.remove(uuid);
+                    else holders.put(uuid, weight);
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (lines.size() > 2 * holders.size() + COMPACT_SLACK) {
+                StringBuilder content = new StringBuilder(holders.size() * 40);
+                holders.forEach((uuid, weight) -> content.append(uuid).append(' ').append(weight).append('\n'));
+                writeAtomically(path, content.toString());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read holders of " + permission, e);
+        }
+        return holders;
+    }
+
+    @Override
+    public @NonNull Map<UUID, Long> expiring() {
+        return new HashMap<>(expiring);
+    }
+
+    /**
+     * Syncs the index and empties the index log.
+     */
+    @Override
+    public synchronized void close() {
+        checkpoint();
+        close(expiringLog);
+        close(indexLog);
+        lock.close();
+    }
+
+    private static void close(final @Nullable FileChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Syncs every index file appended to since the last checkpoint and
+     * empties the index log. A crash in between leaves the log in place,
+     * indexing its permittables again yields the same index.
+     */
+    private synchronized void checkpoint() {
+        try {
+            for (Path path : touched) {
+                if (!Files.exists(path)) continue;
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.force(false);
+                }
+            }
+            touched.clear();
+            if (expiringLog != null) expiringLog.force(false);
+            indexLog.truncate(0);
+            indexLog.force(true);
+            indexLogSize = 0;
+            logged = 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Completes a line torn by a crash, so the next append starts on a line of its own.
+     */
+    private static void repairTail(final @NonNull Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size == 0) return;
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            if (last.get(0) != '\n') channel.write(ByteBuffer.wrap(new byte[]{'\n'}), size);
+        }
+    }
+
+    /**
+     * Returns every line of a file that ends with a newline, a torn last line is left out.
+     */
+    private static List<String> completeLines(final @NonNull Path path) throws IOException {
+        if (!Files.exists(path)) return List.of();
+        String content = Files.readString(path, StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int end = content.indexOf('\n'); end >= 0; start = end + 1, end = content.indexOf('\n', start)) {
+            if (end > start) lines.add(content.substring(start, end));
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the file name of the index file of a node, the encoded node or
+     * a hash of it if that is too long for a file name.
+     */
+    static @NonNull String fileNameOf(final @NonNull Permission permission) {
+        String encoded = encode(permission.toString());
+        if (encoded.length() <= MAX_FILE_NAME) return encoded;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(permission.toString().getBytes(StandardCharsets.UTF_8));
+            return "~" + HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encodes a node into characters that are safe in file names on every
+     * file system, including case-insensitive ones: lower case letters,
+     * digits, {@code .}, {@code _} and {@code -} are kept, every other byte
+     * becomes {@code %XX}.
+     */
+    static @NonNull String encode(final @NonNull String node) {
+        StringBuilder encoded = new StringBuilder(node.length() + 8);
+        for (byte b : node.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '_' || c == '-') encoded.append(c);
+            else encoded.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                    .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Reverses {@link #encode(String)}.
+     *
+     * @throws IllegalArgumentException if the text is not an encoded node
+     */
+    static @NonNull String decode(final @NonNull String encoded) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(encoded.length());
+        for (int i = 0; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            if (c != '%') {
+                bytes.write(c);
+                continue;
+            }
+            if (i + 2 >= encoded.length()) throw new IllegalArgumentException("Torn escape in " + encoded);
+            bytes.write(HexFormat.fromHexDigits(encoded, i + 1, i + 3));
+            i += 2;
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public @NonNull Collection<UUID> stored() {
+        return storedIds();
+    }
+
+    private Collection<UUID> storedIds() {
+        File[] files = folder.listFiles(f -> f.isFile() && f.getName().endsWith(SUFFIX));
+        if (files == null) return List.of();
+
+        List<UUID> ids = new ArrayList<>(files.length);
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                ids.add(UUID.fromString(name.substring(0, name.length() - SUFFIX.length())));
+            } catch (IllegalArgumentException ignored) {
+                // not a permittable file
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public synchronized @NonNull Map<String, UUID> groups() {
+        Map<String, UUID> groups = new LinkedHashMap<>();
+        Path path = new File(folder, GROUPS).toPath();
+        if (!Files.exists(path)) return groups;
+
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Map<String, String> loaded = gson.fromJson(reader, GROUPS_TYPE);
+            if (loaded == null) return groups;
+            for (Map.Entry<String, String> entry : loaded.entrySet()) {
+                try {
+                    groups.put(entry.getKey(), UUID.fromString(entry.getValue()));
+                } catch (IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return groups;
+    }
+
+    @Override
+    public synchronized void saveGroup(final @NonNull String id, final @NonNull UUID uuid) {
+        Map<String, String> json = new TreeMap<>();
+        groups().forEach((group, groupUuid) -> json.put(group, groupUuid.toString()));
+        json.put(id, uuid.toString());
+
+        try {
+            writeAtomically(new File(folder, GROUPS).toPath(), gson.toJson(json));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not save group " + id, e);
+        }
+    }
+
+    /**
+     * Copies string keyed weights into a permission map, skipping invalid nodes.
+     *
+     * @param source the parsed JSON object
+     * @param target the map to fill
+     */
+    static void readInto(final @NonNull Map<String, Integer> source,
+                         final @NonNull PermissionWeightMap target) {
+        for (Map.Entry<String, Integer> entry : source.entrySet()) {
+            if (entry.getValue() == null) continue;
+            try {
+                target.put(Permission.of(entry.getKey()), entry.getValue());
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Writes the content to a sibling temporary file and renames it over the target.
+     *
+     * @param target  the file to replace
+     * @param content the new content
+     * @throws IOException if writing or renaming fails
+     */
+    static void writeAtomically(final @NonNull Path target, final @NonNull String content) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        writeSynced(temp, content);
+        move(temp, target);
+    }
+
+    private static void writeSynced(final @NonNull Path path, final @NonNull String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(path.toFile())) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+    }
+
+    private static void move(final @NonNull Path source, final @NonNull Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Syncs the folder itself, so renames into it survive a crash.
+     */
+    private void syncFolder() {
+        try (FileChannel directory = FileChannel.open(folder.toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ignored) {
+            // not every platform can open a folder, its renames are as durable as the platform makes them
+        }
+    }
+}
@@ -0,0 +1,773 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import de.leycm.stomgate.data.PermissionTrie;
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionContext;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps every permittable in one memory-mapped binary file.
+ *
+ * <p>
+ * The file starts with a fixed header followed by an append-only sequence of
+ * records. Permission nodes are stored once in a node dictionary and referenced
+ * by dense varint ids, permittable records only hold ids and zigzag varint
+ * weights. An open addressing hash index maps every {@link UUID} to the offset
+ * of its latest record, so {@link #load(UUID)} decodes straight from the mapped
+ * memory without any intermediate copy or text parsing.
+ * </p>
+ *
+ * <pre>
+ * header (64 bytes)
+ *   int  magic "STGM"      int  version
+ *   long index table offset int index capacity   int index size
+ *   long data end          long garbage bytes
+ *   long newest expiry record, 0 = none
+ *   long holder heads offset int holder heads capacity
+ * record
+ *   byte tag, varint payload length, payload
+ *   NODE        varint id, UTF-8 bytes of the node
+ *   PERMITTABLE long msb, long lsb, parents, weights, expiries, contexts
+ *   INDEX       capacity x (long msb, long lsb, long record offset), offset 0 = empty
+ *   GROUP       long msb, long lsb, UTF-8 bytes of the group id
+ *   HOLDER      varint node id, long previous holder record of the node, long msb, long lsb,
+ *               zigzag varint weight, -1 = removed
+ *   HEADS       capacity x long newest holder record, indexed by node id
+ *   EXPIRY      long previous expiry record, long msb, long lsb, long epoch millis, max = none
+ * permittable sections
+ *   parents     varint count, count x (long msb, long lsb, zigzag varint priority)
+ *   weights     varint count, count x (varint node id, zigzag varint weight)
+ *   expiries    varint count, count x (varint node id, long epoch millis)
+ *   contexts    varint count, count x (varint length, UTF-8 bytes of the context,
+ *               varint count, count x (varint node id, zigzag varint weight))
+ * </pre>
+ *
+ * <p>
+ * Group definitions are rare and collected by the startup scan, the last
+ * record of an id wins.
+ * </p>
+ *
+ * <p>
+ * The reverse index of {@code node -> holders} is a chain of holder records
+ * per node, linked from the newest to the oldest. Every save appends a record
+ * for each node whose weight changed and repoints the head of the node, a
+ * lookup walks the chain of the requested node only and the newest record of
+ * every permittable wins. The first expiries form one more chain that is read
+ * on open. Both are rebuilt from the permittable records if a link is
+ * corrupt.
+ * </p>
+ *
+ * <p>
+ * Saves append a new record and repoint the index slot, the old record becomes
+ * garbage, just like the holder and expiry records it supersedes. Once more
+ * than half of the file is garbage it is rewritten into a
+ * temporary file that replaces the original through an atomic rename. The
+ * index is only guaranteed to be durable after {@link #sync()}.
+ * </p>
+ *
+ * <p>
+ * A single mapping is used, the file is therefore limited to 2 GiB.
+ * </p>
+ *
+ * <p>
+ * The file has a single writer. Opening locks a {@code .lock} file next to it
+ * until {@link #close()} and fails while another storage holds it.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public class MappedPermissionStorage implements PermissionStorage {
+
+    private static final int MAGIC = 0x5354474D;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_INDEX_OFFSET = 8;
+    private static final int H_INDEX_CAPACITY = 16;
+    private static final int H_INDEX_SIZE = 20;
+    private static final int H_DATA_END = 24;
+    private static final int H_GARBAGE = 32;
+    private static final int H_EXPIRY = 40;
+    private static final int H_HEADS_OFFSET = 48;
+    private static final int H_HEADS_CAPACITY = 56;
+
+    private static final byte TAG_NODE = 1;
+    private static final byte TAG_PERMITTABLE = 2;
+    private static final byte TAG_INDEX = 3;
+    private static final byte TAG_GROUP = 4;
+    private static final byte TAG_HOLDER = 5;
+    private static final byte TAG_HEADS = 6;
+    private static final byte TAG_EXPIRY = 7;
+
+    private static final int SLOT_SIZE = 24;
+    private static final int DEFAULT_INDEX_CAPACITY = 1024;
+    private static final int DEFAULT_HEADS_CAPACITY = 256;
+    private static final int INITIAL_FILE_SIZE = 1 << 20;
+    private static final long COMPACT_MIN_GARBAGE = 1L << 20;
+
+    private final Path path;
+    private final @Nullable StorageLock lock;
+    private final int initialIndexCapacity;
+
+    /** Node dictionary: id -> permission and back */
+    private final List<Permission> nodes = new ArrayList<>();
+    private final Map<Permission, Integer> nodeIds = new HashMap<>();
+    /** Group definitions: id -> uuid */
+    private final Map<String, UUID> groups = new LinkedHashMap<>();
+    /** First expiry of every live record with timed weights, survives compactions as they keep the content */
+    private final Map<UUID, Long> expiring = new ConcurrentHashMap<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    /**
+     * Opens or creates the store at the given file.
+     *
+     * @param file the store file
+     * @throws IllegalStateException if the file is locked by another storage, cannot be opened or is not a permission store
+     */
+    public MappedPermissionStorage(final @NonNull File file) {
+        this(file.toPath(), DEFAULT_INDEX_CAPACITY, true);
+    }
+
+    /**
+     * @param locked whether to lock the file, compaction copies are private to their storage
+     */
+    private MappedPermissionStorage(final Path path, final int initialIndexCapacity, final boolean locked) {
+        this.path = path;
+        this.initialIndexCapacity = initialIndexCapacity;
+        File parent = path.toAbsolutePath().getParent().toFile();
+        if (!parent.exists()) parent.mkdirs();
+        lock = locked ? StorageLock.acquire(path.resolveSibling(path.getFileName() + ".lock")) : null;
+        try {
+            open();
+            loadIndex();
+        } catch (RuntimeException e) {
+            if (lock != null) lock.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the first expiries from their chain, both chains are rebuilt if a link is corrupt.
+     */
+    private void loadIndex() {
+        int heads = (int) buffer.getLong(H_HEADS_OFFSET);
+        int capacity = buffer.getInt(H_HEADS_CAPACITY);
+        boolean usable = heads > HEADER_SIZE && capacity > 0 && (long) heads + capacity * 8L <= dataEnd()
+                && buffer.get(heads - 1 - VarInts.size(capacity * 8)) == TAG_HEADS;
+        if (usable) {
+            try {
+                for (int offset = (int) buffer.getLong(H_EXPIRY); offset != 0; ) {
+                    checkLink(offset, TAG_EXPIRY, Integer.MAX_VALUE);
+                    int payload = offset + 1 + VarInts.size(32);
+                    UUID uuid = new UUID(buffer.getLong(payload + 8), buffer.getLong(payload + 16));
+                    long expiry = buffer.getLong(payload + 24);
+                    if (!expiring.containsKey(uuid)) expiring.put(uuid, expiry);
+                    int previous = (int) buffer.getLong(payload);
+                    checkLink(previous, TAG_EXPIRY, offset);
+                    offset = previous;
+                }
+                expiring.values().removeIf(expiry -> expiry == Long.MAX_VALUE);
+                return;
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+            }
+        }
+        rebuildIndex();
+    }
+
+    /**
+     * Appends fresh holder and expiry chains for every live record, the old ones are left unreferenced.
+     */
+    private void rebuildIndex() {
+        expiring.clear();
+        buffer.putLong(H_EXPIRY, 0);
+        buffer.putLong(H_HEADS_OFFSET, 0);
+        buffer.putInt(H_HEADS_CAPACITY, 0);
+        allocateHeads(Math.max(DEFAULT_HEADS_CAPACITY, Integer.highestOneBit(Math.max(1, nodes.size())) << 1));
+        for (UUID uuid : storedIds()) {
+            PermittableData data = read(uuid);
+            data.weights().forEach((permission, weight) -> appendHolder(nodeIdOf(permission), uuid, weight));
+            updateExpiring(uuid, data);
+        }
+    }
+
+    /**
+     * Fails unless the offset is {@code 0} or a record of the tag before the given offset.
+     */
+    private void checkLink(final int offset, final byte tag, final int before) {
+        if (offset == 0) return;
+        if (offset < HEADER_SIZE || offset >= before || offset >= dataEnd() || buffer.get(offset) != tag)
+            throw new IllegalStateException("Corrupt index link in " + path + " at " + offset);
+    }
+
+    /**
+     * Appends an expiry record if the first expiry of the permittable changed.
+     *
+     * @return whether a record was appended
+     */
+    private boolean updateExpiring(final UUID uuid, final PermittableData data) {
+        long next = data.nextExpiry();
+        Long known = expiring.get(uuid);
+        if (next == Long.MAX_VALUE ? known == null : known != null && known == next) return false;
+
+        ByteBuffer payload = ByteBuffer.allocate(32);
+        payload.putLong(buffer.getLong(H_EXPIRY))
+                .putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).putLong(next);
+        int offset = appendRecord(TAG_EXPIRY, payload.array());
+        buffer.putLong(H_EXPIRY, offset);
+        if (known != null) addGarbage(recordLength(offset));
+        if (next == Long.MAX_VALUE) expiring.remove(uuid);
+        else expiring.put(uuid, next);
+        return true;
+    }
+
+    /**
+     * Appends a holder record to the chain of the node.
+     *
+     * @return the length of the appended record
+     */
+    private int appendHolder(final int id, final UUID uuid, final int weight) {
+        if (id >= buffer.getInt(H_HEADS_CAPACITY)) allocateHeads(Integer.highestOneBit(id) << 1);
+
+        ByteBuffer payload = ByteBuffer.allocate(VarInts.size(id) + 24 + VarInts.size(VarInts.zigzag(weight)));
+        VarInts.write(payload, id);
+        payload.putLong(buffer.getLong(headAddress(id)))
+                .putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+        VarInts.write(payload, VarInts.zigzag(weight));
+        int offset = appendRecord(TAG_HOLDER, payload.array());
+        buffer.putLong(headAddress(id), offset);
+        return recordLength(offset);
+    }
+
+    private void allocateHeads(final int capacity) {
+        int oldOffset = (int) buffer.getLong(H_HEADS_OFFSET);
+        int oldCapacity = buffer.getInt(H_HEADS_CAPACITY);
+
+        int record = appendRecord(TAG_HEADS, new byte[capacity * 8]);
+        int table = record + 1 + VarInts.size(capacity * 8);
+        if (oldOffset != 0) {
+            buffer.put(table, buffer, oldOffset, oldCapacity * 8);
+            addGarbage(1 + VarInts.size(oldCapacity * 8) + oldCapacity * 8);
+        }
+        buffer.putLong(H_HEADS_OFFSET, table);
+        buffer.putInt(H_HEADS_CAPACITY, capacity);
+    }
+
+    private int headAddress(final int id) {
+        return (int) buffer.getLong(H_HEADS_OFFSET) + id * 8;
+    }
+
+    private void open() {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalStateException("Permission store exceeds 2 GiB: " + path);
+
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, INITIAL_FILE_SIZE));
+            nodes.clear();
+            nodeIds.clear();
+            groups.clear();
+
+            if (size < HEADER_SIZE || buffer.getInt(H_MAGIC) == 0) {
+                buffer.putInt(H_MAGIC, MAGIC);
+                buffer.putInt(H_VERSION, VERSION);
+                buffer.putLong(H_DATA_END, HEADER_SIZE);
+                buffer.putLong(H_GARBAGE, 0);
+                buffer.putLong(H_EXPIRY, 0);
+                buffer.putInt(H_INDEX_SIZE, 0);
+                allocateIndex(initialIndexCapacity);
+                allocateHeads(DEFAULT_HEADS_CAPACITY);
+                return;
+            }
+
+            if (buffer.getInt(H_MAGIC) != MAGIC || buffer.getInt(H_VERSION) != VERSION)
+                throw new IllegalStateException("Not a permission store of version " + VERSION + ": " + path);
+            scanRecords();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open permission store " + path, e);
+        }
+    }
+
+    @Override
+    public synchronized @NonNull PermittableData load(final @NonNull UUID uuid) {
+        return read(uuid);
+    }
+
+    private PermittableData read(final UUID uuid) {
+        int slot = findSlot(uuid);
+        int offset = (int) buffer.getLong(slotAddress(slot) + 16);
+        if (offset == 0) return PermittableData.empty();
+        return decode(offset);
+    }
+
+    @Override
+    public synchronized void save(final @NonNull UUID uuid,
+                                  final @NonNull PermittableData data,
+                                  final @Nullable PermittableData previous) {
+        data.weights().forEach((permission, weight) -> nodeIdOf(permission));
+        data.expiries().keySet().forEach(this::nodeIdOf);
+        data.contexts().values().forEach(weights -> weights.forEach((permission, weight) -> nodeIdOf(permission)));
+
+        int offset = appendRecord(TAG_PERMITTABLE, encode(uuid, data));
+
+        int slot = findSlot(uuid);
+        int address = slotAddress(slot);
+        int old = (int) buffer.getLong(address + 16);
+        PermissionWeightMap before = previous != null ? previous.weights()
+                : old != 0 ? decode(old).weights() : new PermissionWeightMap(0);
+        if (old != 0) {
+            addGarbage(recordLength(old));
+        } else {
+            buffer.putLong(address, uuid.getMostSignificantBits());
+            buffer.putLong(address + 8, uuid.getLeastSignificantBits());
+            buffer.putInt(H_INDEX_SIZE, buffer.getInt(H_INDEX_SIZE) + 1);
+        }
+        buffer.putLong(address + 16, offset);
+
+        // a holder record replaces one of about its size, a removal leaves both behind
+        PermissionWeightMap after = data.weights();
+        after.forEach((permission, weight) -> {
+            int known = before.get(permission);
+            if (known == weight) return;
+            int length = appendHolder(nodeIdOf(permission), uuid, weight);
+            if (known != PermissionTrie.UNSET) addGarbage(length);
+        });
+        before.forEach((permission, weight) -> {
+            if (!after.containsKey(permission)) addGarbage(2L * appendHolder(nodeIdOf(permission), uuid, PermissionTrie.UNSET));
+        });
+        updateExpiring(uuid, data);
+
+        if (buffer.getInt(H_INDEX_SIZE) * 4L > indexCapacity() * 3L) allocateIndex(indexCapacity() << 1);
+
+        long garbage = buffer.getLong(H_GARBAGE);
+        if (garbage > COMPACT_MIN_GARBAGE && garbage * 2 > dataEnd()) compact();
+    }
+
+    @Override
+    public synchronized @NonNull Collection<UUID> stored() {
+        return storedIds();
+    }
+
+    private Collection<UUID> storedIds() {
+        List<UUID> ids = new ArrayList<>(buffer.getInt(H_INDEX_SIZE));
+        int capacity = indexCapacity();
+        for (int slot = 0; slot < capacity; slot++) {
+            int address = slotAddress(slot);
+            if (buffer.getLong(address + 16) == 0) continue;
+            ids.add(new UUID(buffer.getLong(address), buffer.getLong(address + 8)));
+        }
+        return ids;
+    }
+
+    /**
+     * Walks the holder chain of the node, rebuilding the chains if a link is corrupt.
+     */
+    @Override
+    public synchronized @NonNull Map<UUID, Integer> holders(final @NonNull Permission permission) {
+        Integer id = nodeIds.get(permission);
+        if (id == null) return new HashMap<>();
+        try {
+            return holders(id);
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+            rebuildIndex();
+            return holders(id);
+        }
+    }
+
+    private Map<UUID, Integer> holders(final int id) {
+        Map<UUID, Integer> holders = new HashMap<>();
+        if (id >= buffer.getInt(H_HEADS_CAPACITY)) return holders;
+
+        Set<UUID> seen = new HashSet<>();
+        int offset = (int) buffer.getLong(headAddress(id));
+        checkLink(offset, TAG_HOLDER, Integer.MAX_VALUE);
+        while (offset != 0) {
+            int[] cursor = {offset + 1};
+            VarInts.read(buffer, cursor);
+            if (VarInts.read(buffer, cursor) != id)
+                throw new IllegalStateException("Corrupt index link in " + path + " at " + offset);
+            int previous = (int) buffer.getLong(cursor[0]);
+            UUID uuid = new UUID(buffer.getLong(cursor[0] + 8), buffer.getLong(cursor[0] + 16));
+            cursor[0] += 24;
+            int weight = VarInts.unzigzag(VarInts.read(buffer, cursor));
+            if (seen.add(uuid) && weight != PermissionTrie.UNSET) holders.put(uuid, weight);
+            checkLink(previous, TAG_HOLDER, offset);
+            offset = previous;
+        }
+        return holders;
+    }
+
+    @Override
+    public @NonNull Map<UUID, Long> expiring() {
+        return new HashMap<>(expiring);
+    }
+
+    @Override
+    public synchronized @NonNull Map<String, UUID> groups() {
+        return new LinkedHashMap<>(groups);
+    }
+
+    @Override
+    public synchronized void saveGroup(final @NonNull String id, final @NonNull UUID uuid) {
+        if (uuid.equals(groups.get(id))) return;
+
+        byte[] text = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(16 + text.length);
+        payload.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).put(text);
+        appendRecord(TAG_GROUP, payload.array());
+        groups.put(id, uuid);
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void sync() {
+        try {
+            buffer.force();
+        } catch (UncheckedIOException e) {
+            throw new StorageUnavailableException("Could not force permission store " + path, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        sync();
+        int end = dataEnd();
+        unmap(buffer);
+        buffer = null;
+        try {
+            channel.truncate(end);
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (lock != null) lock.close();
+    }
+
+    /**
+     * Rewrites all live records into a fresh file and atomically replaces the current one.
+     *
+     * @throws IllegalStateException if the rewrite fails
+     */
+    public synchronized void compact() {
+        Path temp = path.resolveSibling(path.getFileName() + ".compact");
+        try {
+            Files.deleteIfExists(temp);
+            int size = buffer.getInt(H_INDEX_SIZE);
+            MappedPermissionStorage copy = new MappedPermissionStorage(temp,
+                    Math.max(DEFAULT_INDEX_CAPACITY, Integer.highestOneBit(Math.max(1, size * 2)) << 1), false);
+            for (UUID uuid : stored()) {
+                copy.save(uuid, load(uuid), null);
+            }
+            groups.forEach(copy::saveGroup);
+            copy.close();
+
+            sync();
+            channel.close();
+            unmap(buffer);
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new StorageUnavailableException("Could not compact permission store " + path, e);
+        } finally {
+            if (!channel.isOpen()) open();
+        }
+    }
+
+    private PermittableData decode(final int offset) {
+        int[] cursor = {offset + 1};
+        VarInts.read(buffer, cursor);
+
+        cursor[0] += 16;
+        int links = VarInts.read(buffer, cursor);
+        Map<UUID, Integer> parents = new LinkedHashMap<>(links);
+        for (int i = 0; i < links; i++) {
+            UUID parent = new UUID(buffer.getLong(cursor[0]), buffer.getLong(cursor[0] + 8));
+            cursor[0] += 16;
+            parents.put(parent, VarInts.unzigzag(VarInts.read(buffer, cursor)));
+        }
+
+        int count = VarInts.read(buffer, cursor);
+        PermissionWeightMap weights = new PermissionWeightMap(count);
+        for (int i = 0; i < count; i++) {
+            Permission permission = nodes.get(VarInts.read(buffer, cursor));
+            weights.put(permission, VarInts.unzigzag(VarInts.read(buffer, cursor)));
+        }
+
+        int timed = VarInts.read(buffer, cursor);
+        Map<Permission, Long> expiries = new HashMap<>(timed);
+        for (int i = 0; i < timed; i++) {
+            Permission permission = nodes.get(VarInts.read(buffer, cursor));
+            expiries.put(permission, buffer.getLong(cursor[0]));
+            cursor[0] += 8;
+        }
+
+        int scoped = VarInts.read(buffer, cursor);
+        Map<PermissionContext, PermissionWeightMap> contexts = new HashMap<>(scoped);
+        for (int i = 0; i < scoped; i++) {
+            byte[] text = new byte[VarInts.read(buffer, cursor)];
+            buffer.get(cursor[0], text);
+            cursor[0] += text.length;
+            int entries = VarInts.read(buffer, cursor);
+            PermissionWeightMap contextual = new PermissionWeightMap(entries);
+            for (int j = 0; j < entries; j++) {
+                Permission permission = nodes.get(VarInts.read(buffer, cursor));
+                contextual.put(permission, VarInts.unzigzag(VarInts.read(buffer, cursor)));
+            }
+            contexts.put(PermissionContext.parse(new String(text, StandardCharsets.UTF_8)), contextual);
+        }
+        return new PermittableData(weights, Collections.unmodifiableMap(parents),
+                Map.copyOf(expiries), Map.copyOf(contexts));
+    }
+
+    private byte[] encode(final UUID uuid, final PermittableData data) {
+        PermissionWeightMap weights = data.weights();
+        Map<UUID, Integer> parents = data.parents();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + parents.size() * 20 + weights.size() * 3);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+            Map<Permission, Long> expiries = data.expiries();
+            Map<PermissionContext, PermissionWeightMap> contexts = data.contexts();
+            VarInts.write(out, parents.size());
+            for (Map.Entry<UUID, Integer> link : parents.entrySet()) {
+                out.writeLong(link.getKey().getMostSignificantBits());
+                out.writeLong(link.getKey().getLeastSignificantBits());
+                VarInts.write(out, VarInts.zigzag(link.getValue()));
+            }
+            VarInts.write(out, weights.size());
+            weights.forEach((permission, weight) -> {
+                try {
+                    VarInts.write(out, nodeIds.get(permission));
+                    VarInts.write(out, VarInts.zigzag(weight));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            VarInts.write(out, expiries.size());
+            for (Map.Entry<Permission, Long> expiry : expiries.entrySet()) {
+                VarInts.write(out, nodeIds.get(expiry.getKey()));
+                out.writeLong(expiry.getValue());
+            }
+            VarInts.write(out, contexts.size());
+            for (Map.Entry<PermissionContext, PermissionWeightMap> context : contexts.entrySet()) {
+                byte[] text = context.getKey().toString().getBytes(StandardCharsets.UTF_8);
+                VarInts.write(out, text.length);
+                out.write(text);
+                VarInts.write(out, context.getValue().size());
+                context.getValue().forEach((permission, weight) -> {
+                    try {
+                        VarInts.write(out, nodeIds.get(permission));
+                        VarInts.write(out, VarInts.zigzag(weight));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int nodeIdOf(final Permission permission) {
+        Integer id = nodeIds.get(permission);
+        if (id != null) return id;
+
+        int next = nodes.size();
+        byte[] text = permission.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(VarInts.size(next) + text.length);
+        VarInts.write(payload, next);
+        payload.put(text);
+        appendRecord(TAG_NODE, payload.array());
+
+        nodes.add(permission);
+        nodeIds.put(permission, next);
+        return next;
+    }
+
+    private void scanRecords() {
+        int end = dataEnd();
+        int position = HEADER_SIZE;
+        int[] cursor = new int[1];
+        while (position < end) {
+            byte tag = buffer.get(position);
+            cursor[0] = position + 1;
+            int length = VarInts.read(buffer, cursor);
+            int payload = cursor[0];
+
+            if (tag == TAG_NODE) {
+                int id = VarInts.read(buffer, cursor);
+                byte[] text = new byte[payload + length - cursor[0]];
+                buffer.get(cursor[0], text);
+                Permission permission = Permission.of(new String(text, StandardCharsets.UTF_8));
+                if (id != nodes.size())
+                    throw new IllegalStateException("Corrupt node dictionary in " + path + " at " + position);
+                nodes.add(permission);
+                nodeIds.put(permission, id);
+            } else if (tag == TAG_GROUP) {
+                UUID uuid = new UUID(buffer.getLong(payload), buffer.getLong(payload + 8));
+                byte[] text = new byte[length - 16];
+                buffer.get(payload + 16, text);
+                groups.put(new String(text, StandardCharsets.UTF_8), uuid);
+            }
+            position = payload + length;
+        }
+    }
+
+    private int appendRecord(final byte tag, final byte[] payload) {
+        int headerLength = 1 + VarInts.size(payload.length);
+        int offset = dataEnd();
+        ensureCapacity((long) offset + headerLength + payload.length);
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.put(tag);
+        VarInts.write(view, payload.length);
+        view.put(payload);
+
+        buffer.putLong(H_DATA_END, view.position());
+        return offset;
+    }
+
+    private void allocateIndex(final int capacity) {
+        int oldOffset = (int) buffer.getLong(H_INDEX_OFFSET);
+        int oldCapacity = buffer.getInt(H_INDEX_CAPACITY);
+
+        int record = appendRecord(TAG_INDEX, new byte[capacity * SLOT_SIZE]);
+        int table = record + 1 + VarInts.size(capacity * SLOT_SIZE);
+        buffer.putLong(H_INDEX_OFFSET, table);
+        buffer.putInt(H_INDEX_CAPACITY, capacity);
+        if (oldOffset == 0) return;
+
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int from = oldOffset + slot * SLOT_SIZE;
+            long offset = buffer.getLong(from + 16);
+            if (offset == 0) continue;
+
+            UUID uuid = new UUID(buffer.getLong(from), buffer.getLong(from + 8));
+            int to = slotAddress(findSlot(uuid));
+            buffer.putLong(to, uuid.getMostSignificantBits());
+            buffer.putLong(to + 8, uuid.getLeastSignificantBits());
+            buffer.putLong(to + 16, offset);
+        }
+        addGarbage(1 + VarInts.size(oldCapacity * SLOT_SIZE) + oldCapacity * SLOT_SIZE);
+    }
+
+    private int findSlot(final UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = indexCapacity() - 1;
+        long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+
+        for (int slot = (int) (hash >>> 32) & mask; ; slot = (slot + 1) & mask) {
+            int address = slotAddress(slot);
+            if (buffer.getLong(address + 16) == 0) return slot;
+            if (buffer.getLong(address) == msb && buffer.getLong(address + 8) == lsb) return slot;
+        }
+    }
+
+    private int slotAddress(final int slot) {
+        return (int) buffer.getLong(H_INDEX_OFFSET) + slot * SLOT_SIZE;
+    }
+
+    private int recordLength(final int offset) {
+        int[] cursor = {offset + 1};
+        int length = VarInts.read(buffer, cursor);
+        return cursor[0] - offset + length;
+    }
+
+    private void ensureCapacity(final long required) {
+        if (required <= buffer.capacity()) return;
+        if (required > Integer.MAX_VALUE)
+            throw new StorageUnavailableException("Permission store exceeds 2 GiB: " + path, null);
+
+        long size = Math.min(Integer.MAX_VALUE, Math.max(required, (long) buffer.capacity() << 1));
+        try {
+            buffer.force();
+            MappedByteBuffer old = buffer;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            unmap(old);
+        } catch (IOException e) {
+            throw new StorageUnavailableException("Could not grow permission store " + path, e);
+        }
+    }
+
+    /**
+     * Releases a mapping right away rather than once it is garbage collected,
+     * until then it holds on to the memory and, on some platforms, keeps the
+     * file from being replaced. Every access to the mapping runs under the
+     * monitor of the storage, which makes this safe.
+     */
+    private static void unmap(final MappedByteBuffer mapping) {
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            type.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), mapping);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+        }
+    }
+
+    private void addGarbage(final long bytes) {
+        buffer.putLong(H_GARBAGE, buffer.getLong(H_GARBAGE) + bytes);
+    }
+
+    private int indexCapacity() {
+        return buffer.getInt(H_INDEX_CAPACITY);
+    }
+
+    private int dataEnd() {
+        return (int) buffer.getLong(H_DATA_END);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import de.leycm.stomgate.data.PermissionTrie;
+import de.leycm.stomgate.perm.Permission;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persistence backend for the weights, expiries and parents of permittables
+ * and for the group definitions.
+ *
+ * <p>
+ * Storages only move data between memory and disk, caching and inheritance
+ * are handled by the service on top. Data passed to {@link #save} is never
+ * modified afterwards, implementations may keep references to it.
+ * </p>
+ *
+ * <p>
+ * Implementations must be safe to call from multiple threads.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public interface PermissionStorage extends AutoCloseable {
+
+    /**
+     * Loads the stored data of a permittable.
+     *
+     * @param uuid the id of the permittable
+     * @return the stored data, or {@link PermittableData#empty()} if nothing is stored
+     */
+    @NonNull PermittableData load(final @NonNull UUID uuid);
+
+    /**
+     * Persists the current data of a permittable.
+     *
+     * <p>
+     * {@code previous} is the data handed to the last successful save of this
+     * permittable (or the one returned by {@link #load}). Storages that write
+     * deltas diff against it, full-rewrite storages may ignore it.
+     * </p>
+     *
+     * @param uuid     the id of the permittable
+     * @param data     the complete current data
+     * @param previous the last persisted data, or {@code null} if unknown
+     * @throws StorageUnavailableException if the failure affects every save, not only this permittable
+     * @throws IllegalStateException       if this permittable could not be saved
+     */
+    void save(final @NonNull UUID uuid,
+              final @NonNull PermittableData data,
+              final @Nullable PermittableData previous);
+
+    /**
+     * Returns the ids of all permittables with stored data.
+     *
+     * @return stored ids
+     */
+    @NonNull Collection<UUID> stored();
+
+    /**
+     * Returns every stored group definition.
+     *
+     * @return group id -> group uuid
+     */
+    @NonNull Map<String, UUID> groups();
+
+    /**
+     * Persists a group definition, replacing the uuid of an existing group with the same id.
+     *
+     * <p>
+     * Written immediately, group definitions change rarely.
+     * </p>
+     *
+     * @param id   the group id
+     * @param uuid the uuid of the group
+     */
+    void saveGroup(final @NonNull String id, final @NonNull UUID uuid);
+
+    /**
+     * Returns every permittable holding an own entry for exactly this node.
+     *
+     * <p>
+     * Implementations keep a reverse index that is updated by every
+     * {@link #save}, so a lookup costs the size of its result. The default
+     * implementation loads every stored permittable and is only meant for
+     * storages without an index.
+     * </p>
+     *
+     * @param permission the exact node, wildcards are only matched by equal wildcards
+     * @return a new map of permittable id -> weight
+     */
+    default @NonNull Map<UUID, Integer> holders(final @NonNull Permission permission) {
+        Map<UUID, Integer> holders = new HashMap<>();
+        for (UUID uuid : stored()) {
+            int weight = load(uuid).weights().get(permission);
+            if (weight != PermissionTrie.UNSET) holders.put(uuid, weight);
+        }
+        return holders;
+    }
+
+    /**
+     * Returns every permittable holding timed weights with the time its first one expires.
+     *
+     * <p>
+     * Read once on startup to schedule the expiries of permittables that are
+     * not loaded yet. Implementations keep this up to date on every
+     * {@link #save}, the default implementation loads every stored permittable.
+     * </p>
+     *
+     * @return a new map of permittable id -> epoch millis
+     */
+    default @NonNull Map<UUID, Long> expiring() {
+        Map<UUID, Long> expiring = new HashMap<>();
+        for (UUID uuid : stored()) {
+            long next = load(uuid).nextExpiry();
+            if (next != Long.MAX_VALUE) expiring.put(uuid, next);
+        }
+        return expiring;
+    }
+
+    /**
+     * Forces everything written so far to durable storage.
+     *
+     * <p>
+     * Called once after every write-behind batch, the batch only counts as
+     * persisted once this returns.
+     * </p>
+     *
+     * @throws StorageUnavailableException if the writes could not be made durable,
+     *                                     the whole batch is saved again later
+     */
+    default void sync() {
+    }
+
+    /**
+     * Syncs and releases all resources.
+     */
+    @Override
+    default void close() {
+        sync();
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionContext;
+import lombok.NonNull;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Everything a storage keeps about one permittable.
+ *
+ * <p>
+ * The weight map is never modified once it was handed to or returned by a storage.
+ * Parents map the UUID of each parent permittable to its priority, storages
+ * keep them in the order they were given, which is the priority order of the
+ * service.
+ * Expiries are epoch milliseconds of timed weights, every node in it also
+ * has a weight. Contextual weights only apply within their context, their
+ * maps are never modified either and never empty.
+ * </p>
+ *
+ * @param weights  own permission weights
+ * @param parents  parent permittable UUID -> its priority, unmodifiable
+ * @param expiries node -> epoch millis at which its weight is removed, unmodifiable
+ * @param contexts weights that only apply within a context, unmodifiable
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public record PermittableData(@NonNull PermissionWeightMap weights,
+                              @NonNull Map<UUID, Integer> parents,
+                              @NonNull Map<Permission, Long> expiries,
+                              @NonNull Map<PermissionContext, PermissionWeightMap> contexts) {
+
+    /**
+     * Creates data without timed or contextual weights.
+     *
+     * @param weights own permission weights
+     * @param parents parent permittable UUID -> its priority, unmodifiable
+     */
+    public PermittableData(final @NonNull PermissionWeightMap weights, final @NonNull Map<UUID, Integer> parents) {
+        this(weights, parents, Map.of(), Map.of());
+    }
+
+    /**
+     * Creates data without contextual weights.
+     *
+     * @param weights  own permission weights
+     * @param parents  parent permittable UUID -> its priority, unmodifiable
+     * @param expiries node -> epoch millis at which its weight is removed, unmodifiable
+     */
+    public PermittableData(final @NonNull PermissionWeightMap weights,
+                           final @NonNull Map<UUID, Integer> parents,
+                           final @NonNull Map<Permission, Long> expiries) {
+        this(weights, parents, expiries, Map.of());
+    }
+
+    /**
+     * Returns the data of a permittable that has nothing stored.
+     *
+     * @return data without weights and parents
+     */
+    public static @NonNull PermittableData empty() {
+        return new PermittableData(new PermissionWeightMap(), Map.of());
+    }
+
+    /**
+     * Returns when the first timed weight expires.
+     *
+     * @return epoch millis, or {@link Long#MAX_VALUE} without timed weights
+     */
+    public long nextExpiry() {
+        long next = Long.MAX_VALUE;
+        for (long expiry : expiries.values()) next = Math.min(next, expiry);
+        return next;
+    }
+
+    /**
+     * Returns whether there is nothing worth storing.
+     *
+     * @return true if there are no weights, contextual weights and parents
+     */
+    public boolean isEmpty() {
+        return weights.isEmpty() && parents.isEmpty() && contexts.isEmpty();
+    }
+}
@@ -0,0 +1,359 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionContext;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.AbstractPipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.resps.Tuple;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Stores every permittable as a Redis hash of {@code node -> weight}.
+ *
+ * <p>
+ * Keys are {@code <namespace>:perm:<uuid>}, the ids of all stored
+ * permittables are kept in the set {@code <namespace>:permittables}. Parent
+ * links live in the hash {@code <namespace>:parents} as
+ * {@code uuid -> "<parent>=<priority>,..."}, a bare parent uuid is read with
+ * priority 0. Group definitions in {@code <namespace>:groups} as {@code id -> uuid}.
+ * The reverse index keeps one hash {@code <namespace>:holders:<node>} of
+ * {@code uuid -> weight} per node. Timed weights expire at the epoch millis
+ * in the hash {@code <namespace>:expires:<uuid>} of {@code node -> millis},
+ * the sorted set {@code <namespace>:expiring} scores every such permittable
+ * with its first expiry, recomputed by Redis from the merged hash. Context scoped weights live in the hash
+ * {@code <namespace>:contexts:<uuid>} of {@code "<context>|<node>" -> weight}
+ * and are rewritten as a whole when they change. A save
+ * only sends the fields that changed since the previous save and goes out as
+ * a single pipeline. Concurrent changes of different nodes on different
+ * servers therefore merge instead of overwriting each other.
+ * </p>
+ *
+ * <p>
+ * The storage does not announce changes itself, pair it with a
+ * {@link de.leycm.stomgate.bus.RedisPermissionBus} so other servers refresh their caches.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public class RedisPermissionStorage implements PermissionStorage {
+
+    private static final String DEFAULT_NAMESPACE = "stomgate";
+    /** Scores a permittable with the first expiry in its hash, KEYS: expires hash, expiring set, ARGV: uuid */
+    private static final String RESCORE_SCRIPT = """
+            local first
+            local score
+            for _, value in ipairs(redis.call('HVALS', KEYS[1])) do
+              local millis = tonumber(value)
+              if millis and (score == nil or millis < score) then
+                score = millis
+                first = value
+              end
+            end
+            if first == nil then return redis.call('ZREM', KEYS[2], ARGV[1]) end
+            return redis.call('ZADD', KEYS[2], first, ARGV[1])
+            """;
+
+    private final UnifiedJedis redis;
+    private final String keyPrefix;
+    private final String indexKey;
+    private final String parentsKey;
+    private final String groupsKey;
+    private final String holdersPrefix;
+    private final String expiresPrefix;
+    private final String expiringKey;
+    private final String contextsPrefix;
+
+    /**
+     * Creates a storage in the default namespace {@code stomgate}.
+     *
+     * @param redis the client, not closed by this storage
+     */
+    public RedisPermissionStorage(final @NonNull UnifiedJedis redis) {
+        this(redis, DEFAULT_NAMESPACE);
+    }
+
+    /**
+     * Creates a storage.
+     *
+     * @param redis     the client, not closed by this storage
+     * @param namespace prefix of every key
+     */
+    public RedisPermissionStorage(final @NonNull UnifiedJedis redis, final @NonNull String namespace) {
+        this.redis = redis;
+        this.keyPrefix = namespace + ":perm:";
+        this.indexKey = namespace + ":permittables";
+        this.parentsKey = namespace + ":parents";
+        this.groupsKey = namespace + ":groups";
+        this.holdersPrefix = namespace + ":holders:";
+        this.expiresPrefix = namespace + ":expires:";
+        this.expiringKey = namespace + ":expiring";
+        this.contextsPrefix = namespace + ":contexts:";
+    }
+
+    @Override
+    public @NonNull PermittableData load(final @NonNull UUID uuid) {
+        Map<String, String> hash;
+        String links;
+        Map<String, String> timed;
+        Map<String, String> scoped;
+        try (AbstractPipeline pipeline = redis.pipelined()) {
+            Response<Map<String, String>> weights = pipeline.hgetAll(keyPrefix + uuid);
+            Response<String> parentId = pipeline.hget(parentsKey, uuid.toString());
+            Response<Map<String, String>> expires = pipeline.hgetAll(expiresPrefix + uuid);
+            Response<Map<String, String>> contexts = pipeline.hgetAll(contextsPrefix + uuid);
+            pipeline.sync();
+            hash = weights.get();
+            links = parentId.get();
+            timed = expires.get();
+            scoped = contexts.get();
+        } catch (Exception e) {
+            throw failure("Could not load permissions of " + uuid, e);
+        }
+
+        PermissionWeightMap weights = new PermissionWeightMap(hash.size());
+        for (Map.Entry<String, String> entry : hash.entrySet()) {
+            try {
+                weights.put(Permission.of(entry.getKey()), Integer.parseInt(entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        Map<Permission, Long> expiries = new HashMap<>();
+        for (Map.Entry<String, String> entry : timed.entrySet()) {
+            try {
+                Permission permission = Permission.of(entry.getKey());
+                if (weights.containsKey(permission)) expiries.put(permission, Long.parseLong(entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        return new PermittableData(weights, links == null ? Map.of() : decodeParents(links),
+                Map.copyOf(expiries), decodeContexts(scoped));
+    }
+
+    private static Map<PermissionContext, PermissionWeightMap> decodeContexts(final @NonNull Map<String, String> scoped) {
+        if (scoped.isEmpty()) return Map.of();
+        Map<PermissionContext, PermissionWeightMap> contexts = new HashMap<>();
+        for (Map.Entry<String, String> entry : scoped.entrySet()) {
+            try {
+                int separator = entry.getKey().indexOf('|');
+                if (separator < 0) throw new IllegalArgumentException("Missing context of " + entry.getKey());
+                PermissionContext context = PermissionContext.parse(entry.getKey().substring(0, separator));
+                contexts.computeIfAbsent(context, ignored -> new PermissionWeightMap())
+                        .put(Permission.of(entry.getKey().substring(separator + 1)), Integer.parseInt(entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        return Map.copyOf(contexts);
+    }
+
+    private static Map<String, String> encodeContexts(final @NonNull Map<PermissionContext, PermissionWeightMap> contexts) {
+        Map<String, String> scoped = new HashMap<>();
+        contexts.forEach((context, weights) -> weights.forEach((permission, weight) ->
+                scoped.put(context + "|" + permission, Integer.toString(weight))));
+        return scoped;
+    }
+
+    private static Map<UUID, Integer> decodeParents(final @NonNull String links) {
+        Map<UUID, Integer> parents = new LinkedHashMap<>();
+        for (String link : links.split(",")) {
+            try {
+                int separator = link.indexOf('=');
+                if (separator < 0) parents.put(UUID.fromString(link), 0);
+                else parents.put(UUID.fromString(link.substring(0, separator)), Integer.parseInt(link.substring(separator + 1)));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        return Collections.unmodifiableMap(parents);
+    }
+
+    private static String encodeParents(final @NonNull Map<UUID, Integer> parents) {
+        StringBuilder links = new StringBuilder(parents.size() * 40);
+        parents.forEach((parent, priority) -> {
+            if (!links.isEmpty()) links.append(',');
+            links.append(parent).append('=').append(priority);
+        });
+        return links.toString();
+    }
+
+    @Override
+    public void save(final @NonNull UUID uuid,
+                     final @NonNull PermittableData data,
+                     final @Nullable PermittableData previous) {
+        PermissionWeightMap weights = data.weights();
+        // without a previous save the stored entries are needed to keep the holder index exact
+        PermittableData stored = previous != null ? previous : load(uuid);
+        PermissionWeightMap before = stored.weights();
+        Map<String, String> changed = new HashMap<>();
+        weights.forEach((permission, weight) -> {
+            if (before.get(permission) != weight)
+                changed.put(permission.toString(), Integer.toString(weight));
+        });
+        List<String> removed = new ArrayList<>();
+        before.forEach((permission, weight) -> {
+            if (!weights.containsKey(permission)) removed.add(permission.toString());
+        });
+
+        String key = keyPrefix + uuid;
+        String holder = uuid.toString();
+        try (AbstractPipeline pipeline = redis.pipelined()) {
+            if (!removed.isEmpty()) pipeline.hdel(key, removed.toArray(String[]::new));
+            if (!changed.isEmpty()) pipeline.hset(key, changed);
+            for (String node : removed) pipeline.hdel(holdersPrefix + node, holder);
+            changed.forEach((node, weight) -> pipeline.hset(holdersPrefix + node, holder, weight));
+
+            Map<UUID, Integer> parents = data.parents();
+            if (previous == null || !parents.equals(previous.parents())) {
+                if (parents.isEmpty()) pipeline.hdel(parentsKey, uuid.toString());
+                else pipeline.hset(parentsKey, uuid.toString(), encodeParents(parents));
+            }
+
+            // expiries are merged like the weights, timed grants of other servers keep their expiry
+            Map<Permission, Long> expiries = data.expiries();
+            Map<Permission, Long> timedBefore = stored.expiries();
+            if (!expiries.equals(timedBefore)) {
+                Map<String, String> timed = new HashMap<>();
+                expiries.forEach((permission, expiry) -> {
+                    if (!expiry.equals(timedBefore.get(permission)))
+                        timed.put(permission.toString(), Long.toString(expiry));
+                });
+                List<String> untimed = new ArrayList<>();
+                for (Permission permission : timedBefore.keySet()) {
+                    if (!expiries.containsKey(permission)) untimed.add(permission.toString());
+                }
+
+                String expiresKey = expiresPrefix + uuid;
+                if (!untimed.isEmpty()) pipeline.hdel(expiresKey, untimed.toArray(String[]::new));
+                if (!timed.isEmpty()) pipeline.hset(expiresKey, timed);
+                pipeline.eval(RESCORE_SCRIPT, List.of(expiresKey, expiringKey), List.of(holder));
+            }
+
+            Map<String, String> scoped = encodeContexts(data.contexts());
+            if (!scoped.equals(encodeContexts(stored.contexts()))) {
+                pipeline.del(contextsPrefix + uuid);
+                if (!scoped.isEmpty()) pipeline.hset(contextsPrefix + uuid, scoped);
+            }
+
+            if (data.isEmpty()) pipeline.srem(indexKey, uuid.toString());
+            else pipeline.sadd(indexKey, uuid.toString());
+            pipeline.sync();
+        } catch (Exception e) {
+            throw failure("Could not save permissions of " + uuid, e);
+        }
+    }
+
+    /**
+     * Wraps a failed command, a lost connection fails every other command as well.
+     */
+    private static IllegalStateException failure(final @NonNull String message, final @NonNull Exception e) {
+        if (e instanceof JedisConnectionException) return new StorageUnavailableException(message, e);
+        return new IllegalStateException(message, e);
+    }
+
+    @Override
+    public @NonNull Collection<UUID> stored() {
+        Set<String> members = redis.smembers(indexKey);
+        List<UUID> ids = new ArrayList<>(members.size());
+        for (String member : members) {
+            try {
+                ids.add(UUID.fromString(member));
+            } catch (IllegalArgumentException ignored) {
+                // not a permittable id
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public @NonNull Map<UUID, Integer> holders(final @NonNull Permission permission) {
+        Map<UUID, Integer> holders = new HashMap<>();
+        for (Map.Entry<String, String> entry : redis.hgetAll(holdersPrefix + permission).entrySet()) {
+            try {
+                holders.put(UUID.fromString(entry.getKey()), Integer.parseInt(entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        return holders;
+    }
+
+    @Override
+    public @NonNull Map<UUID, Long> expiring() {
+        Map<UUID, Long> expiring = new HashMap<>();
+        for (Tuple entry : redis.zrangeWithScores(expiringKey, 0, -1)) {
+            try {
+                expiring.put(UUID.fromString(entry.getElement()), (long) entry.getScore());
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        return expiring;
+    }
+
+    /**
+     * Writes the holder index for every stored permittable. Only needed once
+     * for data saved before the index existed, later saves keep it current.
+     */
+    public void reindex() {
+        for (UUID uuid : stored()) {
+            PermissionWeightMap weights = load(uuid).weights();
+            if (weights.isEmpty()) continue;
+            try (AbstractPipeline pipeline = redis.pipelined()) {
+                weights.forEach((permission, weight) ->
+                        pipeline.hset(holdersPrefix + permission, uuid.toString(), Integer.toString(weight)));
+                pipeline.sync();
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not index permissions of " + uuid, e);
+            }
+        }
+    }
+
+    @Override
+    public @NonNull Map<String, UUID> groups() {
+        Map<String, UUID> groups = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : redis.hgetAll(groupsKey).entrySet()) {
+            try {
+                groups.put(entry.getKey(), UUID.fromString(entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+        return groups;
+    }
+
+    @Override
+    public void saveGroup(final @NonNull String id, final @NonNull UUID uuid) {
+        try {
+            redis.hset(groupsKey, id, uuid.toString());
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not save group " + id, e);
+        }
+    }
+}
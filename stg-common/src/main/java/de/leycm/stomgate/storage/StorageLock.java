@@ -0,0 +1,93 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exclusive lock of a file storage, held from opening the storage until it is closed.
+ *
+ * <p>
+ * The file storages assume they are the only writer of their files. The lock
+ * is taken on a separate file, so it outlives the storage replacing its data
+ * files, and the operating system releases it when the process dies.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+final class StorageLock implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    private StorageLock(final FileChannel channel, final FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Takes the lock without waiting.
+     *
+     * @param path the lock file, created if missing
+     * @return the held lock
+     * @throws IllegalStateException if another storage, in this or another process, holds the lock
+     */
+    static @NonNull StorageLock acquire(final @NonNull Path path) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open lock file " + path, e);
+        }
+
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) return new StorageLock(channel, lock);
+            closeQuietly(channel);
+            throw new IllegalStateException("Permission storage is in use by another process: " + path);
+        } catch (OverlappingFileLockException e) {
+            closeQuietly(channel);
+            throw new IllegalStateException("Permission storage is already open in this process: " + path, e);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new IllegalStateException("Could not lock permission storage " + path, e);
+        }
+    }
+
+    private static void closeQuietly(final FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Releases the lock.
+     */
+    @Override
+    public void close() {
+        try {
+            lock.release();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        closeQuietly(channel);
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import lombok.NonNull;
+
+import java.io.Serial;
+
+/**
+ * Thrown by a {@link PermissionStorage} when a failure affects the storage as
+ * a whole rather than a single permittable, e.g. a lost connection or a shared
+ * file that cannot be written.
+ *
+ * <p>
+ * The {@link WriteBehindPersister} stops a batch on this exception and backs
+ * off, any other exception of a save only skips that permittable.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public class StorageUnavailableException extends IllegalStateException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param message the detail message
+     * @param cause   the underlying failure
+     */
+    public StorageUnavailableException(final @NonNull String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 style variable length integers shared by the binary storages.
+ *
+ * <p>
+ * Values are written in 7 bit groups, least significant first, the high bit
+ * marks a following byte. Signed values are zigzag encoded first so small
+ * negative weights such as {@code -1} stay a single byte.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+final class VarInts {
+
+    private VarInts() {
+    }
+
+    static int zigzag(final int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(final int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int size(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void write(final DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int read(final DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("VarInt too long");
+    }
+
+    /**
+     * Writes at the buffer position and advances it.
+     */
+    static void write(final ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads at an absolute index and stores the index after the value in {@code cursor[0]}.
+     */
+    static int read(final ByteBuffer buffer, final int[] cursor) {
+        int index = cursor[0];
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buffer.get(index++) & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                cursor[0] = index;
+                return value;
+            }
+        }
+        throw new IllegalStateException("VarInt too long at " + cursor[0]);
+    }
+}
@@ -0,0 +1,312 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Collects dirty permittables and persists them in batches on a background thread.
+ *
+ * <p>
+ * {@link #markDirty(UUID)} only records the id, repeated changes of the same
+ * permittable before the next flush coalesce into a single save. The save
+ * action is expected to read the latest state itself, so a flush always
+ * writes what is current at that moment.
+ * </p>
+ *
+ * <p>
+ * Flushes run every {@code flushInterval}. Once {@code maxPending} distinct
+ * permittables are waiting, a flush is started early instead of waiting for
+ * the next interval. The callers of {@link #markDirty(UUID)} never do any I/O,
+ * a backlog only wakes the background thread, at most one such wake-up is
+ * queued at a time. The {@code afterFlush} action runs once per batch, storages use it to sync
+ * everything written by the batch at once, the {@code flushed} listener then
+ * receives the duration of the whole batch.
+ * </p>
+ *
+ * <p>
+ * A save that fails only skips its permittable, the batch goes on and the
+ * permittable is retried with the next one. Such permittables do not count
+ * towards the backlog that starts an early flush. A
+ * {@link StorageUnavailableException} ends the batch instead, background
+ * flushes then back off with a doubling delay of up to a minute and early
+ * flushes are skipped until a batch succeeds again. Changes made meanwhile
+ * stay in memory, one entry per changed permittable, without blocking anyone.
+ * The same applies to a {@code afterFlush} action that finds the storage
+ * unavailable, every permittable of the batch is saved again with the next
+ * one. No failure ever stops the background flushes.
+ * </p>
+ *
+ * <p>
+ * {@link #close()} stops the background thread and drains every pending
+ * permittable on the calling thread. Failing saves are retried with a growing
+ * delay, if the storage still makes no progress the close fails instead of
+ * dropping the pending permittables silently.
+ * </p>
+ *
+ * @author LeyCM
+ * @since 1.0.1
+ */
+public final class WriteBehindPersister implements AutoCloseable {
+
+    private static final int CLOSE_RETRIES = 6;
+    private static final long CLOSE_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Consumer<UUID> saver;
+    private final Runnable afterFlush;
+    private final LongConsumer flushed;
+    private final int maxPending;
+    private final long flushIntervalNanos;
+    private final ScheduledExecutorService executor;
+
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private volatile Exception lastFailure;
+    /** Permittables whose save failed in the last batch, left out of the backlog */
+    private volatile int failed;
+    /** {@link System#nanoTime()} before which background flushes are skipped, 0 while the storage works */
+    private volatile long retryAt;
+    /** Batches in a row that ended on an unavailable storage, guarded by the flush lock */
+    private int outages;
+
+    /**
+     * Creates and starts a new persister.
+     *
+     * @param name          name of the background thread
+     * @param saver         action persisting the latest state of one permittable
+     * @param afterFlush    action run after every batch that saved at least one permittable
+     * @param flushInterval time between two regular flushes
+     * @param maxPending    number of pending permittables that triggers an early flush
+     * @throws IllegalArgumentException if the interval is not positive or the bound below one
+     */
+    public WriteBehindPersister(final @NonNull String name,
+                                final @NonNull Consumer<UUID> saver,
+                                final @NonNull Runnable afterFlush,
+                                final @NonNull Duration flushInterval,
+                                final int maxPending) {
+        this(name, saver, afterFlush, nanos -> {
+        }, flushInterval, maxPending);
+    }
+
+    /**
+     * Creates and starts a new persister reporting the duration of every batch.
+     *
+     * @param name          name of the background thread
+     * @param saver         action persisting the latest state of one permittable
+     * @param afterFlush    action run after every batch that saved at least one permittable
+     * @param flushed       receives the nanoseconds spent on every such batch, including {@code afterFlush}
+     * @param flushInterval time between two regular flushes
+     * @param maxPending    number of pending permittables that triggers an early flush
+     * @throws IllegalArgumentException if the interval is not positive or the bound below one
+     */
+    public WriteBehindPersister(final @NonNull String name,
+                                final @NonNull Consumer<UUID> saver,
+                                final @NonNull Runnable afterFlush,
+                                final @NonNull LongConsumer flushed,
+                                final @NonNull Duration flushInterval,
+                                final int maxPending) {
+        if (flushInterval.isZero() || flushInterval.isNegative())
+            throw new IllegalArgumentException("Flush interval must be positive: " + flushInterval);
+        if (maxPending < 1)
+            throw new IllegalArgumentException("Max pending must be at least 1: " + maxPending);
+
+        this.saver = saver;
+        this.afterFlush = afterFlush;
+        this.flushed = flushed;
+        this.maxPending = maxPending;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long millis = Math.max(1, flushInterval.toMillis());
+        executor.scheduleWithFixedDelay(this::flushIfDue, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Marks a permittable as changed, waking the background thread if the
+     * backlog reached {@code maxPending}. Never blocks on the storage.
+     *
+     * @param uuid the id of the changed permittable
+     */
+    public void markDirty(final @NonNull UUID uuid) {
+        if (!dirty.add(uuid)) return;
+        int waiting = pending.incrementAndGet() - failed;
+        if (waiting >= maxPending && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flushIfDue);
+            } catch (Exception e) {
+                // executor already shut down, close() drains the rest
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of permittables waiting for the next flush.
+     *
+     * @return pending count
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    private void flushIfDue() {
+        long retry = retryAt;
+        if (retry != 0 && System.nanoTime() - retry < 0) {
+            flushRequested.set(false);
+            return;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            // an escaping exception would cancel every later run of the scheduled task
+            e.printStackTrace();
+            lastFailure = e;
+        }
+    }
+
+    /**
+     * Saves every pending permittable on the calling thread, even while
+     * background flushes back off.
+     */
+    public void flush() {
+        flushRequested.set(false);
+        synchronized (flushLock) {
+            long start = System.nanoTime();
+            List<UUID> saved = new ArrayList<>();
+            List<UUID> failures = new ArrayList<>();
+            try {
+                Iterator<UUID> iterator = dirty.iterator();
+                while (iterator.hasNext()) {
+                    UUID uuid = iterator.next();
+                    iterator.remove();
+                    pending.decrementAndGet();
+                    try {
+                        saver.accept(uuid);
+                        saved.add(uuid);
+                    } catch (StorageUnavailableException e) {
+                        e.printStackTrace();
+                        lastFailure = e;
+                        failures.add(uuid);
+                        backOff();
+                        return;
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        lastFailure = e;
+                        failures.add(uuid);
+                    }
+                }
+                outages = 0;
+                retryAt = 0;
+            } finally {
+                // re-added after the loop, a failing permittable must not be reached first again by this batch
+                for (UUID uuid : failures) {
+                    if (dirty.add(uuid)) pending.incrementAndGet();
+                }
+                failed = failures.size();
+                if (!saved.isEmpty()) finish(saved, start);
+            }
+        }
+    }
+
+    /**
+     * Runs the {@code afterFlush} action of a batch. If it finds the storage
+     * unavailable the saved permittables are marked dirty again, the batch
+     * counts as failed and background flushes back off.
+     */
+    private void finish(final @NonNull List<UUID> saved, final long start) {
+        try {
+            afterFlush.run();
+        } catch (StorageUnavailableException e) {
+            e.printStackTrace();
+            lastFailure = e;
+            for (UUID uuid : saved) {
+                if (dirty.add(uuid)) pending.incrementAndGet();
+            }
+            if (retryAt == 0) backOff(); // unless a save of the batch backed off already
+            return;
+        } catch (Exception e) {
+            e.printStackTrace();
+            lastFailure = e;
+        }
+
+        try {
+            flushed.accept(System.nanoTime() - start);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Delays the next background flush, doubling the delay with every batch
+     * in a row that found the storage unavailable.
+     */
+    private void backOff() {
+        int shift = Math.min(outages++, 20);
+        long delay = flushIntervalNanos > MAX_RETRY_DELAY_NANOS >> shift ? MAX_RETRY_DELAY_NANOS : flushIntervalNanos << shift;
+        retryAt = (System.nanoTime() + delay) | 1; // never 0 while backing off
+    }
+
+    /**
+     * Stops the background thread and drains all pending permittables.
+     *
+     * @throws IllegalStateException if the saves keep failing and permittables are still pending
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        int retries = 0;
+        while (!dirty.isEmpty()) {
+            int before = pending.get();
+            flush();
+            if (pending.get() < before) {
+                retries = 0;
+                continue;
+            }
+            if (retries == CLOSE_RETRIES)
+                throw new IllegalStateException("Could not persist " + pending.get() + " permittables", lastFailure);
+            try {
+                Thread.sleep(CLOSE_RETRY_DELAY_MILLIS << retries++);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted with " + pending.get() + " permittables pending", lastFailure);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate;
+
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionSnapshot;
+import de.leycm.stomgate.perm.Permittable;
+import de.leycm.stomgate.permittable.PermittableGroup;
+import net.minestom.server.MinecraftServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Readers checking players while writers change group weights and move the
+ * players between groups. Every view a reader gets must be one the writers
+ * produced, a half applied edit or a half published re-parent is a failure.
+ */
+class CachingPermissionServiceStressTest {
+
+    private static final int PLAYERS = 64;
+    private static final Duration RUN = Duration.ofMillis(750);
+
+    private static final Permission X = Permission.of("rank.x");
+    private static final Permission Y = Permission.of("rank.y");
+    private static final Permission MARKER_A = Permission.of("marker.a");
+    private static final Permission MARKER_B = Permission.of("marker.b");
+    private static final Permission BASE = Permission.of("base.node");
+
+    private CachingPermissionService service;
+    private PermittableGroup groupA;
+    private PermittableGroup groupB;
+    private final List<Player> players = new ArrayList<>();
+
+    private record Player(UUID permittableId) implements Permittable {
+    }
+
+    @BeforeAll
+    static void initServer() {
+        MinecraftServer.init();
+    }
+
+    @BeforeEach
+    void install() {
+        service = new FilePermissionService(new MemoryPermissionStorage(), Duration.ofHours(1), 1 << 20);
+        service.onInstall();
+        PermissionServices.init(service);
+
+        PermittableGroup base = PermittableGroup.create("base", UUID.randomUUID(), null);
+        groupA = PermittableGroup.create("a", UUID.randomUUID(), null);
+        groupB = PermittableGroup.create("b", UUID.randomUUID(), null);
+        service.edit(base, edit -> edit.grant(BASE));
+        service.edit(groupA, edit -> edit.grant(MARKER_A).set(X, 1).set(Y, 1).addParent(base, 0));
+        service.edit(groupB, edit -> edit.grant(MARKER_B).set(X, 1).set(Y, 1).addParent(base, 0));
+
+        for (int i = 0; i < PLAYERS; i++) {
+            Player player = new Player(UUID.randomUUID());
+            service.addParentOf(player, i % 2 == 0 ? groupA : groupB, 0);
+            players.add(player);
+        }
+    }
+
+    @AfterEach
+    void uninstall() {
+        service.onUninstall();
+    }
+
+    @ParameterizedTest(name = "{0} readers")
+    @ValueSource(ints = {1, 2, 4, 8})
+    void readersNeverSeeTornViews(final int readers) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        LongAdder reads = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(thread("weights", failures, () -> {
+            int value = 1;
+            while (running.get()) {
+                PermittableGroup group = (value & 1) == 0 ? groupA : groupB;
+                int next = ++value;
+                service.edit(group, edit -> edit.set(X, next).set(Y, next));
+                // a snapshot taken right after an update always contains it
+                check(service.snapshotOf(group).permissionWeight(X) == next, "update not visible to its writer");
+            }
+        }));
+        threads.add(thread("parents", failures, () -> {
+            boolean[] inA = new boolean[PLAYERS];
+            for (int i = 0; i < PLAYERS; i += 2) inA[i] = true;
+            while (running.get()) {
+                int i = ThreadLocalRandom.current().nextInt(PLAYERS);
+                PermittableGroup from = inA[i] ? groupA : groupB;
+                PermittableGroup to = inA[i] ? groupB : groupA;
+                service.edit(players.get(i), edit -> edit.removeParent(from).addParent(to, 0));
+                inA[i] = !inA[i];
+            }
+        }));
+        for (int r = 0; r < readers; r++) {
+            threads.add(thread("reader-" + r, failures, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long local = 0;
+                while (running.get()) {
+                    Player player = players.get(random.nextInt(PLAYERS));
+                    PermissionSnapshot snapshot = service.snapshotOf(player);
+                    int x = snapshot.permissionWeight(X);
+                    int y = snapshot.permissionWeight(Y);
+                    boolean a = snapshot.permissionWeight(MARKER_A) == 1;
+                    boolean b = snapshot.permissionWeight(MARKER_B) == 1;
+                    check(x > 0 && x == y, "torn weights x=" + x + " y=" + y);
+                    check(a != b, "torn parents a=" + a + " b=" + b);
+                    check(snapshot.permissionWeight(BASE) == 1, "lost inherited base node");
+                    check(service.resolvePermissionWeight(player, BASE) == 1, "lost inherited base node");
+                    local += 5;
+                }
+                reads.add(local);
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        Thread.sleep(RUN.toMillis());
+        running.set(false);
+        for (Thread thread : threads) thread.join(Duration.ofSeconds(10).toMillis());
+
+        for (Thread thread : threads) assertTrue(!thread.isAlive(), thread.getName() + " did not stop");
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError(failures.size() + " failures, first: " + failures.peek());
+            failures.forEach(error::addSuppressed);
+            throw error;
+        }
+        assertTrue(reads.sum() > 0, "no reads completed");
+    }
+
+    private static Thread thread(final String name, final Queue<Throwable> failures, final Runnable body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void check(final boolean condition, final String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate;
+
+import de.leycm.stomgate.data.PermissionTrie;
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionContext;
+import de.leycm.stomgate.storage.PermissionStorage;
+import de.leycm.stomgate.storage.PermittableData;
+import de.leycm.stomgate.storage.StorageUnavailableException;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory storage shared by several services of one test.
+ *
+ * <p>
+ * Like the Redis storage it applies a save with a previous state as the
+ * difference between both, so concurrent saves of other entries of the same
+ * permittable are kept.
+ * </p>
+ */
+final class MemoryPermissionStorage implements PermissionStorage {
+
+    private final Map<UUID, PermittableData> data = new ConcurrentHashMap<>();
+    private final Map<String, UUID> groups = new ConcurrentHashMap<>();
+    private final AtomicInteger failingSyncs = new AtomicInteger();
+    private final AtomicInteger syncs = new AtomicInteger();
+
+    /**
+     * Makes the next syncs fail as if the storage was unavailable.
+     */
+    void failSyncs(final int count) {
+        failingSyncs.set(count);
+    }
+
+    int syncs() {
+        return syncs.get();
+    }
+
+    @Override
+    public @NonNull PermittableData load(final @NonNull UUID uuid) {
+        return data.getOrDefault(uuid, PermittableData.empty());
+    }
+
+    @Override
+    public synchronized void save(final @NonNull UUID uuid,
+                                  final @NonNull PermittableData saved,
+                                  final @Nullable PermittableData previous) {
+        if (previous == null) {
+            data.put(uuid, saved);
+            return;
+        }
+
+        PermittableData stored = load(uuid);
+        PermissionWeightMap weights = stored.weights().copy();
+        apply(weights, previous.weights(), saved.weights());
+        Map<UUID, Integer> parents = new LinkedHashMap<>(stored.parents());
+        apply(parents, previous.parents(), saved.parents());
+        Map<Permission, Long> expiries = new HashMap<>(stored.expiries());
+        apply(expiries, previous.expiries(), saved.expiries());
+        Map<PermissionContext, PermissionWeightMap> contexts = new HashMap<>(stored.contexts());
+        apply(contexts, previous.contexts(), saved.contexts());
+        data.put(uuid, new PermittableData(weights, Collections.unmodifiableMap(parents),
+                Map.copyOf(expiries), Map.copyOf(contexts)));
+    }
+
+    private static void apply(final PermissionWeightMap target, final PermissionWeightMap before,
+                              final PermissionWeightMap after) {
+        after.forEach((permission, weight) -> {
+            if (before.get(permission) != weight) target.put(permission, weight);
+        });
+        before.forEach((permission, weight) -> {
+            if (after.get(permission) == PermissionTrie.UNSET) target.remove(permission);
+        });
+    }
+
+    private static <K, V> void apply(final Map<K, V> target, final Map<K, V> before, final Map<K, V> after) {
+        after.forEach((key, value) -> {
+            if (!Objects.equals(before.get(key), value)) target.put(key, value);
+        });
+        for (K key : before.keySet()) {
+            if (!after.containsKey(key)) target.remove(key);
+        }
+    }
+
+    @Override
+    public void sync() {
+        syncs.incrementAndGet();
+        if (failingSyncs.getAndUpdate(count -> Math.max(0, count - 1)) > 0)
+            throw new StorageUnavailableException("sync failed", null);
+    }
+
+    @Override
+    public @NonNull Collection<UUID> stored() {
+        return List.copyOf(data.keySet());
+    }
+
+    @Override
+    public @NonNull Map<String, UUID> groups() {
+        return new HashMap<>(groups);
+    }
+
+    @Override
+    public void saveGroup(final @NonNull String id, final @NonNull UUID uuid) {
+        groups.put(id, uuid);
+    }
+}
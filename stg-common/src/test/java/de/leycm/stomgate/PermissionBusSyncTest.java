@@ -0,0 +1,189 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate;
+
+import de.leycm.stomgate.bus.LoopbackPermissionBus;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.Permittable;
+import de.leycm.stomgate.permittable.PermittableGroup;
+import net.minestom.server.MinecraftServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Several services on one shared storage, kept in sync through a {@link LoopbackPermissionBus}.
+ */
+class PermissionBusSyncTest {
+
+    private static final Duration FAST = Duration.ofMillis(5);
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    private final MemoryPermissionStorage storage = new MemoryPermissionStorage();
+    private final LoopbackPermissionBus bus = new LoopbackPermissionBus();
+    private final List<CachingPermissionService> services = new ArrayList<>();
+
+    private record Player(UUID permittableId) implements Permittable {
+    }
+
+    @BeforeAll
+    static void initServer() {
+        MinecraftServer.init();
+    }
+
+    @AfterEach
+    void uninstall() {
+        for (CachingPermissionService service : services) service.onUninstall();
+    }
+
+    private CachingPermissionService service(final Duration flushInterval) {
+        LoopbackPermissionBus joined = services.isEmpty() ? bus : bus.join();
+        CachingPermissionService service = new FilePermissionService(storage, flushInterval, 512,
+                10_000, Duration.ofMinutes(10), joined);
+        service.onInstall();
+        services.add(service);
+        return service;
+    }
+
+    private static void await(final String what, final BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("Timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    private static int weight(final CachingPermissionService service, final Permittable permittable, final String node) {
+        return service.resolvePermissionWeight(permittable, Permission.of(node));
+    }
+
+    @Test
+    void savedChangeReachesEveryOtherService() throws InterruptedException {
+        CachingPermissionService a = service(FAST);
+        CachingPermissionService b = service(FAST);
+        CachingPermissionService c = service(FAST);
+        Player player = new Player(UUID.randomUUID());
+        assertEquals(-1, weight(b, player, "chat.color"));
+        assertEquals(-1, weight(c, player, "chat.color"));
+
+        a.updatePermissionWeight(player, Permission.of("chat.color"), 1);
+
+        await("b", () -> weight(b, player, "chat.color") == 1);
+        await("c", () -> weight(c, player, "chat.color") == 1);
+    }
+
+    @Test
+    void batchIsAnnouncedOnlyOnceTheStorageSynced() throws InterruptedException {
+        CachingPermissionService a = service(FAST);
+        CachingPermissionService b = service(FAST);
+        Player player = new Player(UUID.randomUUID());
+        assertEquals(-1, weight(b, player, "chat.color"));
+
+        storage.failSyncs(2);
+        a.updatePermissionWeight(player, Permission.of("chat.color"), 1);
+        await("the failing syncs", () -> storage.syncs() >= 2);
+        await("b after the retried batch", () -> weight(b, player, "chat.color") == 1);
+        assertTrue(storage.syncs() >= 3);
+    }
+
+    @Test
+    void interleavedWritesConvergeWithoutLosingEntries() throws InterruptedException {
+        List<CachingPermissionService> all = List.of(service(FAST), service(FAST), service(FAST));
+        Player[] players = {new Player(UUID.randomUUID()), new Player(UUID.randomUUID())};
+        Random random = new Random(42);
+        Set<String> written = new HashSet<>();
+
+        for (int i = 0; i < 300; i++) {
+            CachingPermissionService writer = all.get(random.nextInt(all.size()));
+            Player player = players[random.nextInt(players.length)];
+            String node = "node." + random.nextInt(12);
+            writer.updatePermissionWeight(player, Permission.of(node), i);
+            written.add(player.permittableId() + node);
+            if (i % 25 == 0) Thread.sleep(3);
+        }
+
+        for (Player player : players) {
+            for (int node = 0; node < 12; node++) {
+                String name = "node." + node;
+                await(name + " to converge", () -> {
+                    int stored = storage.load(player.permittableId()).weights().get(Permission.of(name));
+                    for (CachingPermissionService service : all) {
+                        if (weight(service, player, name) != stored) return false;
+                    }
+                    return true;
+                });
+            }
+        }
+        // no entry may have been dropped on the way
+        int stored = 0;
+        for (Player player : players) stored += storage.load(player.permittableId()).weights().size();
+        assertEquals(written.size(), stored);
+    }
+
+    @Test
+    void unsavedLocalChangeSurvivesRemoteChange() throws InterruptedException {
+        CachingPermissionService a = service(FAST);
+        CachingPermissionService b = service(NEVER);
+        Player player = new Player(UUID.randomUUID());
+        assertEquals(-1, weight(b, player, "local"));
+
+        b.updatePermissionWeight(player, Permission.of("local"), 1);
+        b.updatePermissionWeight(player, Permission.of("both"), 0);
+        a.updatePermissionWeight(player, Permission.of("remote"), 1);
+        a.updatePermissionWeight(player, Permission.of("both"), 1);
+
+        await("remote change on b", () -> weight(b, player, "remote") == 1);
+        assertEquals(1, weight(b, player, "local"));
+        assertEquals(0, weight(b, player, "both"), "unsaved local value wins");
+
+        services.remove(b);
+        b.onUninstall(); // drains the rebased state
+        await("local change on a", () -> weight(a, player, "local") == 1);
+        assertEquals(1, weight(a, player, "remote"));
+        assertEquals(0, weight(a, player, "both"));
+        assertEquals(3, storage.load(player.permittableId()).weights().size());
+    }
+
+    @Test
+    void parentChangeReachesOtherService() throws InterruptedException {
+        CachingPermissionService a = service(FAST);
+        CachingPermissionService b = service(FAST);
+        PermissionServices.init(a);
+        PermittableGroup staff = PermittableGroup.create("staff", UUID.randomUUID(), null);
+        b.registerPermittable(staff);
+        Player player = new Player(UUID.randomUUID());
+        assertEquals(-1, weight(b, player, "staff.kick"));
+
+        a.updatePermissionWeight(staff, Permission.of("staff.kick"), 1);
+        a.addParentOf(player, staff, 0);
+
+        await("inherited weight on b", () -> weight(b, player, "staff.kick") == 1);
+        assertEquals(List.of(staff), b.resolutionOrderOf(player));
+
+        a.removeParentOf(player, staff);
+        await("removed parent on b", () -> weight(b, player, "staff.kick") == -1);
+        assertNotEquals(List.of(staff), b.resolutionOrderOf(player));
+        assertTrue(b.parentsOf(player).isEmpty());
+    }
+}
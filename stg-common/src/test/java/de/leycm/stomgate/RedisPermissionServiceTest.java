@@ -0,0 +1,204 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate;
+
+import com.github.fppt.jedismock.RedisServer;
+import com.github.fppt.jedismock.operations.server.MockExecutor;
+import com.github.fppt.jedismock.server.ServiceOptions;
+import de.leycm.stomgate.bus.RedisPermissionBus;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.Permittable;
+import de.leycm.stomgate.permittable.PermittableGroup;
+import de.leycm.stomgate.storage.RedisPermissionStorage;
+import net.minestom.server.MinecraftServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Protocol;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two {@link RedisPermissionService}s on an in-process Redis stand-in, kept
+ * in sync through pub/sub.
+ */
+class RedisPermissionServiceTest {
+
+    private static final String NAMESPACE = "test";
+    private static final String CHANNEL = "test:changes";
+    private static final Duration FAST = Duration.ofMillis(5);
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    private RedisServer server;
+    /** Drops every connection that tries to subscribe while set */
+    private final AtomicBoolean partitioned = new AtomicBoolean();
+    private final List<JedisPooled> clients = new ArrayList<>();
+    private final List<RedisPermissionService> services = new ArrayList<>();
+
+    private record Player(UUID permittableId) implements Permittable {
+    }
+
+    @BeforeAll
+    static void initServer() {
+        MinecraftServer.init();
+    }
+
+    @BeforeEach
+    void start() throws IOException {
+        server = RedisServer.newRedisServer()
+                .setOptions(ServiceOptions.withInterceptor((state, command, params) ->
+                        partitioned.get() && command.equalsIgnoreCase("subscribe")
+                                ? MockExecutor.breakConnection(state)
+                                : MockExecutor.proceed(state, command, params)))
+                .start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        for (RedisPermissionService service : services) service.onUninstall();
+        for (JedisPooled client : clients) client.close();
+        server.stop();
+    }
+
+    private JedisPooled client() {
+        JedisPooled client = new JedisPooled(server.getHost(), server.getBindPort());
+        clients.add(client);
+        return client;
+    }
+
+    private RedisPermissionService service(final Duration flushInterval) throws InterruptedException {
+        RedisPermissionService service = unsubscribedService(flushInterval);
+        // the bus subscribes on its own thread, changes published before that are lost
+        int subscribers = services.size();
+        await("subscription", () -> subscribers(clients.get(0)) >= subscribers);
+        return service;
+    }
+
+    private RedisPermissionService unsubscribedService(final Duration flushInterval) {
+        JedisPooled redis = client();
+        RedisPermissionService service = new RedisPermissionService(new RedisPermissionStorage(redis, NAMESPACE),
+                flushInterval, 512, 10_000, Duration.ofMinutes(10), new RedisPermissionBus(redis, CHANNEL));
+        service.onInstall();
+        services.add(service);
+        return service;
+    }
+
+    private static long subscribers(final JedisPooled redis) {
+        List<?> reply = (List<?>) redis.sendCommand(Protocol.Command.PUBSUB, "NUMSUB", CHANNEL);
+        return (Long) reply.get(1);
+    }
+
+    private static void await(final String what, final BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("Timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    private static int weight(final CachingPermissionService service, final Permittable permittable, final String node) {
+        return service.resolvePermissionWeight(permittable, Permission.of(node));
+    }
+
+    @Test
+    void savedChangeInvalidatesTheOtherNearCache() throws InterruptedException {
+        RedisPermissionService a = service(FAST);
+        RedisPermissionService b = service(FAST);
+        Player player = new Player(UUID.randomUUID());
+        assertEquals(-1, weight(b, player, "chat.color"));
+
+        a.updatePermissionWeight(player, Permission.of("chat.color"), 1);
+        await("change on b", () -> weight(b, player, "chat.color") == 1);
+
+        a.updatePermissionWeight(player, Permission.of("chat.color"), -1);
+        await("removal on b", () -> weight(b, player, "chat.color") == -1);
+    }
+
+    @Test
+    void concurrentChangesOfDifferentNodesMerge() throws InterruptedException {
+        RedisPermissionService a = service(FAST);
+        RedisPermissionService b = service(NEVER);
+        Player player = new Player(UUID.randomUUID());
+        assertEquals(-1, weight(b, player, "local"));
+
+        b.updatePermissionWeight(player, Permission.of("local"), 1);
+        a.updatePermissionWeight(player, Permission.of("remote"), 1);
+        await("remote change on b", () -> weight(b, player, "remote") == 1);
+        assertEquals(1, weight(b, player, "local"), "unsaved local change survives the reload");
+
+        services.remove(b);
+        b.onUninstall(); // drains the local change as a diff
+        await("local change on a", () -> weight(a, player, "local") == 1);
+        assertEquals(1, weight(a, player, "remote"));
+    }
+
+    @Test
+    void parentChangeReachesTheOtherServer() throws InterruptedException {
+        RedisPermissionService a = service(FAST);
+        RedisPermissionService b = service(FAST);
+        PermissionServices.init(a);
+        PermittableGroup staff = PermittableGroup.create("staff", UUID.randomUUID(), null);
+        b.registerPermittable(staff);
+        Player player = new Player(UUID.randomUUID());
+        assertEquals(-1, weight(b, player, "staff.kick"));
+
+        a.updatePermissionWeight(staff, Permission.of("staff.kick"), 1);
+        a.addParentOf(player, staff, 0);
+        await("inherited weight on b", () -> weight(b, player, "staff.kick") == 1);
+        assertEquals(List.of(staff), b.resolutionOrderOf(player));
+
+        a.removeParentOf(player, staff);
+        await("removed parent on b", () -> weight(b, player, "staff.kick") == -1);
+        assertTrue(b.parentsOf(player).isEmpty());
+    }
+
+    @Test
+    void holdersAreAnsweredFromTheSharedIndex() throws InterruptedException {
+        RedisPermissionService a = service(FAST);
+        RedisPermissionService b = service(FAST);
+        Player first = new Player(UUID.randomUUID());
+        Player second = new Player(UUID.randomUUID());
+
+        a.updatePermissionWeight(first, Permission.of("vip"), 1);
+        a.updatePermissionWeight(second, Permission.of("vip"), 0);
+        await("index on b", () -> b.holdersOf(Permission.of("vip")).size() == 2);
+        assertEquals(Map.of(first.permittableId(), 1, second.permittableId(), 0), b.holdersOf(Permission.of("vip")));
+    }
+
+    @Test
+    void changesMissedWhileDisconnectedConvergeOnResubscribe() throws InterruptedException {
+        RedisPermissionService a = service(FAST);
+        partitioned.set(true);
+        RedisPermissionService b = unsubscribedService(FAST);
+        Player player = new Player(UUID.randomUUID());
+        assertEquals(-1, weight(b, player, "chat.color"));
+
+        // announced while the bus of b cannot subscribe, b never receives it
+        a.updatePermissionWeight(player, Permission.of("chat.color"), 1);
+        await("the save", () -> "1".equals(clients.get(0).hget(NAMESPACE + ":perm:" + player.permittableId(), "chat.color")));
+        assertEquals(-1, weight(b, player, "chat.color"));
+
+        partitioned.set(false);
+        await("b to resync", () -> weight(b, player, "chat.color") == 1);
+    }
+}
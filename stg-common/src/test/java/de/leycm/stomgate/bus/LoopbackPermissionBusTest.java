@@ -0,0 +1,77 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.bus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoopbackPermissionBusTest {
+
+    @Test
+    void flushDeliversToEveryOtherBusOnly() {
+        LoopbackPermissionBus first = new LoopbackPermissionBus();
+        LoopbackPermissionBus second = first.join();
+        LoopbackPermissionBus third = first.join();
+        List<PermissionChange> own = new CopyOnWriteArrayList<>();
+        List<PermissionChange> secondReceived = new CopyOnWriteArrayList<>();
+        List<PermissionChange> thirdReceived = new CopyOnWriteArrayList<>();
+        first.subscribe(own::add);
+        second.subscribe(secondReceived::add);
+        third.subscribe(thirdReceived::add);
+
+        PermissionChange change = new PermissionChange(UUID.randomUUID(), "first", 1);
+        first.publish(change);
+        assertTrue(secondReceived.isEmpty(), "publish only buffers");
+        first.flush();
+
+        assertEquals(List.of(change), secondReceived);
+        assertEquals(List.of(change), thirdReceived);
+        assertTrue(own.isEmpty());
+    }
+
+    @Test
+    void changesCoalescePerPermittableAndOrigin() {
+        LoopbackPermissionBus sender = new LoopbackPermissionBus();
+        LoopbackPermissionBus receiver = sender.join();
+        List<PermissionChange> received = new CopyOnWriteArrayList<>();
+        receiver.subscribe(received::add);
+
+        UUID uuid = UUID.randomUUID();
+        sender.publish(new PermissionChange(uuid, "a", 3));
+        sender.publish(new PermissionChange(uuid, "a", 1));
+        sender.publish(new PermissionChange(uuid, "b", 2));
+        sender.flush();
+
+        assertEquals(Set.of(new PermissionChange(uuid, "a", 3), new PermissionChange(uuid, "b", 2)),
+                Set.copyOf(received));
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    void closedBusLeavesItsGroup() {
+        LoopbackPermissionBus first = new LoopbackPermissionBus();
+        LoopbackPermissionBus second = first.join();
+        List<PermissionChange> received = new CopyOnWriteArrayList<>();
+        second.subscribe(received::add);
+        second.close();
+
+        first.publish(new PermissionChange(UUID.randomUUID(), "first", 1));
+        first.flush();
+        assertTrue(received.isEmpty());
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.data;
+
+import de.leycm.stomgate.perm.Permission;
+import org.junit.jupiter.api.Test;
+
+import static de.leycm.stomgate.data.PermissionTrie.UNSET;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PermissionTrieTest {
+
+    private static PermissionTrie trie(final Object... nodesAndWeights) {
+        PermissionTrie trie = new PermissionTrie();
+        for (int i = 0; i < nodesAndWeights.length; i += 2)
+            trie.put(Permission.of((String) nodesAndWeights[i]), (Integer) nodesAndWeights[i + 1]);
+        return trie;
+    }
+
+    private static PermissionWeightMap weights(final Object... nodesAndWeights) {
+        PermissionWeightMap weights = new PermissionWeightMap();
+        for (int i = 0; i < nodesAndWeights.length; i += 2)
+            weights.put(Permission.of((String) nodesAndWeights[i]), (Integer) nodesAndWeights[i + 1]);
+        return weights;
+    }
+
+    private static int resolve(final PermissionTrie trie, final String node) {
+        return trie.resolve(Permission.of(node));
+    }
+
+    @Test
+    void mostSpecificMatchWins() {
+        PermissionTrie trie = trie("*", 1, "chat.*", 2, "chat.color.*", 3, "chat.color.red", 4);
+
+        assertEquals(4, resolve(trie, "chat.color.red"));
+        assertEquals(3, resolve(trie, "chat.color.blue"));
+        assertEquals(3, resolve(trie, "chat.color.blue.dark"));
+        assertEquals(2, resolve(trie, "chat.format"));
+        assertEquals(1, resolve(trie, "build"));
+        assertEquals(4, trie.size());
+    }
+
+    @Test
+    void wildcardDoesNotMatchItsOwnNode() {
+        PermissionTrie trie = trie("chat.*", 2);
+
+        assertEquals(UNSET, resolve(trie, "chat"));
+        assertEquals(2, resolve(trie, "chat.color"));
+        assertEquals(UNSET, resolve(trie, "build.chat"));
+    }
+
+    @Test
+    void exactZeroWeightStillBeatsWildcard() {
+        PermissionTrie trie = trie("chat.*", 2, "chat.color", 0);
+
+        assertEquals(0, resolve(trie, "chat.color"));
+        assertEquals(2, resolve(trie, "chat.color.red"));
+    }
+
+    @Test
+    void removeAndNegativeWeightsPruneOnlyTheEntry() {
+        PermissionTrie trie = trie("chat.color.red", 1, "chat.color.*", 2, "chat.format", 3);
+
+        trie.put(Permission.of("chat.color.red"), -1);
+        assertEquals(2, resolve(trie, "chat.color.red"));
+        trie.remove(Permission.of("chat.color.*"));
+        assertEquals(UNSET, resolve(trie, "chat.color.red"));
+        assertEquals(3, resolve(trie, "chat.format"));
+        assertEquals(1, trie.size());
+
+        trie.remove(Permission.of("chat.missing"));
+        trie.remove(Permission.of("chat.format.*"));
+        assertEquals(1, trie.size());
+    }
+
+    @Test
+    void copiesAreIndependentInBothDirections() {
+        PermissionTrie original = trie("chat.color.red", 1, "chat.format", 2, "build.*", 3);
+        PermissionTrie copy = original.copy();
+
+        copy.put(Permission.of("chat.color.red"), 5);
+        copy.remove(Permission.of("chat.format"));
+        copy.put(Permission.of("fly"), 1);
+        original.remove(Permission.of("build.*"));
+        original.put(Permission.of("chat.color.blue"), 4);
+
+        assertEquals(1, resolve(original, "chat.color.red"));
+        assertEquals(2, resolve(original, "chat.format"));
+        assertEquals(UNSET, resolve(original, "fly"));
+        assertEquals(UNSET, resolve(original, "build.block"));
+        assertEquals(3, original.size());
+
+        assertEquals(5, resolve(copy, "chat.color.red"));
+        assertEquals(UNSET, resolve(copy, "chat.format"));
+        assertEquals(UNSET, resolve(copy, "chat.color.blue"));
+        assertEquals(3, resolve(copy, "build.block"));
+        assertEquals(3, copy.size());
+
+        // a copy of a copy shares with both
+        PermissionTrie again = copy.copy();
+        again.clear();
+        assertEquals(5, resolve(copy, "chat.color.red"));
+        assertEquals(0, again.size());
+    }
+
+    @Test
+    void layeredOwnEntriesWinOverInherited() {
+        PermissionTrie inherited = trie("chat.color", 1, "chat.*", 2, "build", 3);
+        PermissionTrie layered = PermissionTrie.layered(inherited, weights("chat.color", 0, "fly", 4));
+
+        assertEquals(0, resolve(layered, "chat.color"));
+        assertEquals(2, resolve(layered, "chat.format"));
+        assertEquals(3, resolve(layered, "build"));
+        assertEquals(4, resolve(layered, "fly"));
+        assertEquals(4, layered.size());
+        assertEquals(1, resolve(inherited, "chat.color"));
+        assertEquals(UNSET, resolve(inherited, "fly"));
+    }
+
+    @Test
+    void layeredWildcardShadowsInheritedSubtree() {
+        PermissionTrie inherited = trie("chat.color.red", 1, "chat.color.*", 2, "chat.format", 3, "build", 4);
+        // the deeper own entry has to survive the pruning of its own wildcard
+        PermissionTrie layered = PermissionTrie.layered(inherited, weights("chat.color.blue", 7, "chat.*", 0));
+
+        assertEquals(0, resolve(layered, "chat.color.red"));
+        assertEquals(0, resolve(layered, "chat.color.green"));
+        assertEquals(0, resolve(layered, "chat.format"));
+        assertEquals(7, resolve(layered, "chat.color.blue"));
+        assertEquals(4, resolve(layered, "build"));
+        assertEquals(3, layered.size());
+
+        assertEquals(1, resolve(inherited, "chat.color.red"));
+        assertEquals(3, resolve(inherited, "chat.format"));
+        assertEquals(4, inherited.size());
+    }
+
+    @Test
+    void layeredWithoutInheritedHoldsOwnEntries() {
+        PermissionTrie layered = PermissionTrie.layered(null, weights("*", 1, "chat.color", 2));
+
+        assertEquals(2, resolve(layered, "chat.color"));
+        assertEquals(1, resolve(layered, "anything"));
+        assertEquals(2, layered.size());
+    }
+}
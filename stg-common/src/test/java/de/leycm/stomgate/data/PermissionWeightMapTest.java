@@ -0,0 +1,106 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.data;
+
+import de.leycm.stomgate.perm.Permission;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static de.leycm.stomgate.data.PermissionTrie.UNSET;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PermissionWeightMapTest {
+
+    private static Map<Permission, Integer> entries(final PermissionWeightMap map) {
+        Map<Permission, Integer> entries = new HashMap<>();
+        map.forEach((permission, weight) -> assertEquals(null, entries.put(permission, weight)));
+        return entries;
+    }
+
+    /**
+     * Runs random puts and removals against a {@link HashMap}, with few keys
+     * the table never grows and probe chains wrap around its end.
+     */
+    private static void matchesHashMap(final int keyCount, final long seed) {
+        Permission[] keys = new Permission[keyCount];
+        for (int i = 0; i < keyCount; i++) keys[i] = Permission.of("node." + i);
+        Random random = new Random(seed);
+        // the smallest table, eight slots
+        PermissionWeightMap map = new PermissionWeightMap(0);
+        Map<Permission, Integer> expected = new HashMap<>();
+
+        for (int step = 0; step < 20_000; step++) {
+            Permission key = keys[random.nextInt(keyCount)];
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.getOrDefault(key, UNSET), map.remove(key));
+                expected.remove(key);
+            } else {
+                int weight = random.nextInt(4);
+                Integer previous = expected.put(key, weight);
+                assertEquals(previous == null ? UNSET : previous, map.put(key, weight));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Permission key : keys) assertEquals(expected.getOrDefault(key, UNSET), map.get(key));
+        assertEquals(expected, entries(map));
+    }
+
+    @Test
+    void backwardShiftDeletionKeepsWrappedChains() {
+        for (long seed = 0; seed < 16; seed++) matchesHashMap(6, seed);
+    }
+
+    @Test
+    void matchesHashMapAcrossResizes() {
+        matchesHashMap(500, 42);
+    }
+
+    @Test
+    void negativeWeightRemovesEntry() {
+        PermissionWeightMap map = new PermissionWeightMap();
+        Permission color = Permission.of("chat.color");
+        map.put(color, 0);
+        assertTrue(map.containsKey(color));
+
+        assertEquals(0, map.put(color, -1));
+        assertFalse(map.containsKey(color));
+        assertEquals(UNSET, map.put(color, -5));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void copyIsIndependent() {
+        PermissionWeightMap original = new PermissionWeightMap(0);
+        for (int i = 0; i < 20; i++) original.put(Permission.of("node." + i), i);
+        PermissionWeightMap copy = original.copy();
+
+        copy.remove(Permission.of("node.3"));
+        copy.put(Permission.of("node.4"), 40);
+        original.put(Permission.of("extra"), 1);
+
+        assertEquals(3, original.get(Permission.of("node.3")));
+        assertEquals(4, original.get(Permission.of("node.4")));
+        assertEquals(21, original.size());
+        assertEquals(UNSET, copy.get(Permission.of("node.3")));
+        assertEquals(40, copy.get(Permission.of("node.4")));
+        assertEquals(UNSET, copy.get(Permission.of("extra")));
+        assertEquals(19, copy.size());
+
+        original.clear();
+        assertTrue(original.isEmpty());
+        assertEquals(19, entries(copy).size());
+    }
+}
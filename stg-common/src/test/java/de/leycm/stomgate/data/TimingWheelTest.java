@@ -0,0 +1,115 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    @Test
+    void firesNeverEarlyAndAtMostOneTickLate() {
+        TimingWheel<String> wheel = new TimingWheel<>(50, 1_000);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule("rounded", 1_120);
+        wheel.schedule("exact", 1_150);
+
+        wheel.advance(1_149, fired::add);
+        assertEquals(List.of(), fired);
+        wheel.advance(1_150, fired::add);
+        assertEquals(2, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void pastDeadlinesFireOnTheNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(50, 10_000);
+        List<String> fired = new ArrayList<>();
+        wheel.advance(20_000, fired::add);
+        wheel.schedule("before start", 5_000);
+        wheel.schedule("just passed", 19_990);
+
+        // the tick of 20_000 was processed already, both land on the one after it
+        wheel.advance(20_049, fired::add);
+        assertEquals(List.of(), fired);
+        wheel.advance(20_050, fired::add);
+        assertEquals(Set.of("before start", "just passed"), Set.copyOf(fired));
+
+        // time running backwards neither fires nor loses anything
+        wheel.schedule("later", 20_150);
+        wheel.advance(15_000, fired::add);
+        assertEquals(2, fired.size());
+        wheel.advance(20_150, fired::add);
+        assertEquals("later", fired.getLast());
+    }
+
+    @Test
+    void cascadesDownEveryLevelInDeadlineOrder() {
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 0);
+        long[] deadlines = {1L << 24 | 1, 63, 64, 1L << 18 | 7, 4_095, 4_096, 1L << 12 | 63};
+        for (long deadline : deadlines) wheel.schedule(deadline, deadline);
+
+        List<Long> fired = new ArrayList<>();
+        for (long deadline : List.of(63L, 64L, 4_095L, 4_096L, 1L << 12 | 63, 1L << 18 | 7, 1L << 24 | 1)) {
+            wheel.advance(deadline - 1, fired::add);
+            assertFalse(fired.contains(deadline), "fired early: " + deadline);
+            wheel.advance(deadline, fired::add);
+            assertEquals(deadline, fired.getLast());
+        }
+        assertEquals(deadlines.length, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void deadlinesBeyondTheLastLevelWaitInTheirSlot() {
+        // two ticks before every level wraps around at once
+        long start = (1L << 36) - 2;
+        TimingWheel<String> wheel = new TimingWheel<>(1, start);
+        List<String> fired = new ArrayList<>();
+        // farther away than the levels span, lands in the top slot that is cascaded next
+        TimingWheel.Timeout<String> far = wheel.schedule("far", (1L << 37) + 5);
+        wheel.schedule("near", start + 3);
+
+        // the wrap cascades the top slot, the far timeout goes back into it instead of firing
+        wheel.advance(start + (1L << 18), fired::add);
+        assertEquals(List.of("near"), fired);
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.cancel(far));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelOnlyRemovesPendingTimeouts() {
+        TimingWheel<String> wheel = new TimingWheel<>(50, 0);
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 100);
+        TimingWheel.Timeout<String> kept = wheel.schedule("kept", 100);
+        TimingWheel.Timeout<String> distant = wheel.schedule("distant", 1_000_000);
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        assertTrue(wheel.cancel(distant));
+        wheel.advance(100, fired::add);
+        assertEquals(List.of("kept"), fired);
+        assertFalse(wheel.cancel(kept));
+        assertEquals(0, wheel.size());
+
+        wheel.advance(1_000_000, fired::add);
+        assertEquals(List.of("kept"), fired);
+    }
+}
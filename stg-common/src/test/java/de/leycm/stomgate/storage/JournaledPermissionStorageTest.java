@@ -0,0 +1,185 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.perm.Permission;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replay of the {@link JournaledPermissionStorage} journal after a crash,
+ * simulated by copying the folder of a storage that was never closed.
+ */
+class JournaledPermissionStorageTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @TempDir
+    File folder;
+    @TempDir
+    File crashed;
+
+    private final UUID first = UUID.randomUUID();
+    private final UUID second = UUID.randomUUID();
+    private final UUID third = UUID.randomUUID();
+
+    private static PermittableData data(final Object... nodesAndWeights) {
+        PermissionWeightMap weights = new PermissionWeightMap();
+        for (int i = 0; i < nodesAndWeights.length; i += 2)
+            weights.put(Permission.of((String) nodesAndWeights[i]), (Integer) nodesAndWeights[i + 1]);
+        return new PermittableData(weights, Map.of());
+    }
+
+    private static void assertPatched(final PermittableData data) {
+        assertEquals(2, data.weights().size());
+        assertEquals(2, data.weights().get(Permission.of("chat.color")));
+        assertEquals(1, data.weights().get(Permission.of("fly")));
+    }
+
+    /**
+     * Journals one patch and two replacements and copies the folder before closing.
+     *
+     * @return the journal size after each save
+     */
+    private List<Long> journalAndCrash() throws IOException {
+        JournaledPermissionStorage storage = new JournaledPermissionStorage(folder, NEVER);
+        Path journal = new File(folder, "journal.log").toPath();
+        PermittableData before = data("chat.color", 1, "kit.vip", 0);
+        storage.save(first, before, null);
+        storage.save(first, data("chat.color", 2, "fly", 1), before);
+        long firstEnd = Files.size(journal);
+        storage.save(second, data("build.*", 1), null);
+        long secondEnd = Files.size(journal);
+        storage.save(third, data("fly", 3), null);
+        long thirdEnd = Files.size(journal);
+
+        try (Stream<Path> files = Files.walk(folder.toPath())) {
+            for (Path file : files.toList()) {
+                Path target = crashed.toPath().resolve(folder.toPath().relativize(file));
+                if (Files.isDirectory(file)) Files.createDirectories(target);
+                else if (!file.getFileName().toString().equals("storage.lock")) Files.copy(file, target);
+            }
+        }
+        storage.close();
+        return List.of(firstEnd, secondEnd, thirdEnd);
+    }
+
+    @Test
+    void completeJournalIsReplayed() throws IOException {
+        journalAndCrash();
+
+        JournaledPermissionStorage storage = new JournaledPermissionStorage(crashed, NEVER);
+        assertPatched(storage.load(first));
+        assertEquals(Map.of(second, 1), storage.holders(Permission.of("build.*")));
+        assertEquals(Map.of(first, 1, third, 3), storage.holders(Permission.of("fly")));
+        assertTrue(storage.holders(Permission.of("kit.vip")).isEmpty());
+        storage.close();
+    }
+
+    @Test
+    void tornTailIsDiscarded() throws IOException {
+        List<Long> ends = journalAndCrash();
+        try (RandomAccessFile journal = new RandomAccessFile(new File(crashed, "journal.log"), "rw")) {
+            journal.setLength(ends.get(2) - 3);
+        }
+
+        JournaledPermissionStorage storage = new JournaledPermissionStorage(crashed, NEVER);
+        assertEquals(1, storage.load(second).weights().size());
+        assertTrue(storage.load(third).weights().isEmpty());
+        assertEquals(0, Files.size(new File(crashed, "journal.log").toPath()));
+
+        // the discarded tail does not swallow the saves that follow it
+        storage.save(third, data("fly", 4), null);
+        storage.close();
+        storage = new JournaledPermissionStorage(crashed, NEVER);
+        assertEquals(Map.of(first, 1, third, 4), storage.holders(Permission.of("fly")));
+        storage.close();
+    }
+
+    @Test
+    void corruptFrameEndsTheReplay() throws IOException {
+        List<Long> ends = journalAndCrash();
+        try (RandomAccessFile journal = new RandomAccessFile(new File(crashed, "journal.log"), "rw")) {
+            // the last payload byte of the second permittable, caught by its checksum
+            journal.seek(ends.get(1) - 1);
+            int last = journal.read();
+            journal.seek(ends.get(1) - 1);
+            journal.write(last ^ 0xFF);
+        }
+
+        JournaledPermissionStorage storage = new JournaledPermissionStorage(crashed, NEVER);
+        assertPatched(storage.load(first));
+        assertTrue(storage.load(second).weights().isEmpty());
+        assertTrue(storage.load(third).weights().isEmpty());
+        assertEquals(Map.of(first, 1), storage.holders(Permission.of("fly")));
+        storage.close();
+    }
+
+    @Test
+    void corruptLengthEndsTheReplay() throws IOException {
+        List<Long> ends = journalAndCrash();
+        try (RandomAccessFile journal = new RandomAccessFile(new File(crashed, "journal.log"), "rw")) {
+            journal.seek(ends.get(1));
+            journal.writeInt(-1);
+        }
+
+        JournaledPermissionStorage storage = new JournaledPermissionStorage(crashed, NEVER);
+        assertEquals(1, storage.load(second).weights().size());
+        assertTrue(storage.load(third).weights().isEmpty());
+        storage.close();
+    }
+
+    @Test
+    void compactionIndexesEveryJournaledChange() {
+        JournaledPermissionStorage storage = new JournaledPermissionStorage(folder, NEVER);
+        PermittableData before = data("chat.color", 1, "kit.vip", 0);
+        storage.save(first, before, null);
+        storage.save(second, data("kit.vip", 2), null);
+        storage.compact();
+        storage.save(first, data("chat.color", 2, "fly", 1), before);
+        storage.compact();
+        storage.close();
+
+        JsonPermissionStorage snapshots = new JsonPermissionStorage(folder);
+        assertPatched(snapshots.load(first));
+        assertEquals(Map.of(second, 2), snapshots.holders(Permission.of("kit.vip")));
+        assertEquals(Map.of(first, 2), snapshots.holders(Permission.of("chat.color")));
+        snapshots.close();
+    }
+
+    @Test
+    void compactionWaitsForTheNextSync() throws IOException {
+        JournaledPermissionStorage storage = new JournaledPermissionStorage(folder, 1);
+        Path journal = new File(folder, "journal.log").toPath();
+        storage.save(first, data("chat.color", 1), null);
+        storage.save(second, data("fly", 1), null);
+        assertTrue(Files.size(journal) > 0);
+
+        storage.sync();
+        assertEquals(0, Files.size(journal));
+        assertEquals(Map.of(second, 1), storage.holders(Permission.of("fly")));
+        storage.close();
+    }
+}
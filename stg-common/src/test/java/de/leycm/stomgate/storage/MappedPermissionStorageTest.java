@@ -0,0 +1,200 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link MappedPermissionStorage} across reopens, compactions and damaged files.
+ */
+class MappedPermissionStorageTest {
+
+    /** Header fields written to by the tests, see the layout of the storage */
+    private static final int H_EXPIRY = 40;
+    private static final int H_HEADS_OFFSET = 48;
+
+    @TempDir
+    File folder;
+
+    private File file() {
+        return new File(folder, "permissions.bin");
+    }
+
+    private static PermissionWeightMap weights(final Object... nodesAndWeights) {
+        PermissionWeightMap weights = new PermissionWeightMap();
+        for (int i = 0; i < nodesAndWeights.length; i += 2)
+            weights.put(Permission.of((String) nodesAndWeights[i]), (Integer) nodesAndWeights[i + 1]);
+        return weights;
+    }
+
+    private static PermittableData data(final Object... nodesAndWeights) {
+        return new PermittableData(weights(nodesAndWeights), Map.of());
+    }
+
+    @Test
+    void everySectionRoundTripsAcrossReopen() {
+        UUID holder = UUID.randomUUID();
+        UUID parent = UUID.randomUUID();
+        PermittableData data = new PermittableData(weights("chat.color", 2, "build.*", 0, "kit.vip", 5),
+                Map.of(parent, 10), Map.of(Permission.of("kit.vip"), 1_767_225_600_000L),
+                Map.of(PermissionContext.parse("gamemode=creative"), weights("fly", 1)));
+
+        MappedPermissionStorage storage = new MappedPermissionStorage(file());
+        storage.save(holder, data, null);
+        storage.saveGroup("admin", parent);
+        storage.close();
+
+        storage = new MappedPermissionStorage(file());
+        PermittableData loaded = storage.load(holder);
+        assertEquals(3, loaded.weights().size());
+        assertEquals(5, loaded.weights().get(Permission.of("kit.vip")));
+        assertEquals(Map.of(parent, 10), loaded.parents());
+        assertEquals(data.expiries(), loaded.expiries());
+        assertEquals(1, loaded.contexts().get(PermissionContext.parse("gamemode=creative")).get(Permission.of("fly")));
+        assertEquals(Map.of("admin", parent), storage.groups());
+        assertEquals(Map.of(holder, 2), storage.holders(Permission.of("chat.color")));
+        assertEquals(Map.of(holder, 1_767_225_600_000L), storage.expiring());
+        assertTrue(storage.load(UUID.randomUUID()).weights().isEmpty());
+        storage.close();
+    }
+
+    @Test
+    void indexAndFileGrowBeyondTheirInitialSize() {
+        MappedPermissionStorage storage = new MappedPermissionStorage(file());
+        List<UUID> holders = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            UUID holder = UUID.randomUUID();
+            holders.add(holder);
+            storage.save(holder, data("node." + (i % 500), i, "chat.color", 1), null);
+        }
+        storage.close();
+        assertTrue(file().length() > 1 << 20);
+
+        storage = new MappedPermissionStorage(file());
+        assertEquals(new HashSet<>(holders), new HashSet<>(storage.stored()));
+        for (int i = 0; i < holders.size(); i += 997) {
+            assertEquals(i, storage.load(holders.get(i)).weights().get(Permission.of("node." + (i % 500))));
+        }
+        assertEquals(20_000, storage.holders(Permission.of("chat.color")).size());
+        assertEquals(40, storage.holders(Permission.of("node.7")).size());
+        storage.close();
+    }
+
+    @Test
+    void reopensAfterUncleanClose() throws IOException {
+        UUID kept = UUID.randomUUID();
+        UUID removed = UUID.randomUUID();
+        MappedPermissionStorage storage = new MappedPermissionStorage(file());
+        storage.save(kept, data("chat.color", 1), null);
+        storage.save(removed, data("chat.color", 2), null);
+        storage.save(removed, data("fly", 1), data("chat.color", 2));
+
+        // a crashed process leaves what it wrote to the mapping behind, but neither synced nor truncated
+        File crashed = new File(folder, "crashed.bin");
+        Files.copy(file().toPath(), crashed.toPath());
+        storage.close();
+
+        storage = new MappedPermissionStorage(crashed);
+        assertEquals(Set.of(kept, removed), new HashSet<>(storage.stored()));
+        assertEquals(Map.of(kept, 1), storage.holders(Permission.of("chat.color")));
+        assertEquals(Map.of(removed, 1), storage.holders(Permission.of("fly")));
+        storage.save(kept, data("chat.color", 3), null);
+        storage.close();
+
+        storage = new MappedPermissionStorage(crashed);
+        assertEquals(Map.of(kept, 3), storage.holders(Permission.of("chat.color")));
+        storage.close();
+    }
+
+    @Test
+    void compactionDropsGarbageAndKeepsLiveData() {
+        UUID churned = UUID.randomUUID();
+        UUID stable = UUID.randomUUID();
+        MappedPermissionStorage storage = new MappedPermissionStorage(file());
+        storage.save(stable, data("chat.color", 1), null);
+        storage.saveGroup("admin", stable);
+        PermittableData previous = null;
+        for (int i = 0; i < 50_000; i++) {
+            PermittableData next = data("node." + (i % 300), i);
+            storage.save(churned, next, previous);
+            previous = next;
+        }
+        storage.compact();
+        storage.close();
+
+        assertFalse(new File(folder, "permissions.bin.compact").exists());
+        assertTrue(file().length() < 1 << 20);
+
+        storage = new MappedPermissionStorage(file());
+        assertEquals(49_999, storage.load(churned).weights().get(Permission.of("node.199")));
+        assertEquals(Map.of(churned, 49_999), storage.holders(Permission.of("node.199")));
+        assertTrue(storage.holders(Permission.of("node.198")).isEmpty());
+        assertEquals(Map.of(stable, 1), storage.holders(Permission.of("chat.color")));
+        assertEquals(Map.of("admin", stable), storage.groups());
+        storage.close();
+    }
+
+    @Test
+    void corruptHolderChainIsRebuilt() throws IOException {
+        UUID holder = UUID.randomUUID();
+        MappedPermissionStorage storage = new MappedPermissionStorage(file());
+        storage.save(holder, data("chat.color", 1, "fly", 2), null);
+        storage.close();
+
+        try (RandomAccessFile raw = new RandomAccessFile(file(), "rw")) {
+            raw.seek(H_HEADS_OFFSET);
+            raw.writeLong(7);
+        }
+
+        storage = new MappedPermissionStorage(file());
+        assertEquals(Map.of(holder, 2), storage.holders(Permission.of("fly")));
+        assertEquals(Map.of(holder, 1), storage.holders(Permission.of("chat.color")));
+        storage.close();
+    }
+
+    @Test
+    void corruptExpiryChainIsRebuilt() throws IOException {
+        UUID holder = UUID.randomUUID();
+        MappedPermissionStorage storage = new MappedPermissionStorage(file());
+        storage.save(holder, new PermittableData(weights("fly", 1), Map.of(),
+                Map.of(Permission.of("fly"), 1_767_225_600_000L), Map.of()), null);
+        storage.close();
+
+        try (RandomAccessFile raw = new RandomAccessFile(file(), "rw")) {
+            raw.seek(H_EXPIRY);
+            raw.writeLong(raw.length() + 1);
+        }
+
+        storage = new MappedPermissionStorage(file());
+        assertEquals(Map.of(holder, 1_767_225_600_000L), storage.expiring());
+        assertEquals(Map.of(holder, 1), storage.holders(Permission.of("fly")));
+        storage.close();
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import com.github.fppt.jedismock.RedisServer;
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.perm.Permission;
+import de.leycm.stomgate.perm.PermissionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.JedisPooled;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link RedisPermissionStorage} against an in-process Redis stand-in.
+ */
+class RedisPermissionStorageTest {
+
+    private RedisServer server;
+    private JedisPooled redis;
+    private RedisPermissionStorage storage;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = RedisServer.newRedisServer().start();
+        redis = new JedisPooled(server.getHost(), server.getBindPort());
+        storage = new RedisPermissionStorage(redis, "test");
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        redis.close();
+        server.stop();
+    }
+
+    private static PermissionWeightMap weights(final Object... nodesAndWeights) {
+        PermissionWeightMap weights = new PermissionWeightMap();
+        for (int i = 0; i < nodesAndWeights.length; i += 2)
+            weights.put(Permission.of((String) nodesAndWeights[i]), (Integer) nodesAndWeights[i + 1]);
+        return weights;
+    }
+
+    private static PermittableData data(final Object... nodesAndWeights) {
+        return new PermittableData(weights(nodesAndWeights), Map.of());
+    }
+
+    @Test
+    void saveRoundTripsAndRemovesDroppedNodes() {
+        UUID holder = UUID.randomUUID();
+        PermittableData first = data("chat.color", 1, "kit.vip", 0);
+        storage.save(holder, first, null);
+        PermittableData second = data("chat.color", 2, "fly", 1);
+        storage.save(holder, second, first);
+
+        assertEquals(Map.of("chat.color", "2", "fly", "1"), redis.hgetAll("test:perm:" + holder));
+        PermissionWeightMap loaded = storage.load(holder).weights();
+        assertEquals(2, loaded.size());
+        assertEquals(2, loaded.get(Permission.of("chat.color")));
+        assertEquals(List.of(holder), List.copyOf(storage.stored()));
+
+        storage.save(holder, PermittableData.empty(), second);
+        assertFalse(redis.exists("test:perm:" + holder));
+        assertTrue(storage.stored().isEmpty());
+    }
+
+    @Test
+    void diffSavesOfTwoServersMerge() {
+        UUID holder = UUID.randomUUID();
+        PermittableData base = data("shared", 1);
+        storage.save(holder, base, null);
+        RedisPermissionStorage other = new RedisPermissionStorage(redis, "test");
+
+        // both servers saw the same base and change different nodes
+        storage.save(holder, data("shared", 1, "first", 1), base);
+        other.save(holder, data("shared", 1, "second", 1), base);
+
+        PermissionWeightMap merged = storage.load(holder).weights();
+        assertEquals(3, merged.size());
+        assertEquals(1, merged.get(Permission.of("first")));
+        assertEquals(1, merged.get(Permission.of("second")));
+    }
+
+    @Test
+    void parentsKeepTheirOrderAndPriorities() {
+        UUID holder = UUID.randomUUID();
+        Map<UUID, Integer> parents = new LinkedHashMap<>();
+        UUID vip = UUID.randomUUID();
+        UUID staff = UUID.randomUUID();
+        parents.put(vip, 5);
+        parents.put(staff, -1);
+        PermittableData linked = new PermittableData(new PermissionWeightMap(), parents);
+        storage.save(holder, linked, PermittableData.empty());
+
+        assertEquals(List.copyOf(parents.entrySet()), List.copyOf(storage.load(holder).parents().entrySet()));
+        assertEquals(List.of(holder), List.copyOf(storage.stored()));
+
+        storage.save(holder, PermittableData.empty(), linked);
+        assertTrue(storage.load(holder).parents().isEmpty());
+        assertFalse(redis.hexists("test:parents", holder.toString()));
+    }
+
+    @Test
+    void bareParentIdReadsWithPriorityZero() {
+        UUID holder = UUID.randomUUID();
+        UUID parent = UUID.randomUUID();
+        redis.hset("test:parents", holder.toString(), parent.toString());
+
+        assertEquals(Map.of(parent, 0), storage.load(holder).parents());
+    }
+
+    @Test
+    void holderIndexFollowsSavesAndReindex() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        PermittableData granted = data("chat.color", 1);
+        storage.save(first, granted, null);
+        storage.save(second, data("chat.color", 0), null);
+        assertEquals(Map.of(first, 1, second, 0), storage.holders(Permission.of("chat.color")));
+
+        storage.save(first, data("fly", 1), granted);
+        assertEquals(Map.of(second, 0), storage.holders(Permission.of("chat.color")));
+        assertEquals(Map.of(first, 1), storage.holders(Permission.of("fly")));
+
+        // data written before the index existed
+        redis.del("test:holders:chat.color", "test:holders:fly");
+        assertTrue(storage.holders(Permission.of("fly")).isEmpty());
+        storage.reindex();
+        assertEquals(Map.of(second, 0), storage.holders(Permission.of("chat.color")));
+        assertEquals(Map.of(first, 1), storage.holders(Permission.of("fly")));
+    }
+
+    @Test
+    void expiringSetScoresTheFirstExpiry() {
+        UUID holder = UUID.randomUUID();
+        PermissionWeightMap weights = weights("trial", 1, "event", 1, "permanent", 1);
+        PermittableData timed = new PermittableData(weights, Map.of(),
+                Map.of(Permission.of("trial"), 5_000L, Permission.of("event"), 2_000L));
+        storage.save(holder, timed, null);
+
+        assertEquals(Map.of(holder, 2_000L), storage.expiring());
+        assertEquals(Map.of(Permission.of("trial"), 5_000L, Permission.of("event"), 2_000L),
+                storage.load(holder).expiries());
+
+        PermittableData untimed = new PermittableData(weights, Map.of());
+        storage.save(holder, untimed, timed);
+        assertTrue(storage.expiring().isEmpty());
+        assertTrue(storage.load(holder).expiries().isEmpty());
+        assertFalse(redis.exists("test:expires:" + holder));
+    }
+
+    @Test
+    void timedGrantsOfTwoServersMerge() {
+        UUID holder = UUID.randomUUID();
+        PermittableData base = data("shared", 1);
+        storage.save(holder, base, null);
+        RedisPermissionStorage other = new RedisPermissionStorage(redis, "test");
+
+        // both servers saw the same base and grant a different node until a different time
+        PermittableData first = new PermittableData(weights("shared", 1, "trial", 1), Map.of(),
+                Map.of(Permission.of("trial"), 5_000L));
+        PermittableData second = new PermittableData(weights("shared", 1, "event", 1), Map.of(),
+                Map.of(Permission.of("event"), 2_000L));
+        storage.save(holder, first, base);
+        other.save(holder, second, base);
+
+        assertEquals(Map.of(Permission.of("trial"), 5_000L, Permission.of("event"), 2_000L),
+                storage.load(holder).expiries());
+        assertEquals(Map.of(holder, 2_000L), storage.expiring());
+
+        // the first server drops its grant, the one of the other server stays timed
+        storage.save(holder, base, first);
+        assertEquals(Map.of(Permission.of("event"), 2_000L), storage.load(holder).expiries());
+        assertEquals(Map.of(holder, 2_000L), storage.expiring());
+        other.save(holder, base, second);
+        assertTrue(storage.expiring().isEmpty());
+    }
+
+    @Test
+    void contextsAreRewrittenAsAWhole() {
+        UUID holder = UUID.randomUUID();
+        PermissionContext lobby = PermissionContext.of("server", "lobby");
+        PermittableData scoped = new PermittableData(new PermissionWeightMap(), Map.of(), Map.of(),
+                Map.of(lobby, weights("fly", 1)));
+        storage.save(holder, scoped, null);
+
+        PermittableData loaded = storage.load(holder);
+        assertEquals(Set.of(lobby), loaded.contexts().keySet());
+        assertEquals(1, loaded.contexts().get(lobby).get(Permission.of("fly")));
+
+        storage.save(holder, PermittableData.empty(), scoped);
+        assertTrue(storage.load(holder).contexts().isEmpty());
+        assertTrue(storage.stored().isEmpty());
+    }
+
+    @Test
+    void groupsRoundTrip() {
+        UUID admin = UUID.randomUUID();
+        storage.saveGroup("admin", admin);
+
+        assertEquals(Map.of("admin", admin), storage.groups());
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import de.leycm.stomgate.data.PermissionWeightMap;
+import de.leycm.stomgate.perm.Permission;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StorageLockTest {
+
+    @TempDir
+    File folder;
+
+    @Test
+    void jsonFolderHasASingleWriter() {
+        assertSingleWriter(() -> new JsonPermissionStorage(folder));
+    }
+
+    @Test
+    void journaledFolderHasASingleWriter() {
+        assertSingleWriter(() -> new JournaledPermissionStorage(folder));
+    }
+
+    @Test
+    void mappedFileHasASingleWriter() {
+        File file = new File(folder, "permissions.bin");
+        assertSingleWriter(() -> new MappedPermissionStorage(file));
+    }
+
+    @Test
+    void mappedCompactionKeepsTheLock() {
+        File file = new File(folder, "permissions.bin");
+        MappedPermissionStorage storage = new MappedPermissionStorage(file);
+        UUID holder = UUID.randomUUID();
+        for (int i = 0; i < 64; i++) {
+            storage.save(holder, data("node." + i), null);
+        }
+        storage.compact();
+        assertThrows(IllegalStateException.class, () -> new MappedPermissionStorage(file));
+        storage.close();
+        new MappedPermissionStorage(file).close();
+    }
+
+    private static void assertSingleWriter(final Supplier<PermissionStorage> open) {
+        UUID holder = UUID.randomUUID();
+        PermissionStorage first = open.get();
+        first.save(holder, data("chat.color"), null);
+        assertThrows(IllegalStateException.class, open::get);
+        first.close();
+
+        PermissionStorage second = open.get();
+        assertEquals(1, second.load(holder).weights().get(Permission.of("chat.color")));
+        second.close();
+    }
+
+    private static PermittableData data(final String node) {
+        PermissionWeightMap weights = new PermissionWeightMap();
+        weights.put(Permission.of(node), 1);
+        return new PermittableData(weights, Map.of());
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * LECP-LICENSE NOTICE
+ * <br><br>
+ * This Sourcecode is under the LECP-LICENSE. <br>
+ * License at: <a href="https://github.com/leycm/leycm/blob/main/LICENSE">GITHUB</a>
+ * <br><br>
+ * Copyright (c) LeyCM <a href="mailto:leycm@proton.me">leycm@proton.me</a> <br>
+ * Copyright (c) maintainers <br>
+ * Copyright (c) contributors
+ */
+package de.leycm.stomgate.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WriteBehindPersisterTest {
+
+    private static final Duration NEVER = Duration.ofHours(1);
+    private static final Duration FAST = Duration.ofMillis(10);
+
+    private static void await(final String what, final BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("Timed out waiting for " + what);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void failingSaveDoesNotBlockTheOthers() {
+        UUID broken = UUID.randomUUID();
+        AtomicBoolean fixed = new AtomicBoolean();
+        Set<UUID> saved = ConcurrentHashMap.newKeySet();
+        WriteBehindPersister persister = new WriteBehindPersister("test-persister", uuid -> {
+            if (uuid.equals(broken) && !fixed.get()) throw new IllegalStateException("cannot encode " + uuid);
+            saved.add(uuid);
+        }, () -> {
+        }, NEVER, 1_000);
+
+        persister.markDirty(broken);
+        for (int i = 0; i < 100; i++) persister.markDirty(UUID.randomUUID());
+        persister.flush();
+        assertEquals(100, saved.size());
+        assertEquals(1, persister.pending());
+
+        // the broken permittable stays pending and keeps failing, every later change still gets through
+        UUID later = UUID.randomUUID();
+        persister.markDirty(later);
+        persister.flush();
+        assertEquals(101, saved.size());
+        assertEquals(1, persister.pending());
+
+        fixed.set(true);
+        persister.close();
+        assertEquals(102, saved.size());
+    }
+
+    @Test
+    void unavailableStorageEndsTheBatch() {
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean down = new AtomicBoolean(true);
+        WriteBehindPersister persister = new WriteBehindPersister("test-persister", uuid -> {
+            attempts.incrementAndGet();
+            if (down.get()) throw new StorageUnavailableException("connection lost", null);
+        }, () -> {
+        }, NEVER, 1_000);
+
+        for (int i = 0; i < 10; i++) persister.markDirty(UUID.randomUUID());
+        persister.flush();
+        assertEquals(1, attempts.get());
+        assertEquals(10, persister.pending());
+
+        down.set(false);
+        persister.close();
+        assertEquals(11, attempts.get());
+        assertEquals(0, persister.pending());
+    }
+
+    @Test
+    void callersDoNotFlushWhileTheStorageIsUnavailable() {
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean down = new AtomicBoolean(true);
+        WriteBehindPersister persister = new WriteBehindPersister("test-persister", uuid -> {
+            attempts.incrementAndGet();
+            if (down.get()) throw new StorageUnavailableException("connection lost", null);
+        }, () -> {
+        }, NEVER, 4);
+
+        persister.markDirty(UUID.randomUUID());
+        persister.flush();
+        assertEquals(1, attempts.get());
+
+        // far beyond the backlog that starts an early flush, the background thread still waits for its retry
+        for (int i = 0; i < 1_000; i++) persister.markDirty(UUID.randomUUID());
+        assertEquals(1, attempts.get());
+        assertEquals(1_001, persister.pending());
+
+        down.set(false);
+        persister.close();
+        assertEquals(0, persister.pending());
+    }
+
+    @Test
+    void failingAfterFlushDoesNotStopTheIntervalFlushes() throws InterruptedException {
+        AtomicInteger syncs = new AtomicInteger();
+        Set<UUID> saved = ConcurrentHashMap.newKeySet();
+        WriteBehindPersister persister = new WriteBehindPersister("test-persister", saved::add, () -> {
+            if (syncs.incrementAndGet() == 1) throw new IllegalStateException("force failed");
+        }, FAST, 1_000);
+
+        persister.markDirty(UUID.randomUUID());
+        await("the failing sync", () -> syncs.get() == 1);
+
+        UUID later = UUID.randomUUID();
+        persister.markDirty(later);
+        await("the next interval flush", () -> saved.contains(later) && syncs.get() == 2);
+        persister.close();
+    }
+
+    @Test
+    void unavailableAfterFlushSavesTheBatchAgain() throws InterruptedException {
+        AtomicInteger syncs = new AtomicInteger();
+        AtomicInteger saves = new AtomicInteger();
+        WriteBehindPersister persister = new WriteBehindPersister("test-persister", uuid -> saves.incrementAndGet(), () -> {
+            if (syncs.incrementAndGet() == 1) throw new StorageUnavailableException("journal lost", null);
+        }, FAST, 1_000);
+
+        for (int i = 0; i < 10; i++) persister.markDirty(UUID.randomUUID());
+        await("the batch to be saved twice", () -> saves.get() == 20 && syncs.get() == 2);
+        assertEquals(0, persister.pending());
+        persister.close();
+    }
+
+    @Test
+    void callersNeverSaveThemselves() throws InterruptedException {
+        Thread caller = Thread.currentThread();
+        AtomicInteger onCaller = new AtomicInteger();
+        AtomicInteger saves = new AtomicInteger();
+        WriteBehindPersister persister = new WriteBehindPersister("test-persister", uuid -> {
+            if (Thread.currentThread() == caller) onCaller.incrementAndGet();
+            saves.incrementAndGet();
+        }, () -> {
+        }, NEVER, 4);
+
+        for (int i = 0; i < 1_000; i++) persister.markDirty(UUID.randomUUID());
+        await("the early flushes", () -> saves.get() == 1_000);
+        assertEquals(0, onCaller.get());
+        persister.close();
+    }
+}